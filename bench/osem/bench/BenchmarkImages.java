@@ -0,0 +1,80 @@
+package osem.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Program images used by the benchmarks. Images are written into a scratch directory so the
+ * core dumps produced by the simulator land there instead of next to the shipped binaries.
+ */
+final class BenchmarkImages {
+	/**
+	 * LOAD 31; ADD 30; STORE 31; BRA-P 0. Counts forever without ever setting the zero or
+	 * negative flag, so it never halts on its own.
+	 */
+	private static final byte[] SPIN = image(new int[] { 0x3F, 0x7E, 0x5F, 0xA0 }, 30, 1);
+	/**
+	 * BRA-P 0. The smallest possible infinite loop.
+	 */
+	private static final byte[] LOOP = image(new int[] { 0xA0 });
+	/**
+	 * LOAD 31; SUB 30; STORE 31; BRA-Z 5; BRA-P 0; STOP. Counts 200 down to zero and halts.
+	 */
+	private static final byte[] COUNT = image(new int[] { 0x3F, 0x9E, 0x5F, 0xE5, 0xA0, 0x00 }, 30, 1, 31, 200);
+
+	private final Path directory;
+	BenchmarkImages() throws IOException {
+		directory = Files.createTempDirectory("osem-bench");
+	}
+	/**
+	 * Resolves an image name to a file the simulator can load. "spin", "loop" and "count" are
+	 * synthetic images; anything else is copied from the working directory (or the directory
+	 * named by the osem.images system property), e.g. the shipped mult_10_12.bin.
+	 * @param name the image name.
+	 * @return path of the image inside the scratch directory.
+	 * @throws IOException if the image could not be written.
+	 */
+	String path(String name) throws IOException {
+		Path target = directory.resolve(name);
+		if (Files.exists(target))
+			return target.toString();
+		switch (name) {
+			case "spin": Files.write(target, SPIN); break;
+			case "loop": Files.write(target, LOOP); break;
+			case "count": Files.write(target, COUNT); break;
+			default:
+				Path source = Paths.get(System.getProperty("osem.images", "."), name);
+				Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		return target.toString();
+	}
+	/**
+	 * Removes the scratch directory along with any core dumps written into it.
+	 * @throws IOException if the directory could not be removed.
+	 */
+	void delete() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+				Files.delete(p);
+		}
+	}
+	/**
+	 * Builds a 32 byte image.
+	 * @param program instructions starting at address 0.
+	 * @param data pairs of address and value to place in the image.
+	 * @return the image.
+	 */
+	private static byte[] image(int[] program, int... data) {
+		byte[] image = new byte[32];
+		for (int i = 0; i < program.length; i++)
+			image[i] = (byte) program[i];
+		for (int i = 0; i < data.length; i += 2)
+			image[data[i]] = (byte) data[i + 1];
+		return image;
+	}
+}
@@ -0,0 +1,71 @@
+package osem.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time slices of CPU-bound processes with and without the compilation tier. Setup waits until
+ * the image has been compiled, so only steady-state execution is measured. Long quanta show
+ * the raw instruction rate of compiled code; short ones how much of it survives the cost of
+ * switching processes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+	@Param({ "5" })
+	public int processes;
+	@Param({ "spin", "loop" })
+	public String image;
+	@Param({ "3", "1000" })
+	public int quantum;
+	@Param({ "true", "false" })
+	public boolean compiled;
+
+	private BenchmarkImages images;
+	private Object simulator;
+
+	@Setup(Level.Trial)
+	public void createImages() throws IOException {
+		images = new BenchmarkImages();
+	}
+	@Setup(Level.Iteration)
+	public void createSimulator() throws IOException, InterruptedException {
+		simulator = SimulatorHandles.create();
+		SimulatorHandles.setRoundRobinScheduler(simulator, quantum);
+		Object compiler = compiled ? SimulatorHandles.setProgramCompiler(simulator, 1) : null;
+		String path = images.path(image);
+		for (int i = 0; i < processes; i++) {
+			if (!SimulatorHandles.newProcess(simulator, i, 1, Integer.MAX_VALUE, path))
+				throw new IllegalStateException("Unable to create process " + i);
+		}
+		SimulatorHandles.executeSlice(simulator); //submits the image for compilation
+		while (compiler != null && SimulatorHandles.getCompiled(compiler) == 0)
+			Thread.sleep(10);
+	}
+	@TearDown(Level.Trial)
+	public void deleteImages() throws IOException {
+		images.delete();
+	}
+	@Benchmark
+	public void executeSlice() {
+		SimulatorHandles.executeSlice(simulator);
+	}
+}
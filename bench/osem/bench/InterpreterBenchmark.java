@@ -0,0 +1,73 @@
+package osem.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Steady-state cost of the interpreter and of a single time slice. Every process runs an image
+ * that never halts and has an unreachable CPU limit, so the process table never changes shape
+ * while measuring.
+ *
+ * Build together with src/ against jmh-core and jmh-generator-annprocess, then run e.g.
+ * {@code java -cp ... org.openjdk.jmh.Main InterpreterBenchmark -prof gc} to get ops/sec
+ * alongside allocations per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+	@Param({ "1", "5", "100", "10000" })
+	public int processes;
+	@Param({ "spin", "loop" })
+	public String image;
+	@Param({ "true", "false" })
+	public boolean predecoded;
+
+	private BenchmarkImages images;
+	private Object simulator;
+
+	@Setup(Level.Trial)
+	public void createImages() throws IOException {
+		images = new BenchmarkImages();
+	}
+	@Setup(Level.Iteration)
+	public void createSimulator() throws IOException {
+		simulator = SimulatorHandles.create();
+		SimulatorHandles.setPredecodedInterpreter(simulator, predecoded);
+		String path = images.path(image);
+		for (int i = 0; i < processes; i++) {
+			if (!SimulatorHandles.newProcess(simulator, i, 1, Integer.MAX_VALUE, path))
+				throw new IllegalStateException("Unable to create process " + i);
+		}
+		SimulatorHandles.executeSlice(simulator); //leaves a process marked as running
+	}
+	@TearDown(Level.Trial)
+	public void deleteImages() throws IOException {
+		images.delete();
+	}
+	@Benchmark
+	public boolean execOneInstruction() {
+		return SimulatorHandles.execOneInstruction(simulator);
+	}
+	@Benchmark
+	public void executeSlice() {
+		SimulatorHandles.executeSlice(simulator);
+	}
+}
@@ -0,0 +1,80 @@
+package osem.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the "runall" command: submits a batch of processes and executes slices until every
+ * one of them has terminated, core dumps included. Larger batches can be measured by
+ * overriding the parameter, e.g. {@code -p processes=1000000}. With more than one core the
+ * cores run free on their own threads, so set {@code cores} to at most the number of hardware
+ * threads of the host. With {@code batched} the processes, which all share one binary, are run
+ * as a single batch when they are given PIDs.
+ *
+ * Run with {@code -prof gc} for allocations per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunAllBenchmark {
+	@Param({ "1", "5", "100", "10000" })
+	public int processes;
+	@Param({ "mult_10_12.bin", "count" })
+	public String image;
+	@Param({ "true", "false" })
+	public boolean predecoded;
+	@Param({ "100000" })
+	public int maxCPU;
+	@Param({ "1", "4" })
+	public int cores;
+	@Param({ "false", "true" })
+	public boolean batched;
+
+	private BenchmarkImages images;
+	private String path;
+	private Object simulator;
+
+	@Setup(Level.Trial)
+	public void createImages() throws IOException {
+		images = new BenchmarkImages();
+		path = images.path(image);
+	}
+	@Setup(Level.Invocation)
+	public void submit() {
+		simulator = SimulatorHandles.create();
+		SimulatorHandles.setPredecodedInterpreter(simulator, predecoded);
+		SimulatorHandles.setCores(simulator, cores);
+		if (batched)
+			SimulatorHandles.setBatchInterpreter(simulator, 8, maxCPU + 1);
+		for (int i = 0; i < processes; i++) {
+			if (!SimulatorHandles.newProcess(simulator, i, 1, maxCPU, path))
+				throw new IllegalStateException("Unable to create process " + i);
+		}
+	}
+	@TearDown(Level.Trial)
+	public void deleteImages() throws IOException {
+		images.delete();
+	}
+	@Benchmark
+	public Object runall() {
+		SimulatorHandles.runAll(simulator);
+		return simulator;
+	}
+}
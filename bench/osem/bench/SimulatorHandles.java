@@ -0,0 +1,248 @@
+package osem.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Supplier;
+
+/**
+ * Access to the simulator from the benchmark package.
+ * The simulator lives in the default package, which cannot be imported, and JMH refuses
+ * benchmarks in the default package. Constant method handles get inlined by the JIT, so
+ * going through them costs nothing measurable.
+ */
+final class SimulatorHandles {
+	private static final MethodHandle CONSTRUCTOR;
+	private static final MethodHandle NEW_PROCESS;
+	private static final MethodHandle NEW_PROCESSES;
+	private static final MethodHandle EXEC_ONE_INSTRUCTION;
+	private static final MethodHandle EXECUTE_SLICE;
+	private static final MethodHandle IS_ALL_TERMINATED;
+	private static final MethodHandle SET_PREDECODED_INTERPRETER;
+	private static final MethodHandle RUN_ALL;
+	private static final MethodHandle SET_CORES;
+	private static final MethodHandle ROUND_ROBIN_SCHEDULER;
+	private static final MethodHandle SET_SCHEDULER;
+	private static final MethodHandle PROGRAM_COMPILER;
+	private static final MethodHandle SET_PROGRAM_COMPILER;
+	private static final MethodHandle GET_COMPILED;
+	private static final MethodHandle BATCH_INTERPRETER;
+	private static final MethodHandle SET_BATCH_INTERPRETER;
+	static {
+		try {
+			Class<?> simulator = Class.forName("Simulator");
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			CONSTRUCTOR = lookup.findConstructor(simulator, MethodType.methodType(void.class))
+					.asType(MethodType.methodType(Object.class));
+			NEW_PROCESS = lookup.findVirtual(simulator, "newProcess", MethodType.methodType(boolean.class, int.class, int.class, int.class, String.class))
+					.asType(MethodType.methodType(boolean.class, Object.class, int.class, int.class, int.class, String.class));
+			NEW_PROCESSES = lookup.findVirtual(simulator, "newProcesses", MethodType.methodType(boolean.class, int.class, int.class, int.class, int.class, String.class))
+					.asType(MethodType.methodType(boolean.class, Object.class, int.class, int.class, int.class, int.class, String.class));
+			EXEC_ONE_INSTRUCTION = lookup.findVirtual(simulator, "execOneInstruction", MethodType.methodType(boolean.class))
+					.asType(MethodType.methodType(boolean.class, Object.class));
+			EXECUTE_SLICE = lookup.findVirtual(simulator, "executeSlice", MethodType.methodType(void.class))
+					.asType(MethodType.methodType(void.class, Object.class));
+			IS_ALL_TERMINATED = lookup.findVirtual(simulator, "isAllTerminated", MethodType.methodType(boolean.class))
+					.asType(MethodType.methodType(boolean.class, Object.class));
+			SET_PREDECODED_INTERPRETER = lookup.findVirtual(simulator, "setPredecodedInterpreter", MethodType.methodType(void.class, boolean.class))
+					.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+			RUN_ALL = lookup.findVirtual(simulator, "runAll", MethodType.methodType(void.class))
+					.asType(MethodType.methodType(void.class, Object.class));
+			SET_CORES = lookup.findVirtual(simulator, "setCores", MethodType.methodType(void.class, int.class))
+					.asType(MethodType.methodType(void.class, Object.class, int.class));
+			ROUND_ROBIN_SCHEDULER = lookup.findConstructor(Class.forName("RoundRobinScheduler"), MethodType.methodType(void.class, int.class))
+					.asType(MethodType.methodType(Object.class, int.class));
+			SET_SCHEDULER = lookup.findVirtual(simulator, "setScheduler", MethodType.methodType(void.class, Supplier.class))
+					.asType(MethodType.methodType(void.class, Object.class, Supplier.class));
+			Class<?> compiler = Class.forName("ProgramCompiler");
+			PROGRAM_COMPILER = lookup.findConstructor(compiler, MethodType.methodType(void.class, int.class))
+					.asType(MethodType.methodType(Object.class, int.class));
+			SET_PROGRAM_COMPILER = lookup.findVirtual(simulator, "setProgramCompiler", MethodType.methodType(void.class, compiler))
+					.asType(MethodType.methodType(void.class, Object.class, Object.class));
+			GET_COMPILED = lookup.findVirtual(compiler, "getCompiled", MethodType.methodType(long.class))
+					.asType(MethodType.methodType(long.class, Object.class));
+			Class<?> batch = Class.forName("BatchInterpreter");
+			BATCH_INTERPRETER = lookup.findConstructor(batch, MethodType.methodType(void.class, int.class, int.class))
+					.asType(MethodType.methodType(Object.class, int.class, int.class));
+			SET_BATCH_INTERPRETER = lookup.findVirtual(simulator, "setBatchInterpreter", MethodType.methodType(void.class, batch))
+					.asType(MethodType.methodType(void.class, Object.class, Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	private SimulatorHandles() {
+	}
+	/**
+	 * Creates a new simulator.
+	 * @return the simulator instance.
+	 */
+	static Object create() {
+		try {
+			return (Object) CONSTRUCTOR.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls Simulator.newProcess.
+	 * @param sim the simulator instance.
+	 * @param userID an identifier representing a user.
+	 * @param procPriority the priority of the process.
+	 * @param maxCPU maximum number of CPU cycles available for this process.
+	 * @param filename a path to a binary to load.
+	 * @return true if process creation successful
+	 */
+	static boolean newProcess(Object sim, int userID, int procPriority, int maxCPU, String filename) {
+		try {
+			return (boolean) NEW_PROCESS.invokeExact(sim, userID, procPriority, maxCPU, filename);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls Simulator.newProcesses.
+	 * @param sim the simulator instance.
+	 * @param count the number of processes to create.
+	 * @param userID an identifier representing a user.
+	 * @param procPriority the priority of the processes.
+	 * @param maxCPU maximum number of CPU cycles available for each process.
+	 * @param filename a path to a binary to load.
+	 * @return true if the processes were created
+	 */
+	static boolean newProcesses(Object sim, int count, int userID, int procPriority, int maxCPU, String filename) {
+		try {
+			return (boolean) NEW_PROCESSES.invokeExact(sim, count, userID, procPriority, maxCPU, filename);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls Simulator.execOneInstruction.
+	 * @param sim the simulator instance.
+	 * @return true if the process did not halt.
+	 */
+	static boolean execOneInstruction(Object sim) {
+		try {
+			return (boolean) EXEC_ONE_INSTRUCTION.invokeExact(sim);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls Simulator.executeSlice.
+	 * @param sim the simulator instance.
+	 */
+	static void executeSlice(Object sim) {
+		try {
+			EXECUTE_SLICE.invokeExact(sim);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls Simulator.isAllTerminated.
+	 * @param sim the simulator instance.
+	 * @return true if no processes left
+	 */
+	static boolean isAllTerminated(Object sim) {
+		try {
+			return (boolean) IS_ALL_TERMINATED.invokeExact(sim);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls Simulator.setPredecodedInterpreter.
+	 * @param sim the simulator instance.
+	 * @param predecoded true to use the pre-decoded interpreter.
+	 */
+	static void setPredecodedInterpreter(Object sim, boolean predecoded) {
+		try {
+			SET_PREDECODED_INTERPRETER.invokeExact(sim, predecoded);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls Simulator.runAll.
+	 * @param sim the simulator instance.
+	 */
+	static void runAll(Object sim) {
+		try {
+			RUN_ALL.invokeExact(sim);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls Simulator.setCores.
+	 * @param sim the simulator instance.
+	 * @param count the number of cores.
+	 */
+	static void setCores(Object sim, int count) {
+		try {
+			SET_CORES.invokeExact(sim, count);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls Simulator.setScheduler with a round robin scheduler per core.
+	 * @param sim the simulator instance.
+	 * @param quantum the number of instructions per time slice.
+	 */
+	static void setRoundRobinScheduler(Object sim, int quantum) {
+		Supplier<Object> factory = () -> {
+			try {
+				return (Object) ROUND_ROBIN_SCHEDULER.invokeExact(quantum);
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+		};
+		try {
+			SET_SCHEDULER.invokeExact(sim, (Supplier) factory);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Creates a ProgramCompiler and hands it to Simulator.setProgramCompiler.
+	 * @param sim the simulator instance.
+	 * @param threshold the number of submissions of a binary after which it is compiled.
+	 * @return the compiler.
+	 */
+	static Object setProgramCompiler(Object sim, int threshold) {
+		try {
+			Object compiler = (Object) PROGRAM_COMPILER.invokeExact(threshold);
+			SET_PROGRAM_COMPILER.invokeExact(sim, compiler);
+			return compiler;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Calls ProgramCompiler.getCompiled.
+	 * @param compiler the compiler instance.
+	 * @return the number of binaries compiled.
+	 */
+	static long getCompiled(Object compiler) {
+		try {
+			return (long) GET_COMPILED.invokeExact(compiler);
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Creates a BatchInterpreter and hands it to Simulator.setBatchInterpreter.
+	 * @param sim the simulator instance.
+	 * @param minLanes the smallest number of processes run as a batch.
+	 * @param maxCycles the number of instructions a batch may execute.
+	 */
+	static void setBatchInterpreter(Object sim, int minLanes, int maxCycles) {
+		try {
+			SET_BATCH_INTERPRETER.invokeExact(sim, (Object) BATCH_INTERPRETER.invokeExact(minLanes, maxCycles));
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
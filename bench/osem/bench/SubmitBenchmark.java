@@ -0,0 +1,71 @@
+package osem.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of submitting the same binary over and over, one process at a time through newProcess
+ * or all at once through newProcesses. Each invocation starts from a fresh simulator so the
+ * process table does not grow without bound; one op is one submission. Submissions only get a PID once a slice starts, so this measures the image
+ * cache check and the lock-free enqueue that producer threads pay.
+ *
+ * Run with {@code -prof gc} for allocations per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubmitBenchmark {
+	private static final int submissions = 1000;
+
+	@Param({ "mult_10_12.bin", "count" })
+	public String image;
+
+	private BenchmarkImages images;
+	private String path;
+
+	@Setup(Level.Trial)
+	public void createImages() throws IOException {
+		images = new BenchmarkImages();
+		path = images.path(image);
+	}
+	@TearDown(Level.Trial)
+	public void deleteImages() throws IOException {
+		images.delete();
+	}
+	@Benchmark
+	@OperationsPerInvocation(submissions)
+	public Object newProcess() {
+		Object simulator = SimulatorHandles.create();
+		for (int i = 0; i < submissions; i++) {
+			if (!SimulatorHandles.newProcess(simulator, i, 1, 1000, path))
+				throw new IllegalStateException("Unable to create process " + i);
+		}
+		return simulator;
+	}
+	@Benchmark
+	@OperationsPerInvocation(submissions)
+	public Object newProcesses() {
+		Object simulator = SimulatorHandles.create();
+		if (!SimulatorHandles.newProcesses(simulator, submissions, 0, 1, 1000, path))
+			throw new IllegalStateException("Unable to create processes");
+		return simulator;
+	}
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Hands core dumps to a background thread that passes them on to another writer, so the
+ * simulator does not wait on the filesystem. Dumps are copied into a bounded queue of reused
+ * records and written in batches: the background thread takes everything queued at once and
+ * flushes the target once per batch. With the Coalesce policy, only the last dump of each
+ * binary in a batch is passed on, so each core file is written once per batch.
+ */
+public class AsyncCoreDumpWriter implements CoreDumpWriter {
+	/**
+	 * What to do with a core dump when the queue is full.
+	 */
+	public enum Policy {
+		/** Wait for the background thread to make room. */
+		Block,
+		/** Discard the new dump. */
+		Drop,
+		/**
+		 * Overwrite a queued dump of the same binary with the new one, since writing the new one
+		 * would replace it anyway. Waits if none is queued. Batches skip every dump of a binary
+		 * but the last one for the same reason. Only suitable for targets that keep one dump
+		 * per binary, such as TextCoreDumpWriter.
+		 */
+		Coalesce
+	}
+
+	private final CoreDumpWriter target;
+	private final Policy policy;
+	private final int capacity;
+	private ArrayDeque<CoreDump> pending; //Queued dumps, oldest first
+	private ArrayDeque<CoreDump> batch; //Dumps being written by the background thread
+	private final ArrayDeque<CoreDump> spare; //Records available for reuse
+	private final HashMap<String, CoreDump> latest; //Last dump of each binary in the batch, used by the background thread
+	private final Thread thread;
+	private boolean writing; //Whether the background thread is working on a batch
+	private boolean closed;
+	private long dropped;
+	private long coalesced;
+
+	/**
+	 * Starts the background thread.
+	 * @param target the writer that receives the core dumps.
+	 * @param capacity the number of dumps that may be queued.
+	 * @param policy what to do when the queue is full.
+	 */
+	public AsyncCoreDumpWriter(CoreDumpWriter target, int capacity, Policy policy) {
+		this.target = target;
+		this.policy = policy;
+		this.capacity = capacity;
+		pending = new ArrayDeque<CoreDump>(capacity);
+		batch = new ArrayDeque<CoreDump>(capacity);
+		spare = new ArrayDeque<CoreDump>(capacity);
+		latest = new HashMap<String, CoreDump>();
+		thread = new Thread(this::run, "core-dump-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	@Override
+	public synchronized void write(CoreDump dump) {
+		while (pending.size() >= capacity) {
+			if (policy == Policy.Drop) {
+				dropped++;
+				return;
+			}
+			if (policy == Policy.Coalesce) {
+				Iterator<CoreDump> newestFirst = pending.descendingIterator();
+				while (newestFirst.hasNext()) {
+					CoreDump queued = newestFirst.next();
+					if (queued.getName().equals(dump.getName())) {
+						queued.copyFrom(dump);
+						coalesced++;
+						return;
+					}
+				}
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped++;
+				return;
+			}
+		}
+		CoreDump record = spare.isEmpty() ? new CoreDump() : spare.pop();
+		record.copyFrom(dump);
+		pending.add(record);
+		notifyAll();
+	}
+	@Override
+	public void flush() {
+		synchronized (this) {
+			while (!pending.isEmpty() || writing) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		target.flush();
+	}
+	@Override
+	public void close() {
+		flush();
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		target.close();
+	}
+	/**
+	 * Get the number of core dumps discarded because the queue was full.
+	 * @return the number of dropped dumps.
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+	/**
+	 * Get the number of core dumps merged into a queued dump of the same binary, or skipped
+	 * because a later dump of the same binary was in the same batch.
+	 * @return the number of coalesced dumps.
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+	/**
+	 * Body of the background thread.
+	 */
+	private void run() {
+		while (true) {
+			synchronized (this) {
+				while (pending.isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending.isEmpty())
+					return;
+				ArrayDeque<CoreDump> swap = batch;
+				batch = pending;
+				pending = swap;
+				writing = true;
+				notifyAll();
+			}
+			int superseded = 0;
+			if (policy == Policy.Coalesce) {
+				for (CoreDump dump : batch)
+					latest.put(dump.getName(), dump);
+			}
+			for (CoreDump dump : batch) {
+				if (policy == Policy.Coalesce && latest.get(dump.getName()) != dump)
+					superseded++;
+				else
+					target.write(dump);
+			}
+			latest.clear();
+			target.flush();
+			synchronized (this) {
+				coalesced += superseded;
+				spare.addAll(batch);
+				batch.clear();
+				writing = false;
+				notifyAll();
+			}
+		}
+	}
+}
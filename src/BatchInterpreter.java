@@ -0,0 +1,199 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs batches of newly submitted processes that were loaded from the same binary ahead of
+ * time, all in one pass. A process has no input, so processes that start from the same code
+ * execute exactly the same instructions with exactly the same registers; they differ only in
+ * when their cpu cycle limit cuts them off. The batch therefore advances a single copy of the
+ * machine state, and the processes ride along with it as lanes. Lanes are sorted by cycle
+ * limit, and the active ones are always a suffix of that order: each time the shared state
+ * passes a lane's limit, that lane is retired with a snapshot of the state, and a STOP retires
+ * every lane still active.
+ *
+ * A retired lane becomes a complete outcome for its process, which the simulator then skips
+ * through slice by slice, as with the outcome cache. Scheduling, status output and core dumps
+ * are the same as if every process had been interpreted on its own.
+ *
+ * Batches are run while submissions are drained, after they are taken from the submission
+ * queue but before their processes are created and published to the new queue. Nothing else
+ * can see the processes yet, so the simulator does not hold its lock while a batch runs, and
+ * the cores, status output and other commands carry on meanwhile.
+ *
+ * This is not memoization. The outcome cache can only help a process whose code and limit
+ * match a process that has already run to completion, and the first such process still pays
+ * for a full run. A batch finds the outcomes of processes that have not run at all, whatever
+ * their limits, with a single interpretation of their shared code, so it also helps the first
+ * time a binary is submitted many times over. Each outcome it finds is added to the cache.
+ *
+ * A batch gives up after a fixed number of instructions, or when the shared state would run
+ * past the end of the code, and leaves the processes still active to be executed normally.
+ */
+public class BatchInterpreter {
+	private final int minLanes; //Smallest group of processes worth running as a batch
+	private final int maxCycles; //Instructions a batch may execute before giving up
+	private long[] groups = new long[64]; //Code segment and index into the drained processes, per candidate
+	private long[] lanes = new long[64]; //Cycle limit and index into the drained processes, per lane of the current batch
+	private final byte[] initialCode = new byte[ProcessTable.codeSize]; //Code the current batch started from
+	private final byte[] code = new byte[ProcessTable.codeSize]; //Code of the current batch
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder retired = new LongAdder();
+
+	/**
+	 * Creates a batch interpreter.
+	 * @param minLanes the smallest number of processes loaded from the same binary that are
+	 * run as a batch.
+	 * @param maxCycles the number of instructions a batch may execute before the processes
+	 * still in it are left to run normally.
+	 */
+	public BatchInterpreter(int minLanes, int maxCycles) {
+		this.minLanes = Math.max(1, minLanes);
+		this.maxCycles = maxCycles;
+	}
+	/**
+	 * Runs batches of processes that have been drained from the submission queue but not
+	 * created yet. Processes whose outcome is already complete are left alone.
+	 * @param table the table holding the shared code segments.
+	 * @param segments the shared code segment each process will be created from. The caller
+	 * holds a reference to each.
+	 * @param limits the cpu cycle limit of each process.
+	 * @param outcomes the outcome of each process, or null where there is none yet. Processes
+	 * retired by a batch are given a complete one.
+	 * @param count the number of processes.
+	 * @param cache the outcome cache to record batch results to, or null.
+	 */
+	public synchronized void run(ProcessTable table, int[] segments, int[] limits, OutcomeCache.Outcome[] outcomes,
+			int count, OutcomeCache cache) {
+		if (count < minLanes)
+			return;
+		if (groups.length < count)
+			groups = new long[Math.max(count, groups.length * 2)];
+		int candidates = 0;
+		for (int i = 0; i < count; i++) {
+			if (outcomes[i] == null || !outcomes[i].isComplete())
+				groups[candidates++] = (long) segments[i] << 32 | i;
+		}
+		Arrays.sort(groups, 0, candidates);
+		int start = 0;
+		while (start < candidates) {
+			int segment = (int) (groups[start] >>> 32);
+			int end = start + 1;
+			while (end < candidates && (int) (groups[end] >>> 32) == segment)
+				end++;
+			if (end - start >= minLanes)
+				runBatch(table, segment, limits, outcomes, start, end, cache);
+			start = end;
+		}
+	}
+	/**
+	 * Runs one batch of processes loaded from the same binary.
+	 * @param table the table holding the shared code segments.
+	 * @param segment the shared code segment of the batch.
+	 * @param limits the cpu cycle limit of each drained process.
+	 * @param outcomes the outcome of each drained process, or null where there is none yet.
+	 * @param start the first entry of the batch in groups.
+	 * @param end one past the last entry of the batch in groups.
+	 * @param cache the outcome cache to record results to, or null.
+	 */
+	private void runBatch(ProcessTable table, int segment, int[] limits, OutcomeCache.Outcome[] outcomes,
+			int start, int end, OutcomeCache cache) {
+		int count = end - start;
+		if (lanes.length < count)
+			lanes = new long[Math.max(count, lanes.length * 2)];
+		for (int i = 0; i < count; i++) {
+			int index = (int) groups[start + i];
+			lanes[i] = (long) limits[index] << 32 | index;
+		}
+		Arrays.sort(lanes, 0, count); //signed, so lanes are in ascending order of limit
+		table.getSharedCode(segment, initialCode);
+		System.arraycopy(initialCode, 0, code, 0, ProcessTable.codeSize);
+		batches.increment();
+		int active = 0; //lanes before this one have been retired
+		int pc = 0;
+		int accumulator = 0;
+		int psw = 0;
+		int cycles = 0;
+		while (active < count && cycles < maxCycles && pc < ProcessTable.codeSize) {
+			int instruction = code[pc++]&0xFF;
+			int opcode = instruction >> 5;
+			int operand = instruction & 0b11111;
+			cycles++;
+			switch (opcode) {
+				case 0b000: //STOP
+					break;
+				case 0b001: //LOAD
+					accumulator = code[operand]&0xFF;
+					break;
+				case 0b010: //STORE
+					code[operand] = (byte) accumulator;
+					break;
+				case 0b011: //ADD
+				case 0b100: //SUBTRACT
+					int result = opcode == 0b011 ? accumulator + (code[operand]&0xFF) : accumulator - (code[operand]&0xFF);
+					if (result > 0xFF)
+						psw |= 0b100;
+					if (result < 0)
+						psw |= 0b010;
+					if (result == 0)
+						psw |= 0b001;
+					accumulator = result&0xFF;
+					break;
+				case 0b101: //BRANCH (if positive)
+					if ((psw&0b011) == 0b000)
+						pc = operand;
+					break;
+				case 0b110: //BRANCH (if negative)
+					if ((psw&0b011) == 0b010)
+						pc = operand;
+					break;
+				case 0b111: //BRANCH (if zero)
+					if ((psw&0b011) == 0b001)
+						pc = operand;
+					break;
+			}
+			if (opcode == 0b000) { //every active lane completes
+				while (active < count)
+					retire(outcomes, limits, (int) lanes[active++], CoreDump.Reason.Completed, cycles, pc, accumulator, psw, cache);
+				break;
+			}
+			while (active < count && cycles > (int) (lanes[active] >> 32)) //lanes whose limit has just been passed
+				retire(outcomes, limits, (int) lanes[active++], CoreDump.Reason.CpuLimit, cycles, pc, accumulator, psw, cache);
+		}
+	}
+	/**
+	 * Gives a drained process the outcome its lane ended with.
+	 * @param outcomes the outcome of each drained process, or null where there is none yet.
+	 * @param limits the cpu cycle limit of each drained process.
+	 * @param index the process, as an index into outcomes.
+	 * @param reason why the lane was retired.
+	 * @param executedCycles the cycles executed, including the one that ended the lane.
+	 * @param programCounter the program counter at the end.
+	 * @param accumulator the accumulator at the end.
+	 * @param PSW the PSW at the end.
+	 * @param cache the outcome cache to record the result to, or null.
+	 */
+	private void retire(OutcomeCache.Outcome[] outcomes, int[] limits, int index, CoreDump.Reason reason, int executedCycles,
+			int programCounter, int accumulator, int PSW, OutcomeCache cache) {
+		OutcomeCache.Outcome outcome = outcomes[index];
+		if (outcome == null)
+			outcomes[index] = outcome = OutcomeCache.newOutcome(initialCode, limits[index]);
+		outcome.complete(reason, executedCycles, programCounter, accumulator, PSW, code);
+		if (cache != null)
+			cache.add(outcome);
+		retired.increment();
+	}
+	/**
+	 * Get the number of batches run.
+	 * @return the number of batches so far.
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+	/**
+	 * Get the number of processes whose outcome was found by a batch.
+	 * @return the number of retired lanes so far.
+	 */
+	public long getRetired() {
+		return retired.sum();
+	}
+}
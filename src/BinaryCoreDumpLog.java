@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Appends every core dump to a log of fixed-size binary records instead of writing one text
+ * file per binary. The log is split into segments "&lt;base&gt;.000000", "&lt;base&gt;.000001", ...
+ * of equal size, each memory-mapped while it is being filled, so a dump costs a few stores into
+ * memory rather than a file creation. Every dump is kept, including several from the same binary.
+ *
+ * Each segment starts with a header record, followed by records of recordSize bytes. The first
+ * byte of a record is its type. A dump record holds the fields written by CoreDump.putRecord and
+ * refers to its filename by an ID. A name record declares an ID: a 2 byte length, a 4 byte ID and
+ * the UTF-8 name, running on into as many following records as it needs. Names are declared
+ * again in every segment, so each segment can be read on its own. A name and a dump record
+ * always fit in one segment: names longer than getMaxNameLength() bytes are cut short to
+ * that length, at a character boundary, and counted by getTruncatedNames(). The first record of type
+ * 0 marks the end of the log. CoreDumpLogReader turns the records back into text, including
+ * those of segments written by older versions. A segment is only appended to by the version
+ * that created it; otherwise writing carries on in a new segment.
+ */
+public class BinaryCoreDumpLog implements CoreDumpWriter {
+	public static final int recordSize = 128;
+	public static final byte endRecord = 0;
+	public static final byte dumpRecord = 1;
+	public static final byte nameRecord = 2;
+	public static final int version = 2; //Version 2 added scheduling accounting to dump records
+	private static final byte[] magic = "OSEMCORE".getBytes(StandardCharsets.US_ASCII);
+
+	private final String base;
+	private final long segmentSize;
+	private int segment; //Index of the segment being filled
+	private MappedByteBuffer buffer; //The segment being filled, positioned at the next free record
+	private final HashMap<String, Integer> nameIDs; //Names declared in the current segment
+	private final int maxNameLength; //Longest name in bytes that fits in a segment along with the header and a dump record
+	private long truncatedNames; //Names cut short to maxNameLength
+
+	/**
+	 * Opens a log, appending to it if it already exists.
+	 * @param base path of the log, without the segment number.
+	 * @param segmentSize size of each segment in bytes.
+	 * @throws IOException if the log could not be opened.
+	 */
+	public BinaryCoreDumpLog(String base, long segmentSize) throws IOException {
+		if (segmentSize < recordSize * 4L || segmentSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Segment size out of range: " + segmentSize);
+		this.base = base;
+		this.segmentSize = segmentSize - segmentSize % recordSize;
+		maxNameLength = (int) Math.min(0xFFFF, this.segmentSize - 2 * recordSize - 8);
+		nameIDs = new HashMap<String, Integer>();
+		segment = 0;
+		while (Files.exists(segmentPath(base, segment + 1)))
+			segment++;
+		map(Files.exists(segmentPath(base, segment)));
+	}
+	/**
+	 * Get the path of a segment.
+	 * @param base path of the log, without the segment number.
+	 * @param index the segment number.
+	 * @return the path of the segment.
+	 */
+	public static Path segmentPath(String base, int index) {
+		return Paths.get(String.format("%s.%06d", base, index));
+	}
+	/**
+	 * Checks the header of a segment and skips over it.
+	 * @param segmentBuffer the segment, positioned at its start.
+	 * @return the version the segment was written with, or 0 if it is not a core dump log
+	 * segment this class can read.
+	 */
+	public static int readHeader(ByteBuffer segmentBuffer) {
+		byte[] found = new byte[magic.length];
+		segmentBuffer.get(found);
+		int foundVersion = 0;
+		if (Arrays.equals(found, magic)) {
+			foundVersion = segmentBuffer.getInt();
+			if (foundVersion < 1 || foundVersion > version || segmentBuffer.getInt() != recordSize)
+				foundVersion = 0;
+		}
+		segmentBuffer.position(recordSize);
+		return foundVersion;
+	}
+	@Override
+	public synchronized void write(CoreDump dump) {
+		Integer nameID = nameIDs.get(dump.getName());
+		if (nameID == null) {
+			byte[] name = dump.getName().getBytes(StandardCharsets.UTF_8);
+			if (name.length > maxNameLength) {
+				int length = maxNameLength;
+				while ((name[length]&0b11000000) == 0b10000000) //not the start of a character
+					length--;
+				name = Arrays.copyOf(name, length);
+				truncatedNames++;
+			}
+			int records = nameRecords(name.length);
+			if (buffer.remaining() < (records + 1) * recordSize)
+				nextSegment();
+			nameID = nameIDs.size();
+			nameIDs.put(dump.getName(), nameID);
+			int start = buffer.position();
+			buffer.put(nameRecord);
+			buffer.put((byte) 0);
+			buffer.putShort((short) name.length);
+			buffer.putInt(nameID);
+			buffer.put(name);
+			buffer.position(start + records * recordSize);
+		} else if (buffer.remaining() < recordSize) {
+			nextSegment();
+			write(dump);
+			return;
+		}
+		int start = buffer.position();
+		buffer.put(dumpRecord);
+		dump.putRecord(buffer, nameID);
+		buffer.position(start + recordSize);
+	}
+	@Override
+	public synchronized void flush() {
+		buffer.force();
+	}
+	@Override
+	public synchronized void close() {
+		buffer.force();
+	}
+	/**
+	 * Get the longest name a name record of this log can hold.
+	 * @return the length in bytes of UTF-8.
+	 */
+	public int getMaxNameLength() {
+		return maxNameLength;
+	}
+	/**
+	 * Get the number of name records whose name was too long to keep whole.
+	 * @return the number of names cut short so far, counting each segment they were declared in.
+	 */
+	public synchronized long getTruncatedNames() {
+		return truncatedNames;
+	}
+	/**
+	 * Get the number of records a name record takes up.
+	 * @param length the length of the name in bytes.
+	 * @return the number of records.
+	 */
+	public static int nameRecords(int length) {
+		return (8 + length + recordSize - 1) / recordSize;
+	}
+	/**
+	 * Starts filling the next segment.
+	 */
+	private void nextSegment() {
+		buffer.force();
+		segment++;
+		nameIDs.clear();
+		try {
+			map(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	/**
+	 * Maps the current segment and positions the buffer at its first free record.
+	 * @param existing true to append to an existing segment, false to start a new one.
+	 * @throws IOException if the segment could not be mapped.
+	 */
+	private void map(boolean existing) throws IOException {
+		try (FileChannel file = FileChannel.open(segmentPath(base, segment),
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+			buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+		if (!existing) {
+			buffer.put(magic);
+			buffer.putInt(version);
+			buffer.putInt(recordSize);
+			buffer.position(recordSize);
+			return;
+		}
+		int found = readHeader(buffer);
+		if (found == 0)
+			throw new IOException(segmentPath(base, segment) + " is not a core dump log segment");
+		if (found != version) { //records of an older layout; carry on in a new segment
+			segment++;
+			map(false);
+			return;
+		}
+		ArrayList<String> names = new ArrayList<String>();
+		while (buffer.remaining() >= recordSize && buffer.get(buffer.position()) != endRecord) {
+			int start = buffer.position();
+			if (buffer.get(start) == nameRecord) {
+				String name = readName(buffer);
+				nameIDs.put(name, names.size());
+				names.add(name);
+			} else {
+				buffer.position(start + recordSize);
+			}
+		}
+	}
+	/**
+	 * Reads a name record and skips over it.
+	 * @param in a buffer positioned at the start of a name record.
+	 * @return the name.
+	 */
+	public static String readName(ByteBuffer in) {
+		int start = in.position();
+		in.get();
+		in.get();
+		int length = in.getShort()&0xFFFF;
+		in.getInt();
+		byte[] name = new byte[length];
+		in.get(name);
+		in.position(start + nameRecords(length) * recordSize);
+		return new String(name, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,286 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Serves the commands TestSimulator reads to any number of clients at once, over a TCP port on
+ * the loopback address or a Unix domain socket. Each client sends commands one per line and
+ * gets back exactly what TestSimulator would have printed for them, errors included. "exit"
+ * ends the client's connection, not the server.
+ *
+ * Every client has a thread of its own, a virtual thread where the JVM has them. Commands go
+ * into a mailbox that a single simulator thread empties in batches, executing each batch in
+ * order and flushing each client's output once per batch. "plist" and "show" are instead
+ * served by the client's own thread, from snapshots of the processes taken between slices, so
+ * they are answered even while another client's "runall" is executing. Each client's commands
+ * still take effect in the order it sent them. Commands that reconfigure the simulator, such
+ * as "cores" or "checkpoint", wait for snapshots in progress and hold off new ones.
+ * Usage: CommandServer &lt;port | socket path&gt; [directory]
+ *
+ * Relative paths given to commands and text core dumps go to the directory, the working
+ * directory by default.
+ */
+public class CommandServer {
+	private static final Set<String> readOnly = Set.of("plist", "show"); //Served by the client's thread
+	private static final Set<String> concurrent = Set.of("sub", "subn", "run", "runall", "kill", "sleep", "block", "wake",
+			"metrics"); //Safe to execute while plist and show are being served
+	private final int maxBatch = 4096; //Commands the simulator thread takes from the mailbox at a time
+
+	private final Simulator simulator;
+	private final Path directory; //Where files named by commands and core dumps go, or null for the working directory
+	private final LinkedBlockingQueue<Command> mailbox;
+	private final ReentrantReadWriteLock exclusive; //Read while serving plist and show, written while reconfiguring
+	private final ThreadFactory clientThreads;
+
+	/**
+	 * A command waiting in the mailbox.
+	 */
+	private static final class Command {
+		final Client client;
+		final String line;
+		Command(Client client, String line) {
+			this.client = client;
+			this.line = line;
+		}
+	}
+
+	/**
+	 * One connection, read by its own thread.
+	 */
+	private final class Client implements Runnable {
+		final SocketChannel channel;
+		final PrintStream out; //Used by the simulator thread while the client has commands in the mailbox, else by the client's thread
+		final TestSimulator interpreter;
+		long queued; //Commands put in the mailbox, used by the client's thread only
+		long done; //Commands executed and flushed, guarded by this
+
+		Client(SocketChannel channel) {
+			this.channel = channel;
+			OutputStream socket = new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					write(new byte[] { (byte) b }, 0, 1);
+				}
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+					while (buffer.hasRemaining())
+						channel.write(buffer);
+				}
+			};
+			out = new PrintStream(new BufferedOutputStream(socket, 65536), false);
+			interpreter = new TestSimulator(out, out, directory);
+		}
+		@Override
+		public void run() {
+			Charset charset = Charset.defaultCharset();
+			try (channel) {
+				ByteBuffer input = ByteBuffer.allocate(8192);
+				byte[] line = new byte[256];
+				int length = 0;
+				boolean open = true;
+				while (open && channel.read(input) != -1) {
+					input.flip();
+					while (open && input.hasRemaining()) {
+						byte b = input.get();
+						if (b == '\n') {
+							open = handle(new String(line, 0, length, charset));
+							length = 0;
+						} else if (b != '\r') {
+							if (length == line.length)
+								line = Arrays.copyOf(line, length * 2);
+							line[length++] = b;
+						}
+					}
+					input.clear();
+				}
+				if (open && length > 0)
+					handle(new String(line, 0, length, charset));
+				awaitQueued();
+			} catch (IOException e) {
+				//the client went away
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		/**
+		 * Handles one command line.
+		 * @param line the command.
+		 * @return false if the client asked to disconnect.
+		 * @throws InterruptedException if interrupted while waiting for earlier commands.
+		 */
+		private boolean handle(String line) throws InterruptedException {
+			String command = line.split(" ", 2)[0];
+			if (command.equals("exit"))
+				return false;
+			if (!readOnly.contains(command)) {
+				queued++;
+				mailbox.add(new Command(this, line));
+				return true;
+			}
+			awaitQueued(); //so the snapshot reflects the client's earlier commands
+			exclusive.readLock().lock();
+			try {
+				interpreter.execute(simulator, line);
+			} finally {
+				exclusive.readLock().unlock();
+			}
+			out.flush();
+			return true;
+		}
+		/**
+		 * Waits until the simulator thread has executed every command of this client.
+		 * @throws InterruptedException if interrupted while waiting.
+		 */
+		private synchronized void awaitQueued() throws InterruptedException {
+			while (done < queued)
+				wait();
+		}
+		/**
+		 * Records that the simulator thread has executed one more command of this client.
+		 */
+		synchronized void executed() {
+			done++;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Creates a server for a simulator. Nothing else may drive the simulator while it is served.
+	 * @param simulator the simulator.
+	 * @param directory the directory that relative paths given to commands are resolved
+	 * against, or null to use the working directory.
+	 */
+	public CommandServer(Simulator simulator, Path directory) {
+		this.simulator = simulator;
+		this.directory = directory;
+		mailbox = new LinkedBlockingQueue<Command>();
+		exclusive = new ReentrantReadWriteLock(true);
+		clientThreads = newClientThreadFactory();
+	}
+	/**
+	 * Accepts clients until the server channel is closed, starting the simulator thread first.
+	 * @param server a bound server channel.
+	 * @throws IOException if accepting a client fails.
+	 */
+	public void serve(ServerSocketChannel server) throws IOException {
+		Thread thread = new Thread(this::runSimulator, "simulator");
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			while (true)
+				clientThreads.newThread(new Client(server.accept())).start();
+		} finally {
+			thread.interrupt();
+		}
+	}
+	/**
+	 * Body of the simulator thread: executes the commands in the mailbox, a batch at a time.
+	 */
+	private void runSimulator() {
+		ArrayList<Command> batch = new ArrayList<Command>(maxBatch);
+		while (true) {
+			try {
+				batch.add(mailbox.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			mailbox.drainTo(batch, maxBatch - 1);
+			for (Command command : batch)
+				execute(command);
+			for (Command command : batch)
+				command.client.out.flush();
+			for (Command command : batch)
+				command.client.executed();
+			batch.clear();
+		}
+	}
+	/**
+	 * Executes one command on the simulator thread. Failures, such as a process jumping outside
+	 * of its code during "runall", are reported to the client that sent the command.
+	 * @param command the command.
+	 */
+	private void execute(Command command) {
+		boolean reconfigures = !concurrent.contains(command.line.split(" ", 2)[0]);
+		if (reconfigures)
+			exclusive.writeLock().lock();
+		try {
+			command.client.interpreter.execute(simulator, command.line);
+		} catch (RuntimeException e) {
+			e.printStackTrace(command.client.out);
+		} finally {
+			if (reconfigures)
+				exclusive.writeLock().unlock();
+		}
+	}
+	/**
+	 * Creates the factory for client threads: virtual threads if the JVM supports them, which
+	 * it is asked through reflection so that the server still builds for older JVMs, or else
+	 * daemon platform threads.
+	 * @return the factory.
+	 */
+	private static ThreadFactory newClientThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return runnable -> {
+				Thread thread = new Thread(runnable, "client");
+				thread.setDaemon(true);
+				return thread;
+			};
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: CommandServer <port | socket path> [directory]");
+			return;
+		}
+		Path directory = args.length > 1 ? Paths.get(args[1]) : null;
+		Path socket = null;
+		ServerSocketChannel server;
+		if (!args[0].isEmpty() && args[0].chars().allMatch(Character::isDigit)) {
+			server = ServerSocketChannel.open(StandardProtocolFamily.INET);
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0])));
+		} else {
+			socket = Paths.get(args[0]);
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(UnixDomainSocketAddress.of(socket));
+		}
+		Simulator s = new Simulator();
+		if (directory != null)
+			s.setCoreDumpWriter(new TextCoreDumpWriter(directory));
+		Path socketFile = socket;
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			s.close();
+			if (socketFile != null) {
+				try {
+					Files.deleteIfExists(socketFile);
+				} catch (IOException e) {
+					//nothing more to do
+				}
+			}
+		}));
+		System.out.println("Listening on " + server.getLocalAddress());
+		new CommandServer(s, directory).serve(server);
+	}
+}
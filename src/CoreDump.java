@@ -0,0 +1,218 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A copy of a process's state taken when it terminates, along with the reason it terminated.
+ * Instances are meant to be reused: capture() overwrites every field.
+ */
+public class CoreDump {
+	public enum Reason {
+		Completed("Process completed normally"),
+		CpuLimit("Process reached CPU time limit"),
+		Killed("Process killed"),
+		Looping("Process repeated an earlier state and would never stop");
+		private final String message;
+		private Reason(String message) {
+			this.message = message;
+		}
+		/**
+		 * Get the line written at the end of a core dump for this reason.
+		 * @return the message.
+		 */
+		public String getMessage() {
+			return message;
+		}
+	}
+	private static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
+	private static final PImage.processStates[] states = PImage.processStates.values();
+	private static final PImage.processPriorities[] priorities = PImage.processPriorities.values();
+
+	private int PID;
+	private int UID;
+	private int state;
+	private int priority;
+	private int maxCycles;
+	private int executedCycles;
+	private String name;
+	private int programCounter;
+	private int accumulator;
+	private int PSW;
+	private final byte[] code = new byte[ProcessTable.codeSize];
+	private boolean accounted; //Whether the fields below are known; logs written before they existed lack them
+	private long admittedAt;
+	private long firstRunAt;
+	private long readyTicks;
+	private int preemptions;
+	private long terminatedAt;
+	private Reason reason;
+
+	/**
+	 * Copies the state of a process.
+	 * @param table the table holding the process.
+	 * @param pID the process.
+	 * @param why why the process terminated, or null if it has not.
+	 */
+	public void capture(ProcessTable table, int pID, Reason why) {
+		PID = pID;
+		UID = table.getUID(pID);
+		state = table.getState(pID);
+		priority = table.getPriority(pID);
+		maxCycles = table.getMaxCycles(pID);
+		executedCycles = table.getExecutedCycles(pID);
+		name = table.getName(pID);
+		programCounter = table.getProgramCounter(pID);
+		accumulator = table.getAccumulator(pID);
+		PSW = table.getPSW(pID);
+		for (int i = 0; i < code.length; i++)
+			code[i] = (byte) table.getCode(pID, i);
+		accounted = true;
+		admittedAt = table.getAdmittedAt(pID);
+		firstRunAt = table.getFirstRunAt(pID);
+		readyTicks = table.getReadyTicks(pID);
+		preemptions = table.getPreemptions(pID);
+		terminatedAt = table.getTerminatedAt(pID);
+		reason = why;
+	}
+	/**
+	 * Copies another core dump.
+	 * @param other the core dump to copy.
+	 */
+	public void copyFrom(CoreDump other) {
+		PID = other.PID;
+		UID = other.UID;
+		state = other.state;
+		priority = other.priority;
+		maxCycles = other.maxCycles;
+		executedCycles = other.executedCycles;
+		name = other.name;
+		programCounter = other.programCounter;
+		accumulator = other.accumulator;
+		PSW = other.PSW;
+		System.arraycopy(other.code, 0, code, 0, code.length);
+		accounted = other.accounted;
+		admittedAt = other.admittedAt;
+		firstRunAt = other.firstRunAt;
+		readyTicks = other.readyTicks;
+		preemptions = other.preemptions;
+		terminatedAt = other.terminatedAt;
+		reason = other.reason;
+	}
+	/**
+	 * Writes the dump as a fixed-size record of a BinaryCoreDumpLog, without the filename.
+	 * @param out the buffer to write to, positioned at the start of the record.
+	 * @param nameID the ID the log gave the filename.
+	 */
+	public void putRecord(ByteBuffer out, int nameID) {
+		out.put((byte) reason.ordinal());
+		out.put((byte) state);
+		out.put((byte) priority);
+		out.put((byte) 0);
+		out.putInt(PID);
+		out.putInt(UID);
+		out.putInt(maxCycles);
+		out.putInt(executedCycles);
+		out.putInt(programCounter);
+		out.putInt(accumulator);
+		out.putInt(PSW);
+		out.putInt(nameID);
+		out.put(code);
+		out.putLong(admittedAt);
+		out.putLong(firstRunAt);
+		out.putLong(readyTicks);
+		out.putLong(terminatedAt);
+		out.putInt(preemptions);
+	}
+	/**
+	 * Reads a record written by putRecord.
+	 * @param in the buffer to read from, positioned where putRecord started writing.
+	 * @param names the filenames of the log, indexed by ID.
+	 * @param version the version of the log. Records before version 2 have no scheduling
+	 * accounting.
+	 */
+	public void getRecord(ByteBuffer in, List<String> names, int version) {
+		reason = Reason.values()[in.get()];
+		state = in.get();
+		priority = in.get();
+		in.get();
+		PID = in.getInt();
+		UID = in.getInt();
+		maxCycles = in.getInt();
+		executedCycles = in.getInt();
+		programCounter = in.getInt();
+		accumulator = in.getInt();
+		PSW = in.getInt();
+		name = names.get(in.getInt());
+		in.get(code);
+		accounted = version >= 2;
+		if (accounted) {
+			admittedAt = in.getLong();
+			firstRunAt = in.getLong();
+			readyTicks = in.getLong();
+			terminatedAt = in.getLong();
+			preemptions = in.getInt();
+		}
+	}
+	/**
+	 * Get the process ID of the process.
+	 * @return the PID.
+	 */
+	public int getPID() {
+		return PID;
+	}
+	/**
+	 * Get the name of the binary the process was loaded from.
+	 * @return the filename.
+	 */
+	public String getName() {
+		return name;
+	}
+	/**
+	 * Get the reason the process terminated.
+	 * @return the reason, or null if the process had not terminated.
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+	/**
+	 * Appends the status of the process in the same format the "show" command prints.
+	 * @param out where to append the status.
+	 */
+	public void appendStatus(StringBuilder out) {
+		out.append("PID = ").append(PID).append('\n');
+		out.append("userID = ").append(UID).append('\n');
+		out.append("state = ").append(states[state]).append('\n');
+		out.append("priority = ").append(priorities[priority]).append('\n');
+		out.append("max CPU cycles = ").append(maxCycles).append('\n');
+		out.append("CPU cycles used = ").append(executedCycles).append('\n');
+		if (accounted) {
+			out.append("admitted at tick = ").append(admittedAt).append('\n');
+			out.append("first run at tick = ");
+			if (firstRunAt == -1)
+				out.append("never");
+			else
+				out.append(firstRunAt);
+			out.append('\n');
+			out.append("ticks ready = ").append(readyTicks).append('\n');
+			out.append("preemptions = ").append(preemptions).append('\n');
+			if (reason != null)
+				out.append("terminated at tick = ").append(terminatedAt).append('\n');
+		}
+		out.append("filename = ").append(name).append('\n');
+		out.append("PC = ").append(programCounter).append('\n');
+		out.append("AC = ").append(accumulator).append('\n');
+		for (int i = 0; i < code.length; i++) {
+			out.append(hexDigits[(code[i] >> 4) & 0xF]).append(hexDigits[code[i] & 0xF]).append(' ');
+			if ((i + 1) % 8 == 0)
+				out.append('\n');
+		}
+		out.append('\n');
+	}
+	/**
+	 * Appends the full text of the core dump: the status followed by the termination reason.
+	 * @param out where to append the core dump.
+	 */
+	public void appendTo(StringBuilder out) {
+		appendStatus(out);
+		out.append(reason.getMessage());
+	}
+}
@@ -0,0 +1,54 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Prints the core dumps stored in a BinaryCoreDumpLog in the same text format as the ".core"
+ * files, separated by blank lines.
+ * Usage: CoreDumpLogReader &lt;log base path&gt; [PID]
+ */
+public class CoreDumpLogReader {
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: CoreDumpLogReader <log base path> [PID]");
+			return;
+		}
+		int onlyPID = args.length > 1 ? Integer.parseInt(args[1]) : -1;
+		CoreDump dump = new CoreDump();
+		StringBuilder output = new StringBuilder(512);
+		for (int segment = 0; Files.exists(BinaryCoreDumpLog.segmentPath(args[0], segment)); segment++) {
+			ByteBuffer buffer;
+			try (FileChannel file = FileChannel.open(BinaryCoreDumpLog.segmentPath(args[0], segment), StandardOpenOption.READ)) {
+				buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+			}
+			int version = BinaryCoreDumpLog.readHeader(buffer);
+			if (version == 0) {
+				System.err.println(BinaryCoreDumpLog.segmentPath(args[0], segment) + " is not a core dump log segment");
+				return;
+			}
+			ArrayList<String> names = new ArrayList<String>();
+			while (buffer.remaining() >= BinaryCoreDumpLog.recordSize) {
+				int start = buffer.position();
+				byte type = buffer.get(start);
+				if (type == BinaryCoreDumpLog.endRecord)
+					break;
+				if (type == BinaryCoreDumpLog.nameRecord) {
+					names.add(BinaryCoreDumpLog.readName(buffer));
+					continue;
+				}
+				buffer.position(start + 1);
+				dump.getRecord(buffer, names, version);
+				buffer.position(start + BinaryCoreDumpLog.recordSize);
+				if (onlyPID != -1 && dump.getPID() != onlyPID)
+					continue;
+				output.setLength(0);
+				dump.appendTo(output);
+				System.out.println(output);
+				System.out.println();
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ * Receives the core dump of every process that terminates.
+ * Implementations must be safe to call from more than one thread.
+ */
+public interface CoreDumpWriter {
+	/**
+	 * Records a core dump. The dump may be reused by the caller as soon as this returns, so
+	 * implementations must copy anything they keep.
+	 * @param dump the core dump.
+	 */
+	void write(CoreDump dump);
+	/**
+	 * Waits until every core dump written so far has reached its destination.
+	 */
+	void flush();
+	/**
+	 * Flushes and releases any resources held. Nothing may be written afterwards.
+	 */
+	void close();
+}
@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records scheduling and execution events into a preallocated ring of fixed-size records, which
+ * a background thread writes to a file. Recording an event allocates nothing and takes no lock:
+ * a producer claims a slot by incrementing a shared sequence number, fills it in, and publishes
+ * it. Every event therefore has a place in a single total order, which is the order of the file.
+ * When the ring is full, producers wait for the background thread to make room, so no event is
+ * lost.
+ *
+ * The file starts with a header record and continues with records of recordSize bytes, all
+ * little-endian. Every record has the event type in its first byte, the core in its second (-1
+ * if none), the PID at offset 4, the core's clock in ticks at offset 8, and four event-specific
+ * ints at offsets 16, 20, 24 and 28:
+ * <ul>
+ * <li>Submit: userID, priority, max cpu cycles, name ID.</li>
+ * <li>Admit, when a process enters a ready queue: 1 if it came from another core's, else 0.</li>
+ * <li>Dispatch: nothing.</li>
+ * <li>Preempt: cpu cycles used so far.</li>
+ * <li>Store, into the process's code: address, value.</li>
+ * <li>Terminate: CoreDump.Reason ordinal, cpu cycles used.</li>
+ * <li>Kill: cpu cycles used.</li>
+ * <li>Sleep, when a ready or running process is blocked or put to sleep: its new state as a
+ * processStates ordinal, then the tick it wakes up at as two ints, low half first, or 0 if
+ * it is blocked.</li>
+ * <li>Wake, when a sleeping or blocked process becomes ready again: nothing.</li>
+ * <li>Name, declaring a name ID in the PID field: the length in bytes of the UTF-8 name, which
+ * fills as many following records as it needs.</li>
+ * </ul>
+ * A name event and its name take up at most half of the ring: longer names are cut short to
+ * getMaxNameLength() bytes, at a character boundary. Otherwise a name needing more records
+ * than the ring holds would wait forever for room.
+ * TraceReplay reads the file back.
+ */
+public class EventTrace {
+	public static final int recordSize = 32;
+	public static final int version = 1;
+	public static final byte submitEvent = 1;
+	public static final byte admitEvent = 2;
+	public static final byte dispatchEvent = 3;
+	public static final byte preemptEvent = 4;
+	public static final byte storeEvent = 5;
+	public static final byte terminateEvent = 6;
+	public static final byte killEvent = 7;
+	public static final byte nameEvent = 8;
+	public static final byte sleepEvent = 9;
+	public static final byte wakeEvent = 10;
+	private static final byte[] magic = "OSEMTRAC".getBytes(StandardCharsets.US_ASCII);
+	private static final long idleNanos = 100000; //How long the background thread sleeps when the ring is empty
+
+	private final long[] ring; //Four longs per record
+	private final int mask; //Number of records in the ring, minus one
+	private final int maxNameLength; //Longest name in bytes, so that a name event takes up at most half of the ring
+	private final AtomicLong claimed; //Sequence number of the next record to be claimed
+	private final AtomicLongArray published; //Per slot, one past the sequence number last published in it
+	private volatile long consumed; //Sequence number of the next record the background thread will write
+	private volatile boolean closed;
+	private final BitSet declaredNames; //Name IDs already written, guarded by the simulator's monitor
+	private final FileChannel file;
+	private final ByteBuffer output; //Records on their way to the file, used by the background thread only
+	private final Thread thread;
+	private final LongAdder stalls; //Times a producer found the ring full
+
+	/**
+	 * Creates the trace file, replacing any existing one, and starts the background thread.
+	 * @param path the file to write.
+	 * @param capacity the number of records the ring holds, rounded up to a power of two.
+	 * @throws IOException if the file could not be created.
+	 */
+	public EventTrace(String path, int capacity) throws IOException {
+		int records = Integer.highestOneBit(Math.max(capacity, 64) - 1) << 1;
+		ring = new long[records * 4];
+		mask = records - 1;
+		maxNameLength = (records / 2 - 1) * recordSize;
+		claimed = new AtomicLong();
+		published = new AtomicLongArray(records);
+		declaredNames = new BitSet();
+		stalls = new LongAdder();
+		file = FileChannel.open(Paths.get(path), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		output = ByteBuffer.allocateDirect(Math.min(records / 2, 2048) * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+		output.put(magic);
+		output.putInt(version);
+		output.putInt(recordSize);
+		output.position(recordSize);
+		thread = new Thread(this::run, "event-trace");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	/**
+	 * Records a process being given its PID. The caller must hold the simulator's monitor.
+	 * @param table the table holding the process.
+	 * @param PID the process.
+	 * @param tick the current time.
+	 */
+	public void submitted(ProcessTable table, int PID, long tick) {
+		int nameID = table.getNameID(PID);
+		if (!declaredNames.get(nameID)) {
+			declaredNames.set(nameID);
+			byte[] name = table.getName(PID).getBytes(StandardCharsets.UTF_8);
+			if (name.length > maxNameLength) {
+				int length = maxNameLength;
+				while ((name[length]&0b11000000) == 0b10000000) //not the start of a character
+					length--;
+				name = Arrays.copyOf(name, length);
+			}
+			int extra = (name.length + recordSize - 1) / recordSize;
+			long sequence = claim(1 + extra);
+			if (sequence == -1)
+				return;
+			fill(sequence, nameEvent, -1, nameID, tick, name.length, 0, 0, 0);
+			for (int i = 0; i < extra; i++) {
+				int base = (int) ((sequence + 1 + i) & mask) * 4;
+				for (int j = 0; j < 4; j++) {
+					long word = 0;
+					for (int k = 0; k < 8; k++) {
+						int index = i * recordSize + j * 8 + k;
+						if (index < name.length)
+							word |= (name[index] & 0xFFL) << (8 * k);
+					}
+					ring[base + j] = word;
+				}
+			}
+			for (int i = 0; i <= extra; i++)
+				published.lazySet((int) ((sequence + i) & mask), sequence + i + 1);
+		}
+		record(submitEvent, -1, PID, tick, table.getUID(PID), table.getPriority(PID), table.getMaxCycles(PID), nameID);
+	}
+	/**
+	 * Records an event.
+	 * @param type the event type.
+	 * @param core the core, or -1.
+	 * @param PID the process.
+	 * @param tick the core's clock, or the current time if there is no core.
+	 * @param a the first event-specific value.
+	 * @param b the second event-specific value.
+	 * @param c the third event-specific value.
+	 * @param d the fourth event-specific value.
+	 */
+	public void record(byte type, int core, int PID, long tick, int a, int b, int c, int d) {
+		long sequence = claim(1);
+		if (sequence == -1)
+			return;
+		fill(sequence, type, core, PID, tick, a, b, c, d);
+		published.lazySet((int) (sequence & mask), sequence + 1);
+	}
+	/**
+	 * Claims consecutive records, waiting until the ring has room for them.
+	 * @param count the number of records.
+	 * @return the sequence number of the first record, or -1 if the trace was closed.
+	 */
+	private long claim(int count) {
+		if (closed)
+			return -1;
+		long sequence = claimed.getAndAdd(count);
+		if (sequence + count - consumed > mask + 1) {
+			stalls.increment();
+			while (sequence + count - consumed > mask + 1) {
+				if (closed)
+					return -1;
+				LockSupport.unpark(thread);
+				Thread.yield();
+			}
+		}
+		return sequence;
+	}
+	/**
+	 * Fills in a claimed record.
+	 * @param sequence the sequence number of the record.
+	 * @param type the event type.
+	 * @param core the core, or -1.
+	 * @param PID the process.
+	 * @param tick the time of the event.
+	 * @param a the first event-specific value.
+	 * @param b the second event-specific value.
+	 * @param c the third event-specific value.
+	 * @param d the fourth event-specific value.
+	 */
+	private void fill(long sequence, byte type, int core, int PID, long tick, int a, int b, int c, int d) {
+		int base = (int) (sequence & mask) * 4;
+		ring[base] = (type & 0xFFL) | (core & 0xFFL) << 8 | (long) PID << 32;
+		ring[base + 1] = tick;
+		ring[base + 2] = (a & 0xFFFFFFFFL) | (long) b << 32;
+		ring[base + 3] = (c & 0xFFFFFFFFL) | (long) d << 32;
+	}
+	/**
+	 * Get the longest name a name event holds.
+	 * @return the length in bytes of UTF-8.
+	 */
+	public int getMaxNameLength() {
+		return maxNameLength;
+	}
+	/**
+	 * Get the number of times a producer had to wait for room in the ring.
+	 * @return the number of stalls so far.
+	 */
+	public long getStalls() {
+		return stalls.sum();
+	}
+	/**
+	 * Get the number of records claimed, including name records.
+	 * @return the number of records so far.
+	 */
+	public long getRecords() {
+		return claimed.get();
+	}
+	/**
+	 * Writes every event recorded so far and closes the file. Nothing may be recording events
+	 * while this runs; events recorded afterwards are ignored.
+	 */
+	public void close() {
+		closed = true;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	/**
+	 * Body of the background thread: copies published records to the file in order.
+	 */
+	private void run() {
+		try {
+			long next = 0;
+			while (true) {
+				boolean finishing = closed;
+				int base = (int) (next & mask);
+				if (published.get(base) == next + 1) {
+					output.putLong(ring[base * 4]);
+					output.putLong(ring[base * 4 + 1]);
+					output.putLong(ring[base * 4 + 2]);
+					output.putLong(ring[base * 4 + 3]);
+					next++;
+					if (!output.hasRemaining()) {
+						write();
+						consumed = next;
+					}
+					continue;
+				}
+				write();
+				consumed = next;
+				if (finishing && next >= claimed.get())
+					break;
+				if (finishing) //a record was claimed but is still being filled in
+					Thread.yield();
+				else
+					LockSupport.parkNanos(idleNanos);
+			}
+			file.force(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			try {
+				file.close();
+			} catch (IOException e) {
+				//nothing more to lose
+			}
+		}
+	}
+	/**
+	 * Writes the output buffer to the file.
+	 * @throws IOException if writing fails.
+	 */
+	private void write() throws IOException {
+		output.flip();
+		while (output.hasRemaining())
+			file.write(output);
+		output.clear();
+	}
+}
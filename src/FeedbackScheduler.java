@@ -0,0 +1,146 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A multi-level feedback queue. Processes start on a level picked from their priority, High on
+ * the top level, and drop a level every time they use up a whole time slice. Higher levels
+ * always run first, while lower levels get longer time slices, so short interactive jobs finish
+ * quickly and long CPU-bound jobs switch less often. A bitmap of non-empty levels makes picking
+ * the next process constant time.
+ */
+public class FeedbackScheduler implements Scheduler {
+	private final int[] quanta; //Time slice of each level, top level first
+	private ProcessQueue[] queues;
+	private byte[] level; //Level of each queued process, indexed by PID
+	private int nonEmpty; //Bit n is set when queues[n] holds a process
+	private int size;
+	private ProcessTable table;
+	/**
+	 * Creates a scheduler whose time slice doubles on every level, up to Integer.MAX_VALUE.
+	 * @param quantum the time slice of the top level.
+	 * @param levels the number of levels, from 1 to 32.
+	 * @throws IllegalArgumentException if there are too few or too many levels.
+	 */
+	public FeedbackScheduler(int quantum, int levels) {
+		if (levels < 1 || levels > Integer.SIZE)
+			throw new IllegalArgumentException("A feedback scheduler needs 1 to " + Integer.SIZE + " levels");
+		quanta = new int[levels];
+		for (int i = 0; i < levels; i++)
+			quanta[i] = (int) Math.min((long) quantum << i, Integer.MAX_VALUE);
+	}
+	@Override
+	public void init(ProcessTable table) {
+		this.table = table;
+		queues = new ProcessQueue[quanta.length];
+		for (int i = 0; i < queues.length; i++)
+			queues[i] = new ProcessQueue(table);
+		level = new byte[64];
+		nonEmpty = 0;
+		size = 0;
+	}
+	@Override
+	public void admit(int PID) {
+		int highest = PImage.processPriorities.values().length - 1;
+		push(PID, Math.min(highest - table.getPriority(PID), quanta.length - 1));
+	}
+	/**
+	 * Keeps the level the process had reached on the other scheduler, so being stolen does not
+	 * undo its demotion.
+	 */
+	@Override
+	public void adopt(int PID, Scheduler from) {
+		if (!(from instanceof FeedbackScheduler)) {
+			admit(PID);
+			return;
+		}
+		FeedbackScheduler other = (FeedbackScheduler) from;
+		other.grow(PID);
+		push(PID, Math.min(other.level[PID], quanta.length - 1));
+	}
+	@Override
+	public void requeue(int PID) {
+		grow(PID);
+		push(PID, Math.min(level[PID] + 1, quanta.length - 1));
+	}
+	@Override
+	public int next() {
+		if (nonEmpty == 0)
+			return -1;
+		int top = Integer.numberOfTrailingZeros(nonEmpty);
+		int PID = queues[top].pop();
+		if (queues[top].isEmpty())
+			nonEmpty &= ~(1 << top);
+		size--;
+		return PID;
+	}
+	@Override
+	public void remove(int PID) {
+		int l = level[PID];
+		queues[l].remove(PID);
+		if (queues[l].isEmpty())
+			nonEmpty &= ~(1 << l);
+		size--;
+	}
+	@Override
+	public int size() {
+		return size;
+	}
+	@Override
+	public int getQuantum(int PID) {
+		grow(PID);
+		return quanta[level[PID]];
+	}
+	@Override
+	public int getSteadyQuantum(int PID) {
+		grow(PID);
+		return level[PID] == quanta.length - 1 ? quanta[level[PID]] : 0; //requeue() moves it down until the bottom level
+	}
+	/**
+	 * Adds a process to a level.
+	 * @param PID the process.
+	 * @param l the level.
+	 */
+	private void push(int PID, int l) {
+		grow(PID);
+		level[PID] = (byte) l;
+		queues[l].push(PID);
+		nonEmpty |= 1 << l;
+		size++;
+	}
+	/**
+	 * Makes room for the level of a process; processes never added are on the top level.
+	 * @param PID the process.
+	 */
+	private void grow(int PID) {
+		if (PID >= level.length)
+			level = Arrays.copyOf(level, Math.max(level.length * 2, PID + 1));
+	}
+	/**
+	 * Writes the queues and the level of every process seen so far, including the running one,
+	 * whose next time slice and level depend on it.
+	 */
+	@Override
+	public void checkpoint(DataOutput out) throws IOException {
+		out.writeInt(queues.length);
+		for (ProcessQueue queue : queues)
+			queue.checkpoint(out);
+		out.writeInt(nonEmpty);
+		out.writeInt(size);
+		out.writeInt(level.length);
+		out.write(level);
+	}
+	@Override
+	public void restore(DataInput in) throws IOException {
+		int levels = in.readInt();
+		if (levels != queues.length)
+			throw new IOException("Checkpoint has " + levels + " feedback levels, not " + queues.length);
+		for (ProcessQueue queue : queues)
+			queue.restore(in);
+		nonEmpty = in.readInt();
+		size = in.readInt();
+		level = new byte[in.readInt()];
+		in.readFully(level);
+	}
+}
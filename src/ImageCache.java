@@ -0,0 +1,150 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads binaries into shared code segments of a process table, reading each binary only once
+ * for as long as it stays unchanged on disk. Entries are keyed by path and checked against the
+ * file's modification time and size at most once every recheckNanos, so a rebuilt binary is
+ * picked up by the submissions that follow within a second, while processes already running
+ * keep the old code. The cache holds one reference to each segment it has loaded.
+ *
+ * Looking up a binary that is cached and was checked recently takes no lock and makes no
+ * system call: a read of a concurrent map and an atomic increment of the segment's reference
+ * count. Loading, reloading and checking a binary synchronize on the cache.
+ */
+public class ImageCache {
+	private static final long recheckNanos = 1_000_000_000L; //How long a binary is trusted not to have changed
+
+	/**
+	 * A loaded binary. Replaced rather than updated when the binary changes.
+	 */
+	private static final class Entry {
+		final long modified;
+		final long size;
+		final int segment;
+		volatile long checked; //System.nanoTime() when the file was last seen unchanged
+		Entry(long modified, long size, int segment, long checked) {
+			this.modified = modified;
+			this.size = size;
+			this.segment = segment;
+			this.checked = checked;
+		}
+	}
+
+	private final ProcessTable table;
+	private final ConcurrentHashMap<String, Entry> entries;
+	private final ByteBuffer buffer; //Scratch space for reading binaries
+	private final byte[] image;
+
+	/**
+	 * Creates an empty cache.
+	 * @param table the table to create code segments in.
+	 */
+	public ImageCache(ProcessTable table) {
+		this.table = table;
+		entries = new ConcurrentHashMap<String, Entry>();
+		buffer = ByteBuffer.allocate(ProcessTable.codeSize);
+		image = buffer.array();
+	}
+	/**
+	 * Finds the code segment for a binary, loading the binary if it is not cached or has
+	 * changed. Only the first codeSize bytes of the file are used. Safe to call from any
+	 * thread.
+	 * @param filename a path to a binary.
+	 * @return the ID of the shared code segment, or -1 if the binary could not be read. The
+	 * caller holds a reference to the segment and must hand it to ProcessTable.create() or
+	 * release it with ProcessTable.unshare().
+	 */
+	public int lookup(String filename) {
+		while (true) {
+			Entry entry = entries.get(filename);
+			if (entry == null || System.nanoTime() - entry.checked > recheckNanos)
+				return load(filename);
+			if (table.tryRetain(entry.segment)) {
+				if (entries.get(filename) == entry) //still cached, so the segment was never released
+					return entry.segment;
+				table.unshare(entry.segment);
+			}
+		}
+	}
+	/**
+	 * Checks a binary against the cache, reading it if it is not cached or has changed.
+	 * @param filename a path to a binary.
+	 * @return the ID of the shared code segment, with a reference for the caller, or -1 if the
+	 * binary could not be read.
+	 */
+	private int load(String filename) {
+		Path path;
+		BasicFileAttributes attributes;
+		try {
+			path = Paths.get(filename);
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException | InvalidPathException e) {
+			return -1;
+		}
+		long modified = attributes.lastModifiedTime().toMillis();
+		synchronized (this) {
+			Entry entry = entries.get(filename);
+			if (entry != null && entry.modified == modified && entry.size == attributes.size()) {
+				entry.checked = System.nanoTime();
+				table.retain(entry.segment);
+				return entry.segment;
+			}
+			buffer.clear();
+			try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+				while (buffer.hasRemaining() && file.read(buffer) != -1)
+					;
+			} catch (IOException e) {
+				return -1;
+			}
+			int segment = table.share(image, buffer.position());
+			entries.put(filename, new Entry(modified, attributes.size(), segment, System.nanoTime()));
+			if (entry != null)
+				table.unshare(entry.segment); //only once lookups can no longer find it
+			table.retain(segment);
+			return segment;
+		}
+	}
+	/**
+	 * Writes the cached binaries to a checkpoint. Each holds a reference to its shared code
+	 * segment, which the process table saves along with the segment.
+	 * @param out the checkpoint.
+	 * @throws IOException if writing fails.
+	 */
+	public synchronized void checkpoint(DataOutput out) throws IOException {
+		out.writeInt(entries.size());
+		for (String filename : entries.keySet()) {
+			Entry entry = entries.get(filename);
+			out.writeUTF(filename);
+			out.writeLong(entry.modified);
+			out.writeLong(entry.size);
+			out.writeInt(entry.segment);
+		}
+	}
+	/**
+	 * Replaces the cached binaries with those written by checkpoint(), once the process table
+	 * has been restored from the same checkpoint.
+	 * @param in the checkpoint.
+	 * @throws IOException if reading fails.
+	 */
+	public synchronized void restore(DataInput in) throws IOException {
+		entries.clear();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			String filename = in.readUTF();
+			long modified = in.readLong();
+			long size = in.readLong();
+			entries.put(filename, new Entry(modified, size, in.readInt(), System.nanoTime() - recheckNanos - 1));
+		}
+	}
+}
@@ -0,0 +1,199 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers how processes ended. A process has no input and shares nothing with other
+ * processes, so everything it does follows from its initial code and its cpu cycle limit. Once
+ * one process has run to completion, any later process with the same code and limit will end
+ * with the same registers, code and cycle count, for the same reason.
+ *
+ * Entries are keyed by the initial code and the cycle limit. The cache stops taking new
+ * entries once it is full; entries already in it are kept.
+ */
+public class OutcomeCache {
+	/**
+	 * The initial code and cycle limit of a process and, once complete, how the process ended.
+	 */
+	public static final class Outcome {
+		private final byte[] initialCode = new byte[ProcessTable.codeSize];
+		private int maxCycles;
+		private int hash;
+		private volatile boolean complete; //Set once the result fields below are filled in
+		private CoreDump.Reason reason;
+		private int executedCycles;
+		private int programCounter;
+		private int accumulator;
+		private int PSW;
+		private final byte[] finalCode = new byte[ProcessTable.codeSize];
+		/**
+		 * Sets the key from the code and limit a process will start with.
+		 * @param code the initial code.
+		 * @param maxCycles the cpu cycle limit.
+		 */
+		private void setKey(byte[] code, int maxCycles) {
+			System.arraycopy(code, 0, initialCode, 0, ProcessTable.codeSize);
+			this.maxCycles = maxCycles;
+			hash = Arrays.hashCode(initialCode) * 31 + maxCycles;
+		}
+		/**
+		 * Fills in how the process ended.
+		 * @param reason why the process terminated.
+		 * @param executedCycles the cycles executed, including the one that ended the process.
+		 * @param programCounter the program counter at termination.
+		 * @param accumulator the accumulator at termination.
+		 * @param PSW the PSW at termination.
+		 * @param code the code at termination.
+		 */
+		public void complete(CoreDump.Reason reason, int executedCycles, int programCounter, int accumulator, int PSW, byte[] code) {
+			this.reason = reason;
+			this.executedCycles = executedCycles;
+			this.programCounter = programCounter;
+			this.accumulator = accumulator;
+			this.PSW = PSW;
+			System.arraycopy(code, 0, finalCode, 0, ProcessTable.codeSize);
+			complete = true;
+		}
+		/**
+		 * Whether the outcome is known.
+		 * @return true once a process with this code and limit has terminated.
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+		/**
+		 * Get why the process terminated.
+		 * @return the reason.
+		 */
+		public CoreDump.Reason getReason() {
+			return reason;
+		}
+		/**
+		 * Get the number of cycles the process executed, including the one that ended it.
+		 * @return the cycle count at termination.
+		 */
+		public int getExecutedCycles() {
+			return executedCycles;
+		}
+		/**
+		 * Puts a process into the state this outcome ended in. The process must have started
+		 * from this outcome's key.
+		 * @param table the table holding the process.
+		 * @param PID the process.
+		 */
+		public void apply(ProcessTable table, int PID) {
+			table.setProgramCounter(PID, programCounter);
+			table.setExecutedCycles(PID, executedCycles);
+			table.setAccumulator(PID, accumulator);
+			table.setPSW(PID, PSW);
+			for (int i = 0; i < ProcessTable.codeSize; i++) {
+				if (finalCode[i] != initialCode[i])
+					table.storeCode(PID, i, finalCode[i]&0xFF);
+			}
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Outcome))
+				return false;
+			Outcome outcome = (Outcome) other;
+			return maxCycles == outcome.maxCycles && Arrays.equals(initialCode, outcome.initialCode);
+		}
+	}
+
+	private final int capacity; //Maximum number of entries
+	private final ConcurrentHashMap<Outcome, Outcome> outcomes;
+	private final Outcome probe; //Scratch key for lookups, guarded by this
+	private final LongAdder hits;
+	private final LongAdder misses;
+
+	/**
+	 * Creates an empty cache.
+	 * @param capacity the maximum number of distinct code and limit pairs to remember.
+	 */
+	public OutcomeCache(int capacity) {
+		this.capacity = capacity;
+		outcomes = new ConcurrentHashMap<Outcome, Outcome>();
+		probe = new Outcome();
+		hits = new LongAdder();
+		misses = new LongAdder();
+	}
+	/**
+	 * Creates an incomplete outcome for a process that has not been created yet, without
+	 * looking it up.
+	 * @param code the code the process will start with.
+	 * @param maxCycles the cpu cycle limit of the process.
+	 * @return an outcome holding the process's key.
+	 */
+	public static Outcome newOutcome(byte[] code, int maxCycles) {
+		Outcome outcome = new Outcome();
+		outcome.setKey(code, maxCycles);
+		return outcome;
+	}
+	/**
+	 * Looks up a process that has not been created yet.
+	 * @param code the code the process will start with.
+	 * @param maxCycles the cpu cycle limit of the process.
+	 * @return a complete outcome on a hit. On a miss, an incomplete outcome holding the
+	 * process's key, to be passed to record() once the process terminates.
+	 */
+	public synchronized Outcome lookup(byte[] code, int maxCycles) {
+		probe.setKey(code, maxCycles);
+		Outcome outcome = outcomes.get(probe);
+		if (outcome != null) {
+			hits.increment();
+			return outcome;
+		}
+		misses.increment();
+		return newOutcome(code, maxCycles);
+	}
+	/**
+	 * Records how a process ended. Safe to call from any thread.
+	 * @param outcome the incomplete outcome returned by lookup() for the process.
+	 * @param table the table holding the process.
+	 * @param PID the process, in the state it terminated in.
+	 * @param reason why the process terminated.
+	 */
+	public void record(Outcome outcome, ProcessTable table, int PID, CoreDump.Reason reason) {
+		if (outcomes.size() >= capacity)
+			return;
+		byte[] code = new byte[ProcessTable.codeSize];
+		for (int i = 0; i < ProcessTable.codeSize; i++)
+			code[i] = (byte) table.getCode(PID, i);
+		outcome.complete(reason, table.getExecutedCycles(PID), table.getProgramCounter(PID),
+				table.getAccumulator(PID), table.getPSW(PID), code);
+		outcomes.putIfAbsent(outcome, outcome);
+	}
+	/**
+	 * Adds an outcome found some other way. Safe to call from any thread.
+	 * @param outcome a complete outcome.
+	 */
+	public void add(Outcome outcome) {
+		if (outcomes.size() < capacity)
+			outcomes.putIfAbsent(outcome, outcome);
+	}
+	/**
+	 * Get the number of lookups that found a complete outcome.
+	 * @return the number of hits so far.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+	/**
+	 * Get the number of lookups that did not.
+	 * @return the number of misses so far.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+	/**
+	 * Get the number of outcomes remembered.
+	 * @return the number of entries.
+	 */
+	public int size() {
+		return outcomes.size();
+	}
+}
@@ -4,63 +4,36 @@
  *
  */
 public class PImage {
-	public final int codeSize = 32;
+	public final int codeSize = ProcessTable.codeSize;
 	
-	private processPriorities priority;
-	private processStates state;
-	private int UID;
-	private int PID;
-	private int ProgramCounter;
-	private int ExecutedCycles;
-	private int MaxCycles;
-	private int Accumulator;
-	private int PSW;
-	private String Name;
-	private PImage nextImage;
-	private int[] code;
-	private boolean isDead;
+	private final ProcessTable table;
+	private final int PID;
 
-	public enum processStates { New, Ready, Running }
+	public enum processStates { New, Ready, Running, Blocked, Sleeping }
 	public enum processPriorities { Low, Normal, High }
-	public PImage() {
-		UID = 0;
-		PID = 0;
-		priority = processPriorities.Normal;
-		state = processStates.New;
-		ProgramCounter = 0;
-		MaxCycles = 0;
-		Accumulator = 0;
-		PSW = 0;
-		Name = null;
-		nextImage = null;
-		code = new int[codeSize];
-		isDead = false;
-	}
+	private static final processStates[] states = processStates.values();
+	private static final processPriorities[] priorities = processPriorities.values();
 	/**
-	 * @return the executedCycles
+	 * Creates a read-only view of a process held in a process table.
+	 * @param table the table holding the process.
+	 * @param pID the process ID of the process.
 	 */
-	public int getExecutedCycles() {
-		return ExecutedCycles;
+	PImage(ProcessTable table, int pID) {
+		this.table = table;
+		PID = pID;
 	}
 	/**
-	 * @param executedCycles the executedCycles to set
+	 * @return the executedCycles
 	 */
-	public void setExecutedCycles(int executedCycles) {
-		ExecutedCycles = executedCycles;
+	public int getExecutedCycles() {
+		return table.getExecutedCycles(PID);
 	}
 	/**
 	 * Get the userID for this process.
 	 * @return the userID for this process.
 	 */
 	public int getUID() {
-		return UID;
-	}
-	/**
-	 * Set the userID for this process.
-	 * @param uID the new userID for this process.
-	 */
-	public void setUID(int uID) {
-		UID = uID;
+		return table.getUID(PID);
 	}
 	/**
 	 * Get the process ID for this process.
@@ -69,160 +42,98 @@ public class PImage {
 	public int getPID() {
 		return PID;
 	}
-	/**
-	 * Set the process ID for this process.
-	 * @param pID the new process ID for this process.
-	 */
-	public void setPID(int pID) {
-		if (pID < 0)
-			PID = 0;
-		else
-			PID = pID;
-	}
 	/**
 	 * Get the program counter for this process.
 	 * @return the program counter for this process.
 	 */
 	public int getProgramCounter() {
-		return ProgramCounter;
-	}
-	/**
-	 * Set the program counter for this process.
-	 * @param programCounter the new program counter for this process.
-	 */
-	public void setProgramCounter(int programCounter) {
-		if (programCounter < 0)
-			ProgramCounter = 0;
-		else
-			ProgramCounter = programCounter;
+		return table.getProgramCounter(PID);
 	}
 	/**
 	 * Get the max cpu cycles for this process.
 	 * @return the max cpu cycles for this process.
 	 */
 	public int getMaxCycles() {
-		return MaxCycles;
-	}
-	/**
-	 * Set the max cpu cycles for this process.
-	 * @param maxCycles the new max cycles for this process.
-	 */
-	public void setMaxCycles(int maxCycles) {
-		MaxCycles = maxCycles;
+		return table.getMaxCycles(PID);
 	}
 	/**
 	 * Get the accumulator for this process.
 	 * @return the accumulator for this process.
 	 */
 	public int getAccumulator() {
-		return Accumulator;
-	}
-	/**
-	 * Set the accumulator for this process.
-	 * @param accumulator the new accumulator for this process.
-	 */
-	public void setAccumulator(int accumulator) {
-		Accumulator = accumulator;
+		return table.getAccumulator(PID);
 	}
 	/**
 	 * Get the processor status word for this process.
 	 * @return the processor status word for this process.
 	 */
 	public int getPSW() {
-		return PSW;
-	}
-	/**
-	 * Set the processor status word for this process.
-	 * @param status the new processor status word for this process.
-	 */
-	public void setPSW(int status) {
-		PSW = status;
+		return table.getPSW(PID);
 	}
 	/**
 	 * Get the name for this process.
 	 * @return the name for this process.
 	 */
 	public String getName() {
-		return Name;
-	}
-	/**
-	 * Set the name for this process.
-	 * @param name the new name for this process.
-	 */
-	public void setName(String name) {
-		Name = name;
+		return table.getName(PID);
 	}
 	/**
-	 * Get the next process in line.
-	 * @return the next process in line.
-	 */
-	public PImage getNextImage() {
-		return nextImage;
-	}
-	/**
-	 * Set the next process in line.
-	 * @param nextImage the next process in line.
-	 */
-	public void setNextImage(PImage nextImage) {
-		this.nextImage = nextImage;
-	}
-	/**
-	 * Get the binary code for this process.
+	 * Get a copy of the binary code for this process.
 	 * @return the binary code for this process.
 	 */
 	public int[] getCode() {
+		int[] code = new int[codeSize];
+		for (int i = 0; i < codeSize; i++)
+			code[i] = table.getCode(PID, i);
 		return code;
 	}
 	/**
-	 * Set the binary code for this process.
-	 * @param code the new code for this process.
+	 * Get the state of this process.
+	 * @return the process's state.
 	 */
-	public void setCode(int[] code) {
-		this.code = code;
+	public processStates getState() {
+		return states[table.getState(PID)];
 	}
 	/**
-	 * Set the priority of this process.
-	 * @param priority the new priority for this process.
+	 * Get the priority of this process.
+	 * @return the priority of the process.
 	 */
-	public void setPriority(int priority) {
-		if (priority > processPriorities.values().length)
-			priority = 0;
-		this.priority = processPriorities.values()[priority];
+	public processPriorities getPriority() {
+		return priorities[table.getPriority(PID)];
 	}
 	/**
-	 * Set the state of this process.
-	 * @param state the new state for the process.
+	 * Get the simulated time this process was admitted at.
+	 * @return the tick the process was given its PID at.
 	 */
-	public void setState(int state) {
-		if (state > processStates.values().length)
-			state = 0;
-		this.state = processStates.values()[state];
+	public long getAdmittedAt() {
+		return table.getAdmittedAt(PID);
 	}
 	/**
-	 * Get the state of this process.
-	 * @return the process's state.
+	 * Get the simulated time this process first ran at.
+	 * @return the tick of its first dispatch, or -1 if it has not run yet.
 	 */
-	public processStates getState() {
-		return this.state;
+	public long getFirstRunAt() {
+		return table.getFirstRunAt(PID);
 	}
 	/**
-	 * Get the priority of this process.
-	 * @return the priority of the process.
+	 * Get the simulated time this process has spent in ready queues.
+	 * @return the number of ticks, up to its last dispatch.
 	 */
-	public processPriorities getPriority() {
-		return this.priority;
+	public long getReadyTicks() {
+		return table.getReadyTicks(PID);
 	}
 	/**
-	 * Mark a process as dead. will be skipped over at execution time.
+	 * Get the number of times this process was preempted.
+	 * @return the number of slices that ended with the process still runnable.
 	 */
-	public void kill() {
-		this.isDead = true;
+	public int getPreemptions() {
+		return table.getPreemptions(PID);
 	}
 	/**
-	 * Whether or not the process has been killed.
-	 * @return whether or not the process has been marked as dead
+	 * Whether or not the process has been terminated.
+	 * @return whether or not the process is gone from the process table
 	 */
 	public boolean isDead() {
-		return this.isDead;
+		return !table.isLive(PID);
 	}
 }
@@ -0,0 +1,88 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Always runs the highest priority ready process, round-robin among processes of equal
+ * priority. Lower priorities only run when nothing of higher priority is ready. Each priority
+ * has its own queue, and a bitmap of non-empty queues makes picking the next process constant
+ * time.
+ */
+public class PriorityScheduler implements Scheduler {
+	private final int quantum;
+	private ProcessTable table;
+	private ProcessQueue[] queues; //Indexed by priority
+	private int nonEmpty; //Bit n is set when queues[n] holds a process
+	private int size;
+	/**
+	 * @param quantum the number of instructions per time slice.
+	 */
+	public PriorityScheduler(int quantum) {
+		this.quantum = quantum;
+	}
+	@Override
+	public void init(ProcessTable table) {
+		this.table = table;
+		queues = new ProcessQueue[PImage.processPriorities.values().length];
+		for (int i = 0; i < queues.length; i++)
+			queues[i] = new ProcessQueue(table);
+		nonEmpty = 0;
+		size = 0;
+	}
+	@Override
+	public void admit(int PID) {
+		int priority = table.getPriority(PID);
+		queues[priority].push(PID);
+		nonEmpty |= 1 << priority;
+		size++;
+	}
+	@Override
+	public void requeue(int PID) {
+		admit(PID);
+	}
+	@Override
+	public int next() {
+		if (nonEmpty == 0)
+			return -1;
+		int priority = 31 - Integer.numberOfLeadingZeros(nonEmpty);
+		int PID = queues[priority].pop();
+		if (queues[priority].isEmpty())
+			nonEmpty &= ~(1 << priority);
+		size--;
+		return PID;
+	}
+	@Override
+	public void remove(int PID) {
+		int priority = table.getPriority(PID);
+		queues[priority].remove(PID);
+		if (queues[priority].isEmpty())
+			nonEmpty &= ~(1 << priority);
+		size--;
+	}
+	@Override
+	public int size() {
+		return size;
+	}
+	@Override
+	public int getQuantum(int PID) {
+		return quantum;
+	}
+	@Override
+	public int getSteadyQuantum(int PID) {
+		return quantum;
+	}
+	@Override
+	public void checkpoint(DataOutput out) throws IOException {
+		for (ProcessQueue queue : queues)
+			queue.checkpoint(out);
+		out.writeInt(nonEmpty);
+		out.writeInt(size);
+	}
+	@Override
+	public void restore(DataInput in) throws IOException {
+		for (ProcessQueue queue : queues)
+			queue.restore(in);
+		nonEmpty = in.readInt();
+		size = in.readInt();
+	}
+}
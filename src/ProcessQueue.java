@@ -0,0 +1,109 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A first-in first-out queue of processes, linked through the next and previous links of a
+ * process table. A process can be in at most one queue at a time. Every operation, including
+ * removing a process from the middle of the queue, is constant time.
+ */
+public class ProcessQueue {
+	private final ProcessTable table;
+	private int head; //Next process to be popped, or -1
+	private int tail; //Most recently pushed process, or -1
+	private int size;
+	/**
+	 * Creates an empty queue.
+	 * @param table the table holding the links of the queued processes.
+	 */
+	public ProcessQueue(ProcessTable table) {
+		this.table = table;
+		head = tail = -1;
+		size = 0;
+	}
+	/**
+	 * Get the number of processes in the queue.
+	 * @return the size of the queue.
+	 */
+	public int size() {
+		return size;
+	}
+	/**
+	 * Whether the queue holds no processes.
+	 * @return true if the queue is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	/**
+	 * Get the process at the front of the queue without removing it.
+	 * @return the next process to be popped, or -1 if the queue is empty.
+	 */
+	public int peek() {
+		return head;
+	}
+	/**
+	 * Adds a process to the back of the queue.
+	 * @param PID the process to be added.
+	 */
+	public void push(int PID) {
+		table.setNext(PID, -1);
+		table.setPrev(PID, tail);
+		if (tail == -1)
+			head = PID;
+		else
+			table.setNext(tail, PID);
+		tail = PID;
+		size++;
+	}
+	/**
+	 * Removes the process at the front of the queue.
+	 * @return the process popped, or -1 if the queue is empty.
+	 */
+	public int pop() {
+		int PID = head;
+		if (PID != -1)
+			remove(PID);
+		return PID;
+	}
+	/**
+	 * Unlinks a process from anywhere in the queue.
+	 * @param PID a process in this queue.
+	 */
+	public void remove(int PID) {
+		int prev = table.getPrev(PID);
+		int next = table.getNext(PID);
+		if (prev == -1)
+			head = next;
+		else
+			table.setNext(prev, next);
+		if (next == -1)
+			tail = prev;
+		else
+			table.setPrev(next, prev);
+		table.setNext(PID, -1);
+		table.setPrev(PID, -1);
+		size--;
+	}
+	/**
+	 * Writes the ends and size of the queue to a checkpoint. The links in between belong to
+	 * the process table.
+	 * @param out the checkpoint.
+	 * @throws IOException if writing fails.
+	 */
+	public void checkpoint(DataOutput out) throws IOException {
+		out.writeInt(head);
+		out.writeInt(tail);
+		out.writeInt(size);
+	}
+	/**
+	 * Restores the ends and size of the queue from a checkpoint.
+	 * @param in the checkpoint.
+	 * @throws IOException if reading fails.
+	 */
+	public void restore(DataInput in) throws IOException {
+		head = in.readInt();
+		tail = in.readInt();
+		size = in.readInt();
+	}
+}
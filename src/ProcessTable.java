@@ -0,0 +1,959 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Holds the state of every process in parallel primitive arrays indexed by PID, with the code
+ * of all processes packed into shared byte arrays. A process costs a few dozen bytes of array
+ * space instead of a PImage object graph; PImage is a read-only view over a row of this table.
+ * The arrays are split into fixed-size pages so the table can grow without copying them, and
+ * the slots of terminated processes are handed out again through a free list.
+ *
+ * Processes loaded from the same binary can share one read-only code segment. A process only
+ * gets its own copy of the code, in its slot, when it first stores into it.
+ *
+ * The table itself is not thread-safe; the simulator serializes access to each row. The shared
+ * segments are the exception: since processes on different cores share them, share(),
+ * storeCode() and the release of a segment's last reference synchronize on the table while
+ * they touch them. Reference counts are updated atomically, in pages that never move as the
+ * table grows, so that retaining a segment takes no lock.
+ */
+public class ProcessTable {
+	public static final int codeSize = 32;
+	public static final byte FREE = -1; //State of a slot that holds no process
+	private static final int pageShift = 10; //Slots are allocated in pages of 1 << pageShift
+	private static final int pageSize = 1 << pageShift;
+	private static final int pageMask = pageSize - 1;
+	private static final int pageBytes = pageSize * (6 * Long.BYTES + 12 * Integer.BYTES + 2 + codeSize); //Size of a page in a checkpoint
+	private static final int pagesPerMapping = (1 << 30) / pageBytes; //Pages checkpointed through each memory mapping
+	private static final int loopWords = 2 + codeSize / Long.BYTES; //Longs of loop detection state per slot
+	private static final VarHandle references = MethodHandles.arrayElementVarHandle(int[].class); //Atomic access to reference counts
+	private static final int referencePageShift = 8; //Reference counts are kept in pages of 1 << referencePageShift
+	private static final int referenceMask = (1 << referencePageShift) - 1;
+	private static final VarHandle codeWords = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN); //Reads code eight bytes at a time
+
+	/**
+	 * A fixed-size block of slots. Pages are never moved or resized once created, so growing the
+	 * table only copies the page directory.
+	 */
+	private static final class Page {
+		final byte[] state = new byte[pageSize];
+		final byte[] priority = new byte[pageSize];
+		final int[] UID = new int[pageSize];
+		final int[] programCounter = new int[pageSize];
+		final int[] executedCycles = new int[pageSize];
+		final int[] maxCycles = new int[pageSize];
+		final int[] accumulator = new int[pageSize];
+		final int[] PSW = new int[pageSize];
+		final int[] nameID = new int[pageSize];
+		final int[] next = new int[pageSize]; //Link to the next process in whichever queue this one is in, or the next free slot
+		final int[] prev = new int[pageSize]; //Link to the previous process in whichever queue this one is in
+		final int[] segment = new int[pageSize]; //Shared code segment in use, or -1 if the code is in this page
+		final int[] cpu = new int[pageSize]; //Core whose ready queue, timing wheel or blocked queue holds the process, or -1 while it is new
+		final OutcomeCache.Outcome[] outcome = new OutcomeCache.Outcome[pageSize]; //Known or pending outcome, or null if not memoized
+		final ProgramCompiler.Entry[] compiled = new ProgramCompiler.Entry[pageSize]; //Binary the process may run compiled, or null
+		final long[] admittedAt = new long[pageSize]; //Tick the process was given its PID at
+		final long[] firstRunAt = new long[pageSize]; //Tick the process was first dispatched at, or -1
+		final long[] readySince = new long[pageSize]; //Tick the process last entered a ready queue at
+		final long[] readyTicks = new long[pageSize]; //Ticks spent in ready queues so far
+		final long[] terminatedAt = new long[pageSize]; //Tick the process terminated at, or -1
+		final long[] wakeAt = new long[pageSize]; //Tick a sleeping process wakes up at
+		final int[] preemptions = new int[pageSize]; //Slices that ended with the process still runnable
+		final byte[] code = new byte[pageSize * codeSize]; //codeSize bytes per process
+		final byte[] opcodes = new byte[pageSize * codeSize]; //code decoded ahead of time, kept in sync by storeCode()
+		final byte[] operands = new byte[pageSize * codeSize];
+		long[] loop; //Per slot: saved registers plus one (0 if none), saved code, Brent power and steps; allocated on first use
+		Page() {
+			Arrays.fill(state, FREE);
+		}
+	}
+
+	private Page[] pages;
+	private int highWater; //One past the highest PID ever handed out
+	private int freeList; //Most recently released PID, or -1
+	private int liveCount; //Number of slots currently holding a process
+	private final ArrayList<String> names; //Filenames, shared by every process loaded from them
+	private final HashMap<String, Integer> nameIDs;
+	private byte[] sharedCode; //codeSize bytes per shared segment, never modified while in use
+	private byte[] sharedOpcodes;
+	private byte[] sharedOperands;
+	private volatile int[][] sharedReferences; //Pages of the number of holders of each shared segment
+	private int[] sharedNext; //Next free segment after each segment that has no holders
+	private int sharedCount; //One past the highest shared segment ever handed out
+	private int sharedFreeList; //Most recently released shared segment, or -1
+
+	/**
+	 * Creates an empty table.
+	 * @param capacity the number of processes expected, used to size the page directory. The
+	 * table grows past this on demand.
+	 */
+	public ProcessTable(int capacity) {
+		pages = new Page[Math.max(1, (capacity + pageMask) >>> pageShift)];
+		highWater = 0;
+		freeList = -1;
+		liveCount = 0;
+		names = new ArrayList<String>();
+		nameIDs = new HashMap<String, Integer>();
+		sharedCode = new byte[4 * codeSize];
+		sharedOpcodes = new byte[4 * codeSize];
+		sharedOperands = new byte[4 * codeSize];
+		sharedReferences = new int[1][1 << referencePageShift];
+		sharedNext = new int[4];
+		sharedCount = 0;
+		sharedFreeList = -1;
+	}
+	/**
+	 * Get the upper bound of PIDs handed out so far. Every live process has a PID below this,
+	 * but slots below it may be free.
+	 * @return one past the highest PID in use or previously in use.
+	 */
+	public int getHighWater() {
+		return highWater;
+	}
+	/**
+	 * Get the number of processes in the table.
+	 * @return the number of live processes.
+	 */
+	public int getLiveCount() {
+		return liveCount;
+	}
+	/**
+	 * Reserves a slot for a new process, reusing the most recently released slot if there is
+	 * one and growing the table otherwise. The slot must be filled in with create().
+	 * @return the PID of the reserved slot.
+	 */
+	public int allocate() {
+		int PID = freeList;
+		if (PID != -1) {
+			freeList = page(PID).next[PID & pageMask];
+			return PID;
+		}
+		PID = highWater++;
+		int page = PID >>> pageShift;
+		if (page == pages.length)
+			pages = Arrays.copyOf(pages, pages.length * 2);
+		if (pages[page] == null)
+			pages[page] = new Page();
+		return PID;
+	}
+	/**
+	 * Fills in a reserved slot for a newly created process. All registers start at zero and the
+	 * process starts in the New state.
+	 * @param PID the slot to fill.
+	 * @param userID an identifier representing a user.
+	 * @param procPriority the priority of the process.
+	 * @param maxCPU maximum number of CPU cycles available for this process.
+	 * @param filename the binary the process was loaded from.
+	 * @param codeSegment the shared code segment to start from. The process takes over a
+	 * reference to it from the caller, and holds it until it terminates or stores into its code.
+	 */
+	public void create(int PID, int userID, int procPriority, int maxCPU, String filename, int codeSegment) {
+		Page page = page(PID);
+		int slot = PID & pageMask;
+		page.state[slot] = 0;
+		setPriority(PID, procPriority);
+		page.UID[slot] = userID;
+		page.programCounter[slot] = 0;
+		page.executedCycles[slot] = 0;
+		page.maxCycles[slot] = maxCPU;
+		page.accumulator[slot] = 0;
+		page.PSW[slot] = 0;
+		page.next[slot] = -1;
+		page.prev[slot] = -1;
+		page.cpu[slot] = -1;
+		page.outcome[slot] = null;
+		page.compiled[slot] = null;
+		page.admittedAt[slot] = 0;
+		page.firstRunAt[slot] = -1;
+		page.readySince[slot] = 0;
+		page.readyTicks[slot] = 0;
+		page.terminatedAt[slot] = -1;
+		page.preemptions[slot] = 0;
+		if (page.loop != null)
+			page.loop[slot * loopWords] = 0;
+		Integer id = nameIDs.get(filename);
+		if (id == null) {
+			id = names.size();
+			names.add(filename);
+			nameIDs.put(filename, id);
+		}
+		page.nameID[slot] = id;
+		page.segment[slot] = codeSegment;
+		liveCount++;
+	}
+	/**
+	 * Creates a shared code segment holding a copy of a binary. The caller holds the first
+	 * reference to it.
+	 * @param image the binary code.
+	 * @param length the number of bytes of image to use, at most codeSize. The rest is zero.
+	 * @return the ID of the segment.
+	 */
+	public synchronized int share(byte[] image, int length) {
+		int segment = sharedFreeList;
+		if (segment != -1) {
+			sharedFreeList = sharedNext[segment];
+		} else {
+			segment = sharedCount++;
+			if (segment == sharedNext.length) {
+				sharedCode = Arrays.copyOf(sharedCode, sharedCode.length * 2);
+				sharedOpcodes = Arrays.copyOf(sharedOpcodes, sharedOpcodes.length * 2);
+				sharedOperands = Arrays.copyOf(sharedOperands, sharedOperands.length * 2);
+				sharedNext = Arrays.copyOf(sharedNext, sharedNext.length * 2);
+			}
+			int page = segment >>> referencePageShift;
+			if (page == sharedReferences.length) {
+				int[][] counts = Arrays.copyOf(sharedReferences, page + 1);
+				counts[page] = new int[1 << referencePageShift];
+				sharedReferences = counts;
+			}
+		}
+		int base = segment * codeSize;
+		for (int i = 0; i < codeSize; i++) {
+			sharedCode[base + i] = i < length ? image[i] : 0;
+			decode(sharedCode, sharedOpcodes, sharedOperands, base + i);
+		}
+		references.setVolatile(sharedReferences[segment >>> referencePageShift], segment & referenceMask, 1);
+		return segment;
+	}
+	/**
+	 * Adds a reference to a shared code segment, without taking a lock.
+	 * @param segment the ID of a segment the caller holds a reference to.
+	 */
+	public void retain(int segment) {
+		retain(segment, 1);
+	}
+	/**
+	 * Adds several references to a shared code segment at once, without taking a lock.
+	 * @param segment the ID of a segment the caller holds a reference to.
+	 * @param count the number of references to add.
+	 */
+	public void retain(int segment, int count) {
+		references.getAndAdd(sharedReferences[segment >>> referencePageShift], segment & referenceMask, count);
+	}
+	/**
+	 * Adds a reference to a shared code segment that may have lost its last holder meanwhile,
+	 * without taking a lock. A segment with no holders may already hold another binary by
+	 * the time this is called, so a caller that succeeds must still check that the segment is
+	 * the one it wanted, e.g. by seeing that whoever holds it has not let go.
+	 * @param segment the ID of the segment.
+	 * @return true if the reference was added, false if the segment had no holders.
+	 */
+	public boolean tryRetain(int segment) {
+		int[] page = sharedReferences[segment >>> referencePageShift];
+		int slot = segment & referenceMask;
+		int count;
+		do {
+			count = (int) references.getVolatile(page, slot);
+			if (count == 0)
+				return false;
+		} while (!references.compareAndSet(page, slot, count, count + 1));
+		return true;
+	}
+	/**
+	 * Drops a reference to a shared code segment. The segment is reused once nothing refers to
+	 * it; only then is a lock taken.
+	 * @param segment the ID of the segment.
+	 */
+	public void unshare(int segment) {
+		if ((int) references.getAndAdd(sharedReferences[segment >>> referencePageShift], segment & referenceMask, -1) == 1) {
+			synchronized (this) {
+				sharedNext[segment] = sharedFreeList;
+				sharedFreeList = segment;
+			}
+		}
+	}
+	/**
+	 * Releases a slot so allocate() can hand it out again. The slot must not be linked into
+	 * any queue.
+	 * @param PID the slot to release.
+	 */
+	public void free(int PID) {
+		int segment = page(PID).segment[PID & pageMask];
+		if (segment != -1)
+			unshare(segment);
+		page(PID).state[PID & pageMask] = FREE;
+		page(PID).outcome[PID & pageMask] = null;
+		page(PID).compiled[PID & pageMask] = null;
+		page(PID).next[PID & pageMask] = freeList;
+		freeList = PID;
+		liveCount--;
+	}
+	/**
+	 * Whether a slot holds a process.
+	 * @param PID the slot to check.
+	 * @return true if PID refers to an existing process.
+	 */
+	public boolean isLive(int PID) {
+		return PID >= 0 && PID < highWater && page(PID).state[PID & pageMask] != FREE;
+	}
+	/**
+	 * Get a read-only view of a process.
+	 * @param PID the process to view.
+	 * @return a view over the process's row of the table.
+	 */
+	public PImage view(int PID) {
+		return new PImage(this, PID);
+	}
+	/**
+	 * Get the state of a process.
+	 * @param PID the process.
+	 * @return the process's state, as a processStates ordinal.
+	 */
+	public int getState(int PID) {
+		return page(PID).state[PID & pageMask];
+	}
+	/**
+	 * Set the state of a process.
+	 * @param PID the process.
+	 * @param newState the new state, as a processStates ordinal.
+	 */
+	public void setState(int PID, int newState) {
+		page(PID).state[PID & pageMask] = (byte) newState;
+	}
+	/**
+	 * Get the priority of a process.
+	 * @param PID the process.
+	 * @return the process's priority, as a processPriorities ordinal.
+	 */
+	public int getPriority(int PID) {
+		return page(PID).priority[PID & pageMask];
+	}
+	/**
+	 * Set the priority of a process. Out of range priorities become Low.
+	 * @param PID the process.
+	 * @param newPriority the new priority, as a processPriorities ordinal.
+	 */
+	public void setPriority(int PID, int newPriority) {
+		if (newPriority < 0 || newPriority >= PImage.processPriorities.values().length)
+			newPriority = 0;
+		page(PID).priority[PID & pageMask] = (byte) newPriority;
+	}
+	/**
+	 * Get the userID of a process.
+	 * @param PID the process.
+	 * @return the userID of the process.
+	 */
+	public int getUID(int PID) {
+		return page(PID).UID[PID & pageMask];
+	}
+	/**
+	 * Get the program counter of a process.
+	 * @param PID the process.
+	 * @return the program counter of the process.
+	 */
+	public int getProgramCounter(int PID) {
+		return page(PID).programCounter[PID & pageMask];
+	}
+	/**
+	 * Set the program counter of a process.
+	 * @param PID the process.
+	 * @param value the new program counter.
+	 */
+	public void setProgramCounter(int PID, int value) {
+		page(PID).programCounter[PID & pageMask] = value < 0 ? 0 : value;
+	}
+	/**
+	 * Get the number of cycles a process has executed.
+	 * @param PID the process.
+	 * @return the executed cycles of the process.
+	 */
+	public int getExecutedCycles(int PID) {
+		return page(PID).executedCycles[PID & pageMask];
+	}
+	/**
+	 * Set the number of cycles a process has executed.
+	 * @param PID the process.
+	 * @param value the new number of executed cycles.
+	 */
+	public void setExecutedCycles(int PID, int value) {
+		page(PID).executedCycles[PID & pageMask] = value;
+	}
+	/**
+	 * Get the max cpu cycles of a process.
+	 * @param PID the process.
+	 * @return the max cpu cycles of the process.
+	 */
+	public int getMaxCycles(int PID) {
+		return page(PID).maxCycles[PID & pageMask];
+	}
+	/**
+	 * Get the accumulator of a process.
+	 * @param PID the process.
+	 * @return the accumulator of the process.
+	 */
+	public int getAccumulator(int PID) {
+		return page(PID).accumulator[PID & pageMask];
+	}
+	/**
+	 * Set the accumulator of a process.
+	 * @param PID the process.
+	 * @param value the new accumulator.
+	 */
+	public void setAccumulator(int PID, int value) {
+		page(PID).accumulator[PID & pageMask] = value;
+	}
+	/**
+	 * Get the processor status word of a process.
+	 * @param PID the process.
+	 * @return the processor status word of the process.
+	 */
+	public int getPSW(int PID) {
+		return page(PID).PSW[PID & pageMask];
+	}
+	/**
+	 * Set the processor status word of a process.
+	 * @param PID the process.
+	 * @param value the new processor status word.
+	 */
+	public void setPSW(int PID, int value) {
+		page(PID).PSW[PID & pageMask] = value;
+	}
+	/**
+	 * Get the ID of the name of the binary a process was loaded from. Processes loaded from
+	 * binaries with the same name share an ID.
+	 * @param PID the process.
+	 * @return the name ID.
+	 */
+	public int getNameID(int PID) {
+		return page(PID).nameID[PID & pageMask];
+	}
+	/**
+	 * Get the name of the binary a process was loaded from.
+	 * @param PID the process.
+	 * @return the filename of the process.
+	 */
+	public String getName(int PID) {
+		return names.get(page(PID).nameID[PID & pageMask]);
+	}
+	/**
+	 * Get the next process in the queue a process is in.
+	 * @param PID the process.
+	 * @return the PID of the next process, or -1 at the end of the queue.
+	 */
+	public int getNext(int PID) {
+		return page(PID).next[PID & pageMask];
+	}
+	/**
+	 * Set the next process in the queue a process is in.
+	 * @param PID the process.
+	 * @param nextPID the PID of the next process, or -1 at the end of the queue.
+	 */
+	public void setNext(int PID, int nextPID) {
+		page(PID).next[PID & pageMask] = nextPID;
+	}
+	/**
+	 * Get the previous process in the queue a process is in.
+	 * @param PID the process.
+	 * @return the PID of the previous process, or -1 at the start of the queue.
+	 */
+	public int getPrev(int PID) {
+		return page(PID).prev[PID & pageMask];
+	}
+	/**
+	 * Set the previous process in the queue a process is in.
+	 * @param PID the process.
+	 * @param prevPID the PID of the previous process, or -1 at the start of the queue.
+	 */
+	public void setPrev(int PID, int prevPID) {
+		page(PID).prev[PID & pageMask] = prevPID;
+	}
+	/**
+	 * Get the core a process belongs to.
+	 * @param PID the process.
+	 * @return the index of the core whose ready queue holds the process, or -1 if it is new.
+	 */
+	public int getCpu(int PID) {
+		return page(PID).cpu[PID & pageMask];
+	}
+	/**
+	 * Set the core a process belongs to.
+	 * @param PID the process.
+	 * @param index the index of the core, or -1 if the process is new.
+	 */
+	public void setCpu(int PID, int index) {
+		page(PID).cpu[PID & pageMask] = index;
+	}
+	/**
+	 * Get the memoized outcome of a process.
+	 * @param PID the process.
+	 * @return a complete outcome if the process is replaying a known one, an incomplete one if
+	 * its outcome is to be recorded, or null.
+	 */
+	public OutcomeCache.Outcome getOutcome(int PID) {
+		return page(PID).outcome[PID & pageMask];
+	}
+	/**
+	 * Set the memoized outcome of a process.
+	 * @param PID the process.
+	 * @param outcome the outcome, or null.
+	 */
+	public void setOutcome(int PID, OutcomeCache.Outcome outcome) {
+		page(PID).outcome[PID & pageMask] = outcome;
+	}
+	/**
+	 * Get the compiler entry of the binary a process was loaded from.
+	 * @param PID the process.
+	 * @return the entry, or null if the process is always interpreted.
+	 */
+	public ProgramCompiler.Entry getCompiled(int PID) {
+		return page(PID).compiled[PID & pageMask];
+	}
+	/**
+	 * Set the compiler entry of the binary a process was loaded from.
+	 * @param PID the process.
+	 * @param entry the entry, or null.
+	 */
+	public void setCompiled(int PID, ProgramCompiler.Entry entry) {
+		page(PID).compiled[PID & pageMask] = entry;
+	}
+	/**
+	 * Get the simulated time a process was admitted into the system at.
+	 * @param PID the process.
+	 * @return the tick it was given its PID at.
+	 */
+	public long getAdmittedAt(int PID) {
+		return page(PID).admittedAt[PID & pageMask];
+	}
+	/**
+	 * Set the simulated time a process was admitted into the system at.
+	 * @param PID the process.
+	 * @param tick the tick it was given its PID at.
+	 */
+	public void setAdmittedAt(int PID, long tick) {
+		page(PID).admittedAt[PID & pageMask] = tick;
+	}
+	/**
+	 * Get the simulated time a process was first dispatched at.
+	 * @param PID the process.
+	 * @return the tick it first ran at, or -1 if it has not run yet.
+	 */
+	public long getFirstRunAt(int PID) {
+		return page(PID).firstRunAt[PID & pageMask];
+	}
+	/**
+	 * Set the simulated time a process was first dispatched at.
+	 * @param PID the process.
+	 * @param tick the tick it first ran at.
+	 */
+	public void setFirstRunAt(int PID, long tick) {
+		page(PID).firstRunAt[PID & pageMask] = tick;
+	}
+	/**
+	 * Get the simulated time a process last entered a ready queue at.
+	 * @param PID the process.
+	 * @return the tick.
+	 */
+	public long getReadySince(int PID) {
+		return page(PID).readySince[PID & pageMask];
+	}
+	/**
+	 * Set the simulated time a process last entered a ready queue at.
+	 * @param PID the process.
+	 * @param tick the tick.
+	 */
+	public void setReadySince(int PID, long tick) {
+		page(PID).readySince[PID & pageMask] = tick;
+	}
+	/**
+	 * Get the simulated time a process has spent waiting in ready queues.
+	 * @param PID the process.
+	 * @return the number of ticks, up to its last dispatch.
+	 */
+	public long getReadyTicks(int PID) {
+		return page(PID).readyTicks[PID & pageMask];
+	}
+	/**
+	 * Set the simulated time a process has spent waiting in ready queues.
+	 * @param PID the process.
+	 * @param ticks the number of ticks.
+	 */
+	public void setReadyTicks(int PID, long ticks) {
+		page(PID).readyTicks[PID & pageMask] = ticks;
+	}
+	/**
+	 * Accounts for a process being dispatched: adds the time since it entered a ready queue to
+	 * its ready time, and records the first dispatch.
+	 * @param PID the process.
+	 * @param tick the current time on the core dispatching it. A core lagging behind the one
+	 * the process came from may be earlier than the time the process became ready; that wait
+	 * counts as zero.
+	 */
+	public void dispatched(int PID, long tick) {
+		Page page = page(PID);
+		int slot = PID & pageMask;
+		long waited = tick - page.readySince[slot];
+		if (waited > 0)
+			page.readyTicks[slot] += waited;
+		if (page.firstRunAt[slot] == -1)
+			page.firstRunAt[slot] = Math.max(tick, page.admittedAt[slot]);
+	}
+	/**
+	 * Accounts for a process being preempted: counts the preemption and records that it is
+	 * ready again.
+	 * @param PID the process.
+	 * @param tick the current time on its core.
+	 */
+	public void preempted(int PID, long tick) {
+		preempted(PID, tick, 1);
+	}
+	/**
+	 * Accounts for a process being preempted several times in a row and dispatched again
+	 * straight away each time, so that it never waited.
+	 * @param PID the process.
+	 * @param tick the current time on its core.
+	 * @param count the number of preemptions.
+	 */
+	public void preempted(int PID, long tick, int count) {
+		Page page = page(PID);
+		int slot = PID & pageMask;
+		page.preemptions[slot] += count;
+		page.readySince[slot] = tick;
+	}
+	/**
+	 * Get the simulated time a process terminated at.
+	 * @param PID the process.
+	 * @return the tick, or -1 if it has not terminated.
+	 */
+	public long getTerminatedAt(int PID) {
+		return page(PID).terminatedAt[PID & pageMask];
+	}
+	/**
+	 * Set the simulated time a process terminated at.
+	 * @param PID the process.
+	 * @param tick the tick.
+	 */
+	public void setTerminatedAt(int PID, long tick) {
+		page(PID).terminatedAt[PID & pageMask] = tick;
+	}
+	/**
+	 * Get the simulated time a sleeping process wakes up at.
+	 * @param PID the process.
+	 * @return the tick on its core's clock.
+	 */
+	public long getWakeAt(int PID) {
+		return page(PID).wakeAt[PID & pageMask];
+	}
+	/**
+	 * Set the simulated time a sleeping process wakes up at.
+	 * @param PID the process.
+	 * @param tick the tick on its core's clock.
+	 */
+	public void setWakeAt(int PID, long tick) {
+		page(PID).wakeAt[PID & pageMask] = tick;
+	}
+	/**
+	 * Get the number of times a process was preempted.
+	 * @param PID the process.
+	 * @return the number of slices that ended without the process terminating.
+	 */
+	public int getPreemptions(int PID) {
+		return page(PID).preemptions[PID & pageMask];
+	}
+	/**
+	 * Set the number of times a process was preempted.
+	 * @param PID the process.
+	 * @param count the number of preemptions.
+	 */
+	public void setPreemptions(int PID, int count) {
+		page(PID).preemptions[PID & pageMask] = count;
+	}
+	/**
+	 * Whether a process is still running from a shared code segment.
+	 * @param PID the process.
+	 * @return true until the process first stores into its code.
+	 */
+	public boolean isShared(int PID) {
+		return page(PID).segment[PID & pageMask] != -1;
+	}
+	/**
+	 * Copies the code of a shared segment. The caller must hold a reference to the segment.
+	 * @param segment the shared code segment.
+	 * @param into the array to copy the segment's codeSize bytes into.
+	 */
+	public synchronized void getSharedCode(int segment, byte[] into) {
+		System.arraycopy(sharedCode, segment * codeSize, into, 0, codeSize);
+	}
+	/**
+	 * Get a byte of a process's code.
+	 * @param PID the process.
+	 * @param address the address to read.
+	 * @return the unsigned value at that address.
+	 */
+	public int getCode(int PID, int address) {
+		if (address < 0 || address >= codeSize)
+			throw new ArrayIndexOutOfBoundsException(address);
+		return getCodeBlock(PID)[getCodeBase(PID) + address]&0xFF;
+	}
+	/**
+	 * Get the array holding a process's code. The code starts at getCodeBase(PID). The array
+	 * must not be written to while isShared(PID) is true; use storeCode() instead. Since
+	 * storeCode() may move the code, the array and base must be fetched again after it is
+	 * called if isShared(PID) was true. Compiled programs write a process's own code directly,
+	 * decoding each byte into the opcode and operand blocks the same way storeCode() does.
+	 * @param PID the process.
+	 * @return the code array shared with other processes.
+	 */
+	public byte[] getCodeBlock(int PID) {
+		return isShared(PID) ? sharedCode : page(PID).code;
+	}
+	/**
+	 * Get the array holding a process's decoded opcodes. They start at getCodeBase(PID).
+	 * @param PID the process.
+	 * @return the opcode array shared with other processes.
+	 */
+	public byte[] getOpcodeBlock(int PID) {
+		return isShared(PID) ? sharedOpcodes : page(PID).opcodes;
+	}
+	/**
+	 * Get the array holding a process's decoded operands. They start at getCodeBase(PID).
+	 * @param PID the process.
+	 * @return the operand array shared with other processes.
+	 */
+	public byte[] getOperandBlock(int PID) {
+		return isShared(PID) ? sharedOperands : page(PID).operands;
+	}
+	/**
+	 * Get the offset of a process's code inside its code, opcode and operand blocks.
+	 * @param PID the process.
+	 * @return the offset of address 0.
+	 */
+	public int getCodeBase(int PID) {
+		int segment = page(PID).segment[PID & pageMask];
+		return (segment == -1 ? PID & pageMask : segment) * codeSize;
+	}
+	/**
+	 * Writes a single byte of code, keeping the decoded instruction tables up to date. A
+	 * process using a shared code segment first gets its own copy of it.
+	 * @param PID the process.
+	 * @param address the address to write to.
+	 * @param value the new value.
+	 */
+	public void storeCode(int PID, int address, int value) {
+		Page page = page(PID);
+		int slot = PID & pageMask;
+		int segment = page.segment[slot];
+		if (segment != -1) {
+			synchronized (this) {
+				System.arraycopy(sharedCode, segment * codeSize, page.code, slot * codeSize, codeSize);
+				System.arraycopy(sharedOpcodes, segment * codeSize, page.opcodes, slot * codeSize, codeSize);
+				System.arraycopy(sharedOperands, segment * codeSize, page.operands, slot * codeSize, codeSize);
+				unshare(segment);
+			}
+			page.segment[slot] = -1;
+		}
+		int index = slot * codeSize + address;
+		page.code[index] = (byte) value;
+		decode(page.code, page.opcodes, page.operands, index);
+	}
+	/**
+	 * Writes everything but the pages to a checkpoint: slot allocation, filenames and shared
+	 * code segments. Outcomes and compiled code are not saved; restored processes execute
+	 * their instructions, so any complete outcome must have been materialized beforehand.
+	 * @param out the checkpoint.
+	 * @throws IOException if writing fails.
+	 */
+	public synchronized void checkpoint(DataOutput out) throws IOException {
+		out.writeInt(highWater);
+		out.writeInt(freeList);
+		out.writeInt(liveCount);
+		out.writeInt(names.size());
+		for (String name : names)
+			out.writeUTF(name);
+		out.writeInt(sharedCount);
+		out.writeInt(sharedFreeList);
+		for (int i = 0; i < sharedCount; i++) { //the holders of a segment, or the next free one if it has none
+			int count = (int) references.getVolatile(sharedReferences[i >>> referencePageShift], i & referenceMask);
+			out.writeInt(count != 0 ? count : sharedNext[i]);
+		}
+		out.write(sharedCode, 0, sharedCount * codeSize);
+	}
+	/**
+	 * Replaces the contents of the table with what checkpoint() wrote. The pages must then be
+	 * read with restorePages().
+	 * @param in the checkpoint.
+	 * @throws IOException if reading fails.
+	 */
+	public synchronized void restore(DataInput in) throws IOException {
+		highWater = in.readInt();
+		freeList = in.readInt();
+		liveCount = in.readInt();
+		names.clear();
+		nameIDs.clear();
+		int nameCount = in.readInt();
+		for (int i = 0; i < nameCount; i++) {
+			String name = in.readUTF();
+			nameIDs.put(name, names.size());
+			names.add(name);
+		}
+		sharedCount = in.readInt();
+		sharedFreeList = in.readInt();
+		int capacity = Math.max(4, sharedCount);
+		int[][] counts = new int[(capacity >>> referencePageShift) + 1][1 << referencePageShift];
+		sharedNext = new int[capacity];
+		for (int i = 0; i < sharedCount; i++)
+			counts[i >>> referencePageShift][i & referenceMask] = in.readInt();
+		for (int segment = sharedFreeList; segment != -1; segment = sharedNext[segment]) { //free segments hold the next one instead
+			sharedNext[segment] = counts[segment >>> referencePageShift][segment & referenceMask];
+			counts[segment >>> referencePageShift][segment & referenceMask] = 0;
+		}
+		sharedReferences = counts;
+		sharedCode = new byte[capacity * codeSize];
+		sharedOpcodes = new byte[capacity * codeSize];
+		sharedOperands = new byte[capacity * codeSize];
+		in.readFully(sharedCode, 0, sharedCount * codeSize);
+		for (int i = 0; i < sharedCount * codeSize; i++)
+			decode(sharedCode, sharedOpcodes, sharedOperands, i);
+		pages = new Page[Math.max(1, getPageCount())];
+	}
+	/**
+	 * Get the number of bytes checkpointPages() writes.
+	 * @return the size of the pages in a checkpoint.
+	 */
+	public long getPagesSize() {
+		return (long) getPageCount() * pageBytes;
+	}
+	/**
+	 * Writes every page in use to a file through memory mappings, column by column, so that
+	 * each column is a bulk copy. The decoded code is not written.
+	 * @param file the file, open for reading and writing.
+	 * @param position where in the file the pages start.
+	 * @throws IOException if mapping the file fails.
+	 */
+	public void checkpointPages(FileChannel file, long position) throws IOException {
+		int count = getPageCount();
+		for (int first = 0; first < count; first += pagesPerMapping) {
+			int last = Math.min(count, first + pagesPerMapping);
+			ByteBuffer out = file.map(FileChannel.MapMode.READ_WRITE, position + (long) first * pageBytes,
+					(long) (last - first) * pageBytes).order(ByteOrder.nativeOrder());
+			for (int i = first; i < last; i++) {
+				Page page = pages[i];
+				out.asLongBuffer().put(page.admittedAt).put(page.firstRunAt).put(page.readySince).put(page.readyTicks)
+						.put(page.terminatedAt).put(page.wakeAt);
+				out.position(out.position() + 6 * Long.BYTES * pageSize);
+				out.asIntBuffer().put(page.UID).put(page.programCounter).put(page.executedCycles).put(page.maxCycles)
+						.put(page.accumulator).put(page.PSW).put(page.nameID).put(page.next).put(page.prev).put(page.segment)
+						.put(page.cpu).put(page.preemptions);
+				out.position(out.position() + 12 * Integer.BYTES * pageSize);
+				out.put(page.state).put(page.priority).put(page.code);
+			}
+		}
+	}
+	/**
+	 * Reads the pages written by checkpointPages(), after restore(), and decodes the code of
+	 * the processes that have their own.
+	 * @param file the file, open for reading.
+	 * @param position where in the file the pages start.
+	 * @param order the byte order the pages were written in.
+	 * @throws IOException if mapping the file fails.
+	 */
+	public void restorePages(FileChannel file, long position, ByteOrder order) throws IOException {
+		int count = getPageCount();
+		for (int first = 0; first < count; first += pagesPerMapping) {
+			int last = Math.min(count, first + pagesPerMapping);
+			ByteBuffer in = file.map(FileChannel.MapMode.READ_ONLY, position + (long) first * pageBytes,
+					(long) (last - first) * pageBytes).order(order);
+			for (int i = first; i < last; i++) {
+				Page page = new Page();
+				in.asLongBuffer().get(page.admittedAt).get(page.firstRunAt).get(page.readySince).get(page.readyTicks)
+						.get(page.terminatedAt).get(page.wakeAt);
+				in.position(in.position() + 6 * Long.BYTES * pageSize);
+				in.asIntBuffer().get(page.UID).get(page.programCounter).get(page.executedCycles).get(page.maxCycles)
+						.get(page.accumulator).get(page.PSW).get(page.nameID).get(page.next).get(page.prev).get(page.segment)
+						.get(page.cpu).get(page.preemptions);
+				in.position(in.position() + 12 * Integer.BYTES * pageSize);
+				in.get(page.state).get(page.priority).get(page.code);
+				for (int slot = 0; slot < pageSize; slot++) {
+					if (page.state[slot] != FREE && page.segment[slot] == -1) { //the rest use a shared segment or nothing
+						for (int j = slot * codeSize; j < (slot + 1) * codeSize; j++)
+							decode(page.code, page.opcodes, page.operands, j);
+					}
+				}
+				pages[i] = page;
+			}
+		}
+	}
+	/**
+	 * Get the number of pages holding slots handed out so far.
+	 * @return the number of pages in use.
+	 */
+	private int getPageCount() {
+		return (highWater + pageMask) >>> pageShift;
+	}
+	/**
+	 * Compares the state of a process at a backward branch with a state it was in at an
+	 * earlier backward branch, following Brent's cycle detection algorithm: the saved state is
+	 * replaced after 1, 2, 4, 8, ... checks since it was saved. Since a process has no input,
+	 * its state after the branch, program counter, accumulator, PSW and code, decides
+	 * everything it does from then on, so meeting a saved state again means it is looping
+	 * forever. Every loop contains a backward branch, so every loop is caught, at the latest
+	 * within a few times its length once it has started repeating. The caller must own the
+	 * process.
+	 * @param PID the process.
+	 * @param programCounter the program counter after the branch.
+	 * @param accumulator the accumulator.
+	 * @param PSW the processor status word.
+	 * @return true if the process is in the saved state again.
+	 */
+	public boolean revisits(int PID, int programCounter, int accumulator, int PSW) {
+		Page page = page(PID);
+		long[] loop = page.loop;
+		if (loop == null) {
+			synchronized (this) {
+				if (page.loop == null)
+					page.loop = new long[pageSize * loopWords];
+				loop = page.loop;
+			}
+		}
+		int index = (PID & pageMask) * loopWords;
+		byte[] code = getCodeBlock(PID);
+		int base = getCodeBase(PID);
+		long registers = (programCounter | accumulator << 8 | PSW << 16) + 1L;
+		if (loop[index] == registers) {
+			boolean same = true;
+			for (int i = 0; i < codeSize / Long.BYTES && same; i++)
+				same = loop[index + 1 + i] == (long) codeWords.get(code, base + i * Long.BYTES);
+			if (same)
+				return true;
+		}
+		long counters = loop[index + loopWords - 1];
+		int power = (int) (counters >>> 32);
+		int steps = (int) counters + 1;
+		boolean fresh = loop[index] == 0;
+		if (fresh || steps >= power) { //move the saved state here
+			loop[index] = registers;
+			for (int i = 0; i < codeSize / Long.BYTES; i++)
+				loop[index + 1 + i] = (long) codeWords.get(code, base + i * Long.BYTES);
+			power = fresh ? 1 : Math.min(power << 1, 1 << 30);
+			steps = 0;
+		}
+		loop[index + loopWords - 1] = (long) power << 32 | steps;
+		return false;
+	}
+	/**
+	 * Get the page holding a slot.
+	 * @param PID the slot.
+	 * @return the page.
+	 */
+	private Page page(int PID) {
+		return pages[PID >>> pageShift];
+	}
+	/**
+	 * Decodes the instruction at an index of a code block into its opcode and operand blocks.
+	 * @param code the code block.
+	 * @param opcodes the opcode block.
+	 * @param operands the operand block.
+	 * @param index the index to decode.
+	 */
+	private static void decode(byte[] code, byte[] opcodes, byte[] operands, int index) {
+		opcodes[index] = (byte) ((code[index]&0b11100000)>>5);
+		operands[index] = (byte) (code[index]&0b00011111);
+	}
+}
@@ -0,0 +1,410 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles hot binaries to JVM bytecode. Once a binary has been submitted a given number of
+ * times, a background thread translates it into a Java class with one switch case per
+ * reachable instruction. Straight-line code falls through from case to case, and taken
+ * branches jump straight to their target's case, so the JIT sees the program's own control
+ * flow instead of the interpreter's dispatch loop. The class is compiled with the system Java
+ * compiler and defined as a hidden class.
+ *
+ * The system Java compiler only comes with a JDK. On a runtime without one, such as a JRE,
+ * nothing is compiled: binaries that become hot are counted as unavailable and every process
+ * keeps being interpreted, with the same results and no error.
+ *
+ * A compiled program reads its data from the process's code, so it is valid for as long as
+ * the reachable instructions do not change. Binaries with a reachable STORE into a reachable
+ * instruction are therefore never compiled and always interpreted.
+ */
+public class ProgramCompiler {
+	/**
+	 * Status returned by Program.run when the budget ran out.
+	 */
+	public static final int SLICE_OVER = 0;
+	/**
+	 * Status returned by Program.run when a STOP instruction was executed.
+	 */
+	public static final int STOPPED = 1;
+	/**
+	 * Status returned by Program.run when the interpreter has to take over, e.g. because the
+	 * program counter left the code.
+	 */
+	public static final int INTERPRET = 2;
+
+	/**
+	 * A compiled binary.
+	 */
+	public interface Program {
+		/**
+		 * Executes instructions until the budget runs out, a STOP is executed, or the
+		 * interpreter has to take over.
+		 * @param frame the registers of the process, updated on return.
+		 * @param budget the most instructions to execute.
+		 * @return SLICE_OVER, STOPPED or INTERPRET.
+		 */
+		int run(Frame frame, int budget);
+	}
+
+	/**
+	 * The registers of the process a program runs for.
+	 */
+	public static final class Frame {
+		public byte[] code; //Block holding the process's code
+		public byte[] opcodes; //Block holding the process's decoded opcodes
+		public byte[] operands; //Block holding the process's decoded operands
+		public int base; //Offset of address 0 in the blocks
+		public boolean shared; //Whether the code is still a shared segment, which store() must copy first
+		public int programCounter;
+		public int accumulator;
+		public int PSW;
+		public int remaining; //Budget left over when run() returned
+		private ProcessTable table;
+		private int PID;
+		/**
+		 * Loads the registers of a process.
+		 * @param table the table holding the process.
+		 * @param PID the process.
+		 */
+		public void load(ProcessTable table, int PID) {
+			this.table = table;
+			this.PID = PID;
+			code = table.getCodeBlock(PID);
+			opcodes = table.getOpcodeBlock(PID);
+			operands = table.getOperandBlock(PID);
+			base = table.getCodeBase(PID);
+			shared = table.isShared(PID);
+			programCounter = table.getProgramCounter(PID);
+			accumulator = table.getAccumulator(PID);
+			PSW = table.getPSW(PID);
+		}
+		/**
+		 * Writes the registers back to the process they were loaded from.
+		 */
+		public void save() {
+			table.setProgramCounter(PID, programCounter);
+			table.setAccumulator(PID, accumulator);
+			table.setPSW(PID, PSW);
+		}
+		/**
+		 * Executes the first STORE of a process still using a shared segment. This gives the
+		 * process its own copy of the code, so the blocks and base must be read again; later
+		 * stores can write straight into the blocks.
+		 * @param address the address to write to.
+		 * @param value the new value.
+		 */
+		public void store(int address, int value) {
+			table.storeCode(PID, address, value);
+			code = table.getCodeBlock(PID);
+			opcodes = table.getOpcodeBlock(PID);
+			operands = table.getOperandBlock(PID);
+			base = table.getCodeBase(PID);
+			shared = false;
+		}
+	}
+
+	/**
+	 * A binary seen by the compiler. Processes loaded from the binary run its program once it
+	 * has been compiled.
+	 */
+	public static final class Entry {
+		private final byte[] code = new byte[ProcessTable.codeSize];
+		private int hash;
+		private final AtomicInteger runs = new AtomicInteger();
+		private volatile Program program; //Set by the compiler thread
+		/**
+		 * Get the compiled program.
+		 * @return the program, or null if the binary has not been compiled (yet).
+		 */
+		public Program getProgram() {
+			return program;
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Entry && Arrays.equals(code, ((Entry) other).code);
+		}
+	}
+
+	private final int threshold; //Submissions of a binary before it is compiled
+	private final JavaCompiler javac; //null if the runtime has no compiler
+	private final ConcurrentHashMap<Entry, Entry> entries;
+	private final Entry probe; //Scratch key for lookups, guarded by this
+	private final ExecutorService worker;
+	private final LongAdder compiled;
+	private final LongAdder rejected;
+	private final LongAdder failed;
+	private final LongAdder unavailable;
+
+	/**
+	 * Creates a compiler with its own background thread, which only runs while there is
+	 * something to compile.
+	 * @param threshold the number of submissions of a binary after which it is compiled.
+	 */
+	public ProgramCompiler(int threshold) {
+		this.threshold = threshold;
+		javac = ToolProvider.getSystemJavaCompiler();
+		entries = new ConcurrentHashMap<Entry, Entry>();
+		probe = new Entry();
+		worker = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread thread = new Thread(r, "program-compiler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		compiled = new LongAdder();
+		rejected = new LongAdder();
+		failed = new LongAdder();
+		unavailable = new LongAdder();
+	}
+	/**
+	 * Counts a submission of the binary a process was loaded from, and queues the binary for
+	 * compilation once it has been submitted often enough.
+	 * @param table the table holding the process.
+	 * @param PID a process that has not executed anything yet.
+	 * @return the binary's entry, whose program the process can run once it is compiled.
+	 */
+	public synchronized Entry lookup(ProcessTable table, int PID) {
+		for (int i = 0; i < ProcessTable.codeSize; i++)
+			probe.code[i] = (byte) table.getCode(PID, i);
+		probe.hash = Arrays.hashCode(probe.code);
+		Entry entry = entries.get(probe);
+		if (entry == null) {
+			entry = new Entry();
+			System.arraycopy(probe.code, 0, entry.code, 0, ProcessTable.codeSize);
+			entry.hash = probe.hash;
+			entries.put(entry, entry);
+		}
+		if (entry.runs.incrementAndGet() == threshold) {
+			if (javac == null) {
+				unavailable.increment();
+				return entry;
+			}
+			Entry target = entry;
+			try {
+				worker.execute(() -> compile(target));
+			} catch (RejectedExecutionException e) {
+				//closed; keep interpreting
+			}
+		}
+		return entry;
+	}
+	/**
+	 * Get the number of binaries compiled.
+	 * @return the number of programs available.
+	 */
+	public long getCompiled() {
+		return compiled.sum();
+	}
+	/**
+	 * Get the number of hot binaries left to the interpreter because they modify their own
+	 * instructions.
+	 * @return the number of rejected binaries.
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+	/**
+	 * Get the number of hot binaries whose compiled class failed to compile or load.
+	 * @return the number of failures.
+	 */
+	public long getFailed() {
+		return failed.sum();
+	}
+	/**
+	 * Get the number of hot binaries left to the interpreter because the runtime has no Java
+	 * compiler.
+	 * @return the number of binaries that would have been compiled.
+	 */
+	public long getUnavailable() {
+		return unavailable.sum();
+	}
+	/**
+	 * Whether the runtime has the system Java compiler, which only comes with a JDK.
+	 * @return false if nothing will ever be compiled.
+	 */
+	public boolean isAvailable() {
+		return javac != null;
+	}
+	/**
+	 * Stops the background thread. Binaries queued for compilation are dropped.
+	 */
+	public void close() {
+		worker.shutdownNow();
+	}
+	/**
+	 * Compiles a binary, on the background thread.
+	 * @param entry the binary.
+	 */
+	private void compile(Entry entry) {
+		boolean[] reachable = reachable(entry.code);
+		if (reachable == null) {
+			rejected.increment();
+			return;
+		}
+		try {
+			byte[] bytes = toBytecode(generate(entry.code, reachable));
+			if (bytes == null) {
+				failed.increment();
+				return;
+			}
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			entry.program = (Program) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+			compiled.increment();
+		} catch (Throwable e) {
+			failed.increment();
+		}
+	}
+	/**
+	 * Finds the instructions that can be reached from address 0, following both sides of
+	 * every branch.
+	 * @param code the binary.
+	 * @return reachable[a] is true if the instruction at a can execute, or null if a reachable
+	 * STORE writes into a reachable instruction.
+	 */
+	private static boolean[] reachable(byte[] code) {
+		boolean[] reachable = new boolean[ProcessTable.codeSize];
+		int[] pending = new int[ProcessTable.codeSize];
+		int count = 0;
+		reachable[0] = true;
+		pending[count++] = 0;
+		while (count > 0) {
+			int address = pending[--count];
+			int opcode = (code[address]&0b11100000)>>5;
+			int operand = code[address]&0b00011111;
+			if (opcode == 0b000) //STOP
+				continue;
+			if (opcode >= 0b101 && !reachable[operand]) {
+				reachable[operand] = true;
+				pending[count++] = operand;
+			}
+			if (address + 1 < ProcessTable.codeSize && !reachable[address + 1]) {
+				reachable[address + 1] = true;
+				pending[count++] = address + 1;
+			}
+		}
+		for (int address = 0; address < ProcessTable.codeSize; address++) {
+			if (reachable[address] && (code[address]&0b11100000)>>5 == 0b010 && reachable[code[address]&0b00011111])
+				return null;
+		}
+		return reachable;
+	}
+	/**
+	 * Translates a binary into Java source.
+	 * @param code the binary.
+	 * @param reachable the reachable instructions.
+	 * @return the source of a class implementing Program.
+	 */
+	private static String generate(byte[] code, boolean[] reachable) {
+		StringBuilder source = new StringBuilder(4096);
+		source.append("public final class CompiledProgram implements ProgramCompiler.Program {\n");
+		source.append("\tpublic int run(ProgramCompiler.Frame f, int n) {\n");
+		source.append("\t\tbyte[] code = f.code; byte[] opcodes = f.opcodes; byte[] operands = f.operands; int base = f.base; boolean shared = f.shared;\n");
+		source.append("\t\tint pc = f.programCounter; int ac = f.accumulator; int psw = f.PSW; int r;\n");
+		source.append("\t\tint status = ProgramCompiler.SLICE_OVER;\n");
+		source.append("\t\tloop: while (true) {\n\t\t\tswitch (pc) {\n");
+		for (int address = 0; address < ProcessTable.codeSize; address++) {
+			if (!reachable[address])
+				continue;
+			int operand = code[address]&0b00011111;
+			source.append("\t\t\tcase ").append(address).append(":\n");
+			source.append("\t\t\t\tif (n == 0) { pc = ").append(address).append("; break loop; }\n");
+			source.append("\t\t\t\tn--;\n");
+			switch ((code[address]&0b11100000)>>5) {
+				case 0b000: //STOP
+					source.append("\t\t\t\tpc = ").append(address + 1).append("; status = ProgramCompiler.STOPPED; break loop;\n");
+					continue;
+				case 0b001: //LOAD
+					source.append("\t\t\t\tac = code[base + ").append(operand).append("]&0xFF;\n");
+					break;
+				case 0b010: //STORE
+					source.append("\t\t\t\tif (shared) { f.store(").append(operand).append(", ac); code = f.code; opcodes = f.opcodes; operands = f.operands; base = f.base; shared = false; }\n");
+					source.append("\t\t\t\telse { code[base + ").append(operand).append("] = (byte) ac; opcodes[base + ").append(operand)
+							.append("] = (byte) (ac>>5); operands[base + ").append(operand).append("] = (byte) (ac&0b00011111); }\n");
+					break;
+				case 0b011: //ADD, which can neither go negative nor below an operand
+					source.append("\t\t\t\tr = ac + (code[base + ").append(operand).append("]&0xFF);\n");
+					source.append("\t\t\t\tif (r > 0xFF) psw |= 0b100;\n");
+					source.append("\t\t\t\tif (r == 0) psw |= 0b001;\n");
+					source.append("\t\t\t\tac = r&0xFF;\n");
+					break;
+				case 0b100: //SUBTRACT, which can never exceed 0xFF
+					source.append("\t\t\t\tr = ac - (code[base + ").append(operand).append("]&0xFF);\n");
+					source.append("\t\t\t\tif (r < 0) psw |= 0b010;\n");
+					source.append("\t\t\t\tif (r == 0) psw |= 0b001;\n");
+					source.append("\t\t\t\tac = r&0xFF;\n");
+					break;
+				case 0b101: //BRANCH (if positive)
+					source.append("\t\t\t\tif ((psw&0b011) == 0b000) { pc = ").append(operand).append("; continue loop; }\n");
+					break;
+				case 0b110: //BRANCH (if negative)
+					source.append("\t\t\t\tif ((psw&0b011) == 0b010) { pc = ").append(operand).append("; continue loop; }\n");
+					break;
+				case 0b111: //BRANCH (if zero)
+					source.append("\t\t\t\tif ((psw&0b011) == 0b001) { pc = ").append(operand).append("; continue loop; }\n");
+					break;
+			}
+			if (address + 1 == ProcessTable.codeSize) //falls off the end of the code
+				source.append("\t\t\t\tpc = ").append(ProcessTable.codeSize).append("; status = ProgramCompiler.INTERPRET; break loop;\n");
+		}
+		source.append("\t\t\tdefault:\n\t\t\t\tstatus = ProgramCompiler.INTERPRET; break loop;\n");
+		source.append("\t\t\t}\n\t\t}\n");
+		source.append("\t\tf.programCounter = pc; f.accumulator = ac; f.PSW = psw; f.remaining = n;\n");
+		source.append("\t\treturn status;\n\t}\n}\n");
+		return source.toString();
+	}
+	/**
+	 * Compiles generated source in memory.
+	 * @param source the source of class CompiledProgram.
+	 * @return the class file, or null if compilation failed.
+	 */
+	private byte[] toBytecode(String source) {
+		ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+		JavaFileObject input = new SimpleJavaFileObject(URI.create("string:///CompiledProgram.java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		StandardJavaFileManager standard = javac.getStandardFileManager(null, null, null);
+		JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(standard) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("string:///" + className + kind.extension), kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						return classFile;
+					}
+				};
+			}
+		};
+		List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-nowarn", "-g:none");
+		Boolean success = javac.getTask(null, files, diagnostic -> {}, options, null, Collections.singletonList(input)).call();
+		return Boolean.TRUE.equals(success) ? classFile.toByteArray() : null;
+	}
+}
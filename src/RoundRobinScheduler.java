@@ -0,0 +1,57 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Runs ready processes in the order they became ready, each for the same time slice.
+ */
+public class RoundRobinScheduler implements Scheduler {
+	private final int quantum;
+	private ProcessQueue queue;
+	/**
+	 * @param quantum the number of instructions per time slice.
+	 */
+	public RoundRobinScheduler(int quantum) {
+		this.quantum = quantum;
+	}
+	@Override
+	public void init(ProcessTable table) {
+		queue = new ProcessQueue(table);
+	}
+	@Override
+	public void admit(int PID) {
+		queue.push(PID);
+	}
+	@Override
+	public void requeue(int PID) {
+		queue.push(PID);
+	}
+	@Override
+	public int next() {
+		return queue.pop();
+	}
+	@Override
+	public void remove(int PID) {
+		queue.remove(PID);
+	}
+	@Override
+	public int size() {
+		return queue.size();
+	}
+	@Override
+	public int getQuantum(int PID) {
+		return quantum;
+	}
+	@Override
+	public int getSteadyQuantum(int PID) {
+		return quantum;
+	}
+	@Override
+	public void checkpoint(DataOutput out) throws IOException {
+		queue.checkpoint(out);
+	}
+	@Override
+	public void restore(DataInput in) throws IOException {
+		queue.restore(in);
+	}
+}
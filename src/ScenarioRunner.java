@@ -0,0 +1,174 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs many independent simulators in one JVM, one per scenario of a manifest, on a fork/join
+ * pool. Each scenario drives a fresh simulator with a command file in the format TestSimulator
+ * reads, and gets a directory of its own holding its standard output, its error output and its
+ * core dumps. Once every scenario has finished, a line per scenario reports how long it took
+ * and how many processes and instructions it got through.
+ * Usage: ScenarioRunner &lt;manifest&gt; &lt;output directory&gt; [parallelism]
+ *
+ * The manifest has one scenario per line: a name, which must be unique and becomes the name of
+ * the scenario's directory, the command file, and optionally setup commands separated by
+ * semicolons, run before the command file, e.g.
+ * <pre>
+ * feedback4  workloads/mixed.txt  cores 4 deterministic; sched feedback 3
+ * </pre>
+ * Command files are found relative to the manifest. Blank lines and lines starting with # are
+ * ignored. Binaries are looked up as given, relative to the working directory, and are read
+ * concurrently by every scenario that uses them.
+ */
+public class ScenarioRunner {
+	/**
+	 * One scenario, run to completion by compute().
+	 */
+	private static final class Scenario extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final String name;
+		final Path commandFile;
+		final String[] setup; //Commands run before the command file
+		final Path directory; //Where the scenario's output goes
+		long commands; //Commands executed
+		long processes; //Processes that terminated
+		long instructions; //Cpu cycles executed
+		long nanos; //Time taken by the commands
+		String failure; //Why the scenario stopped early, or null
+
+		Scenario(String name, Path commandFile, String[] setup, Path directory) {
+			this.name = name;
+			this.commandFile = commandFile;
+			this.setup = setup;
+			this.directory = directory;
+		}
+		@Override
+		protected void compute() {
+			try {
+				Files.createDirectories(directory);
+			} catch (IOException e) {
+				failure = "unable to create " + directory + ": " + e.getMessage();
+				return;
+			}
+			try (PrintStream out = open("stdout.txt"); PrintStream err = open("stderr.txt")) {
+				Simulator s = new Simulator();
+				s.setOutput(out);
+				s.setCoreDumpWriter(new TextCoreDumpWriter(directory));
+				TestSimulator interpreter = new TestSimulator(out, err, directory);
+				long start = System.nanoTime();
+				try {
+					boolean more = true;
+					for (int i = 0; i < setup.length && more; i++) {
+						if (!setup[i].isEmpty()) {
+							more = interpreter.execute(s, setup[i]);
+							commands++;
+						}
+					}
+					if (more)
+						commands += interpreter.executeFile(s, commandFile);
+				} catch (RuntimeException e) {
+					failure = e.toString();
+					e.printStackTrace(err);
+				} finally {
+					s.close();
+					nanos = System.nanoTime() - start;
+					SimulatorMetrics metrics = s.getMetrics();
+					processes = metrics.getCompleted() + metrics.getCpuLimited() + metrics.getKilled() + metrics.getLooping();
+					instructions = metrics.getInstructions();
+				}
+			} catch (IOException e) {
+				failure = e.toString();
+			}
+		}
+		/**
+		 * Opens a buffered output file in the scenario's directory.
+		 * @param filename the name of the file.
+		 * @return the stream.
+		 * @throws IOException if the file could not be created.
+		 */
+		private PrintStream open(String filename) throws IOException {
+			OutputStream stream = Files.newOutputStream(directory.resolve(filename));
+			return new PrintStream(new BufferedOutputStream(stream, 65536), false);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: ScenarioRunner <manifest> <output directory> [parallelism]");
+			return;
+		}
+		Path manifest = Paths.get(args[0]);
+		Path output = Paths.get(args[1]);
+		int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		ArrayList<Scenario> scenarios = readManifest(manifest, output);
+		if (scenarios == null)
+			return;
+		long start = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(scenarios)));
+		} finally {
+			pool.shutdown();
+		}
+		long nanos = System.nanoTime() - start;
+		StringBuilder report = new StringBuilder("scenario              commands  processes  instructions   seconds  processes/s  instructions/s\n" +
+												 "--------------------  --------  ---------  ------------  --------  -----------  --------------\n");
+		long processes = 0;
+		long instructions = 0;
+		for (Scenario scenario : scenarios) {
+			double seconds = scenario.nanos / 1e9;
+			report.append(String.format("%-20s  % 8d  % 9d  % 12d  % 8.3f  % 11.0f  % 14.0f", scenario.name, scenario.commands,
+					scenario.processes, scenario.instructions, seconds, scenario.processes / Math.max(seconds, 1e-9),
+					scenario.instructions / Math.max(seconds, 1e-9)));
+			if (scenario.failure != null)
+				report.append("  failed: ").append(scenario.failure);
+			report.append("\n");
+			processes += scenario.processes;
+			instructions += scenario.instructions;
+		}
+		double seconds = nanos / 1e9;
+		report.append(String.format("%d scenarios on %d threads in %.3f s: %.0f processes/s, %.0f instructions/s", scenarios.size(),
+				pool.getParallelism(), seconds, processes / seconds, instructions / seconds));
+		System.out.println(report);
+	}
+	/**
+	 * Reads a manifest.
+	 * @param manifest the manifest file.
+	 * @param output the directory holding the directory of each scenario.
+	 * @return the scenarios, or null if the manifest is invalid, which has then been reported.
+	 * @throws IOException if the manifest could not be read.
+	 */
+	private static ArrayList<Scenario> readManifest(Path manifest, Path output) throws IOException {
+		Path base = manifest.toAbsolutePath().getParent();
+		ArrayList<Scenario> scenarios = new ArrayList<Scenario>();
+		HashSet<String> names = new HashSet<String>();
+		int lineNumber = 0;
+		for (String line : Files.readAllLines(manifest)) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] fields = line.split("\\s+", 3);
+			if (fields.length < 2) {
+				System.err.println(manifest + ":" + lineNumber + ": expecting <name> <command file> [setup commands]");
+				return null;
+			}
+			if (!names.add(fields[0])) {
+				System.err.println(manifest + ":" + lineNumber + ": scenario " + fields[0] + " is already defined");
+				return null;
+			}
+			String[] setup = fields.length > 2 ? fields[2].split("\\s*;\\s*") : new String[0];
+			scenarios.add(new Scenario(fields[0], base.resolve(fields[1]), setup, output.resolve(fields[0])));
+		}
+		return scenarios;
+	}
+}
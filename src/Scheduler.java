@@ -0,0 +1,83 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Decides which ready process runs next and for how long. The scheduler owns the ready queue:
+ * the simulator hands it processes as they become ready and asks it for the next one to run.
+ */
+public interface Scheduler {
+	/**
+	 * Called once before the scheduler is used.
+	 * @param table the table holding every process the scheduler will see.
+	 */
+	void init(ProcessTable table);
+	/**
+	 * Adds a process that has just been admitted from the new queue.
+	 * @param PID the process.
+	 */
+	void admit(int PID);
+	/**
+	 * Adds a process that another core's scheduler gave up with next() without running it,
+	 * e.g. to work stealing. Schedulers that keep per-process state beyond the process table
+	 * carry it over, so the process keeps the standing it had; the others keep this default,
+	 * which admits it.
+	 * @param PID the process.
+	 * @param from the scheduler the process was taken from.
+	 */
+	default void adopt(int PID, Scheduler from) {
+		admit(PID);
+	}
+	/**
+	 * Adds a process that used up its time slice without terminating.
+	 * @param PID the process.
+	 */
+	void requeue(int PID);
+	/**
+	 * Removes the process that should run next.
+	 * @return the process, or -1 if no process is ready.
+	 */
+	int next();
+	/**
+	 * Removes a ready process, e.g. because it was killed.
+	 * @param PID a process previously added and not yet returned by next().
+	 */
+	void remove(int PID);
+	/**
+	 * Get the number of ready processes.
+	 * @return the number of processes added and not yet returned by next() or removed.
+	 */
+	int size();
+	/**
+	 * Get the number of instructions a process may execute in its next time slice.
+	 * @param PID the process about to run.
+	 * @return the length of the time slice.
+	 */
+	int getQuantum(int PID);
+	/**
+	 * Get the length of every time slice a process will be given while it is the only ready
+	 * process on its core, i.e. while requeue() followed by next() keeps handing it back with
+	 * no change to the scheduler's state. Schedulers that cannot promise this keep this default,
+	 * and their processes are requeued after every slice as usual.
+	 * @param PID the process about to run.
+	 * @return the length of the time slices, or 0 if they may change from one to the next.
+	 */
+	default int getSteadyQuantum(int PID) {
+		return 0;
+	}
+	/**
+	 * Writes the scheduler's state to a checkpoint. Queued processes are linked through the
+	 * process table, which is saved separately, so only the scheduler's own fields need to be
+	 * written.
+	 * @param out the checkpoint.
+	 * @throws IOException if writing fails.
+	 */
+	void checkpoint(DataOutput out) throws IOException;
+	/**
+	 * Restores state written by checkpoint() into a scheduler of the same class, once init()
+	 * has been called with the restored process table.
+	 * @param in the checkpoint.
+	 * @throws IOException if reading fails.
+	 */
+	void restore(DataInput in) throws IOException;
+}
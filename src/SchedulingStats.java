@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * Collects the scheduling accounting of terminated processes and summarizes it as percentiles.
+ * Times are in simulated ticks. For each process three times are kept: the response time, from
+ * admission to first dispatch; the ready time, spent waiting in ready queues; and the
+ * turnaround time, from admission to termination. Not thread-safe.
+ */
+public class SchedulingStats {
+	private long[] response = new long[64]; //Of processes that were dispatched at least once
+	private int responseCount;
+	private long[] ready = new long[64];
+	private long[] turnaround = new long[64];
+	private int count; //Number of processes in ready and turnaround
+
+	/**
+	 * Adds a terminated process.
+	 * @param table the table holding the process.
+	 * @param PID the process.
+	 */
+	public void add(ProcessTable table, int PID) {
+		long admitted = table.getAdmittedAt(PID);
+		long firstRun = table.getFirstRunAt(PID);
+		if (count == ready.length) {
+			ready = Arrays.copyOf(ready, count * 2);
+			turnaround = Arrays.copyOf(turnaround, count * 2);
+		}
+		ready[count] = table.getReadyTicks(PID);
+		turnaround[count++] = table.getTerminatedAt(PID) - admitted;
+		if (firstRun != -1) {
+			if (responseCount == response.length)
+				response = Arrays.copyOf(response, responseCount * 2);
+			response[responseCount++] = firstRun - admitted;
+		}
+	}
+	/**
+	 * Forgets every process added so far.
+	 */
+	public void clear() {
+		count = 0;
+		responseCount = 0;
+	}
+	/**
+	 * Get the number of processes added.
+	 * @return the number of terminated processes since the last clear().
+	 */
+	public int size() {
+		return count;
+	}
+	/**
+	 * Appends one line per kind of time with its 50th and 99th percentiles and its maximum.
+	 * @param out where to append the summary.
+	 */
+	public void appendSummary(StringBuilder out) {
+		out.append("processes = ").append(count).append('\n');
+		appendPercentiles(out, "response time", response, responseCount);
+		appendPercentiles(out, "ready time", ready, count);
+		appendPercentiles(out, "turnaround time", turnaround, count);
+	}
+	/**
+	 * Appends the percentiles of some values. Sorts the values in place.
+	 * @param out where to append the line.
+	 * @param label what the values are.
+	 * @param values the values.
+	 * @param length the number of values.
+	 */
+	private static void appendPercentiles(StringBuilder out, String label, long[] values, int length) {
+		out.append(label).append(':');
+		if (length == 0) {
+			out.append(" none\n");
+			return;
+		}
+		Arrays.sort(values, 0, length);
+		out.append(" p50 = ").append(percentile(values, length, 50));
+		out.append(", p99 = ").append(percentile(values, length, 99));
+		out.append(", max = ").append(values[length - 1]).append('\n');
+	}
+	/**
+	 * Finds a percentile of sorted values by the nearest-rank method.
+	 * @param sorted the values, in ascending order.
+	 * @param length the number of values.
+	 * @param percent the percentile to find.
+	 * @return the smallest value that at least percent percent of the values are at most.
+	 */
+	private static long percentile(long[] sorted, int length, int percent) {
+		int rank = (int) ((length * (long) percent + 99) / 100);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder(256);
+		appendSummary(out);
+		return out.toString();
+	}
+}
@@ -1,82 +1,603 @@
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * Simulates an operating system's process management subsystem.
+ *
+ * The simulated machine has one or more cores. Every core has its own scheduler and therefore
+ * its own ready queue, and runs one process at a time. Processes waiting in the new queue are
+ * admitted to whichever core has room for them, and a core that runs out of work steals half
+ * of the ready queue of the busiest core.
+ *
+ * Locking: each core's state, including the registers of the processes it owns, is guarded by
+ * the core's monitor. The new queue, slot allocation and status output are guarded by the
+ * simulator's monitor. Core monitors are always taken in ascending order and before the
+ * simulator's monitor. newProcess takes neither: submissions go through a lock-free queue
+ * and are given PIDs in batches, at the start of the next slice or before anything looks
+ * at the process table.
+ *
+ * Simulated time is measured in ticks, one per cpu cycle. Each core has its own clock, which
+ * advances by the cycles of every slice it runs; an idle core's clock jumps ahead to when work
+ * reaches it. Rounds of executeSlice and deterministic runAll end with every clock set to the
+ * latest one, while free-running cores only line their clocks up when they steal. Processes
+ * record when they were admitted, first dispatched and terminated, and how long they spent in
+ * ready queues, in the ticks of whichever core handled them.
  * @author Cameron
  *
  */
 public class Simulator {
-	private final int instructionsPerSlice = 3; //Number of instructions to be executed per CPU time slice
-	private final int maxReadyQueue = 5; //Maximum size of ready queue
-	private final int maxSimultaneousProcesses = 100; //Maximum number of processes
-	private PImage[] processList; //a list of processes.
-	private int processListCounter; //The number of processes that have been created thus far
-	private PImage readyQueueEnd; //End of the ready queue
-	private PImage readyQueueBegin; //Beginning of the ready queue
-	private PImage newQueueEnd;   //End of the new queue
-	private PImage newQueueBegin; //Beginning of the new queue
-	private int currentPID; //PID of the currently executing process
+	private final int instructionsPerSlice = 3; //Number of instructions to be executed per CPU time slice by default
+	private final int maxReadyQueue = 5; //Maximum size of each core's ready queue
+	private final int initialProcessCapacity = 100; //Number of processes to make room for up front
+	private final int slicesPerLock = 64; //Slices a core runs before letting kill and show at its processes
+	private final long idleNanos = 50000; //How long an idle core thread sleeps before looking for work again
+	private final int minCompiledQuantum = 16; //Shorter slices are cheaper to interpret than to enter compiled code for
+	private final int slicesPerSample = 64; //Slices a core runs per slice whose latency is recorded
+	private final int aloneCycles = 1 << 16; //Instructions a process alone on its core runs before arrivals, kill and show get a look in
+	private static final byte[] checkpointMagic = "OSEMCKPT".getBytes(StandardCharsets.US_ASCII);
+	private static final int checkpointVersion = 2;
+	private static final int checkpointPrefix = 24; //Magic, version, byte order and header length, padded
+	private ProcessTable processList; //a list of processes.
+	private Supplier<Scheduler> schedulers; //Creates the scheduler of each core
+	private Cpu[] cpus; //The simulated cores
+	private boolean deterministic; //Whether runAll moves every core forward in lockstep
+	private final SubmissionQueue submissions; //Processes submitted but not yet given a PID
+	private ProcessQueue newQueue; //Processes waiting for space in a ready queue
+	private volatile int waiting; //Number of processes in the new queue, read without holding the lock
+	private volatile int live; //Number of processes not yet cleaned up, read without holding the lock
+	private volatile int blocked; //Number of those that are blocked, read without holding the lock
+	private boolean predecoded; //Whether slices run through the pre-decoded interpreter
+	private final ImageCache imageCache; //Binaries already loaded into the process table
+	private volatile OutcomeCache outcomeCache; //How earlier processes ended, or null to execute every process
+	private volatile ProgramCompiler compiler; //Compiles hot binaries, or null to interpret every process
+	private volatile BatchInterpreter batchInterpreter; //Runs new processes loaded from the same binary together, or null
+	private volatile EventTrace trace; //Receives scheduling and execution events, or null
+	private volatile boolean loopDetection; //Whether processes that repeat a state are terminated
+	private final ReentrantLock draining; //Held by the thread draining submissions, which keeps them in order
+	private SubmissionQueue.Submission[] drained = new SubmissionQueue.Submission[64]; //Submissions taken by the current drain, guarded by draining
+	private int[] drainedSegments = new int[64]; //Code segment of each of drained, guarded by draining
+	private int[] drainedLimits = new int[64]; //Cycle limit of each of drained, guarded by draining
+	private OutcomeCache.Outcome[] drainedOutcomes = new OutcomeCache.Outcome[64]; //Outcome of each of drained, or null, guarded by draining
+	private final byte[] drainedCode = new byte[ProcessTable.codeSize]; //Initial code of the last of drained looked up, guarded by draining
+	private CoreDumpWriter coreDumpWriter; //Receives the core dump of every terminated process
+	private PrintStream statusStream; //Receives status output
+	private final CoreDump coreDump; //Scratch space for capturing core dumps
+	private final StatusSnapshot statusSnapshot; //Reused by printStatus
+	private final SimulatorMetrics metrics; //What the simulator has done so far
+	private final SchedulingStats schedulingStats; //Accounting of the processes terminated by the last runAll, guarded by this
+	private volatile boolean running; //Whether runAll's core threads are active
+	private volatile Throwable failure; //First exception thrown by a core thread
+	private volatile boolean lockstepDone; //Set by the last round of a deterministic runAll
+
+	/**
+	 * A simulated core. Fields are guarded by the core's monitor.
+	 */
+	private static final class Cpu {
+		final int index;
+		Scheduler scheduler; //Owns this core's ready queue
+		int currentPID = -1; //PID of the process this core is executing
+		int terminatedPID = -1; //Process that terminated during the last slice and still needs to be cleaned up
+		CoreDump.Reason terminatedReason; //Why terminatedPID terminated
+		final CoreDump coreDump = new CoreDump(); //Scratch space for the dumps of this core's processes
+		final ProgramCompiler.Frame frame = new ProgramCompiler.Frame(); //Registers of the process running compiled code
+		int lastPID = -1; //Process this core ran most recently
+		int untilSample = 1; //Slices left until the next one is timed
+		int slices; //Slices not yet added to the metrics
+		long instructions; //Cycles used by those slices
+		int contextSwitches; //Context switches not yet added to the metrics
+		volatile long clock; //Simulated ticks: cycles run on this core, plus idle time skipped over
+		final TimingWheel sleeping; //This core's sleeping processes, by the tick they wake up at
+		final ProcessQueue blocked; //This core's blocked processes, waiting for wakeProcess
+		Cpu(int index, Scheduler scheduler, ProcessTable table) {
+			this.index = index;
+			this.scheduler = scheduler;
+			sleeping = new TimingWheel(table);
+			blocked = new ProcessQueue(table);
+		}
+		/**
+		 * Whether the core has nothing to run.
+		 * @return true if no process is running or ready on this core.
+		 */
+		boolean isIdle() {
+			return currentPID == -1 && scheduler.size() == 0;
+		}
+	}
+
 	public Simulator() {
-		readyQueueEnd = readyQueueBegin = newQueueEnd = newQueueBegin = null;
-		currentPID = -1;
-		processList = new PImage[maxSimultaneousProcesses];
-		processListCounter = 0;
+		processList = new ProcessTable(initialProcessCapacity);
+		schedulers = () -> new RoundRobinScheduler(instructionsPerSlice);
+		cpus = new Cpu[] { newCpu(0) };
+		deterministic = false;
+		submissions = new SubmissionQueue();
+		draining = new ReentrantLock();
+		newQueue = new ProcessQueue(processList);
+		waiting = 0;
+		live = 0;
+		blocked = 0;
+		predecoded = true;
+		imageCache = new ImageCache(processList);
+		coreDumpWriter = new TextCoreDumpWriter();
+		statusStream = System.out;
+		coreDump = new CoreDump();
+		statusSnapshot = new StatusSnapshot();
+		schedulingStats = new SchedulingStats();
+		metrics = new SimulatorMetrics(slicesPerSample, () -> waiting, this::getReadyQueueDepth, () -> live);
+	}
+	/**
+	 * Selects the interpreter used by executeSlice. The pre-decoded interpreter keeps the running
+	 * process's registers in locals for the whole slice, while the reference interpreter goes
+	 * through execOneInstruction for every instruction. Both produce identical results.
+	 * @param predecoded true to use the pre-decoded interpreter (the default).
+	 */
+	public void setPredecodedInterpreter(boolean predecoded) {
+		this.predecoded = predecoded;
+	}
+	/**
+	 * Replaces the scheduler of every core. The running process and the processes already in a
+	 * ready queue are handed to the new scheduler of the same core, the running one first and
+	 * the others in the order the old one would have run them, and the new scheduler then picks
+	 * the process to run on the cores that were running one.
+	 * @param factory creates one scheduler per core, now and whenever cores are added.
+	 */
+	public void setScheduler(Supplier<Scheduler> factory) {
+		checkStopped();
+		schedulers = factory;
+		for (Cpu cpu : cpus) {
+			Scheduler newScheduler = factory.get();
+			newScheduler.init(processList);
+			Scheduler oldScheduler = cpu.scheduler;
+			cpu.scheduler = newScheduler;
+			int PID = cpu.currentPID;
+			if (PID != -1) {
+				processList.setReadySince(PID, cpu.clock);
+				makeReady(cpu, PID);
+				cpu.currentPID = -1;
+			}
+			boolean running = PID != -1;
+			while ((PID = oldScheduler.next()) != -1)
+				newScheduler.admit(PID);
+			if (running)
+				setRunning(cpu, newScheduler.next());
+		}
+	}
+	/**
+	 * Changes the number of simulated cores. When cores are removed, their running, ready,
+	 * sleeping and blocked processes are spread over the remaining cores.
+	 * @param count the number of cores, at least 1.
+	 */
+	public void setCores(int count) {
+		checkStopped();
+		if (count < 1)
+			throw new IllegalArgumentException("At least one core is needed");
+		long tick = now();
+		Cpu[] newCpus = new Cpu[count];
+		for (int i = 0; i < count; i++) {
+			newCpus[i] = i < cpus.length ? cpus[i] : newCpu(i);
+			newCpus[i].clock = tick;
+		}
+		int target = 0;
+		for (int i = count; i < cpus.length; i++) {
+			Cpu cpu = cpus[i];
+			int PID = cpu.currentPID;
+			if (PID == -1)
+				PID = cpu.scheduler.next();
+			while (PID != -1) {
+				if (processList.getState(PID) == 2)
+					processList.setReadySince(PID, tick);
+				makeReady(newCpus[target], PID);
+				target = (target + 1) % count;
+				PID = cpu.scheduler.next();
+			}
+			while ((PID = cpu.sleeping.poll(Long.MAX_VALUE)) != -1) {
+				newCpus[target].sleeping.add(PID, processList.getWakeAt(PID));
+				processList.setCpu(PID, target);
+				target = (target + 1) % count;
+			}
+			while ((PID = cpu.blocked.pop()) != -1) {
+				newCpus[target].blocked.push(PID);
+				processList.setCpu(PID, target);
+				target = (target + 1) % count;
+			}
+		}
+		cpus = newCpus;
+		for (Cpu cpu : cpus) {
+			if (cpu.currentPID == -1 && cpu.scheduler.size() != 0)
+				setRunning(cpu, cpu.scheduler.next());
+		}
+	}
+	/**
+	 * Get the number of simulated cores.
+	 * @return the number of cores.
+	 */
+	public int getCores() {
+		return cpus.length;
+	}
+	/**
+	 * Selects how runAll drives multiple cores. In deterministic mode every core executes one
+	 * slice per round and the cores wait for each other between rounds, so a run always
+	 * produces the same results as calling executeSlice repeatedly. Otherwise each core runs
+	 * as fast as it can, which scales better but makes the interleaving depend on timing.
+	 * @param deterministic true to run cores in lockstep.
+	 */
+	public void setDeterministic(boolean deterministic) {
+		checkStopped();
+		this.deterministic = deterministic;
+	}
+	/**
+	 * Enables or disables outcome memoization. With a cache, a process whose code and cpu
+	 * cycle limit match a process that already terminated does not execute its instructions:
+	 * it uses up the same number of cycles, slice by slice, and then ends in the remembered
+	 * state. Scheduling, status output and core dumps are exactly the same as without the
+	 * cache. Showing or killing such a process first replays it from its initial state.
+	 * @param cache the cache to look submissions up in and record outcomes to, or null to
+	 * execute every process.
+	 */
+	public void setOutcomeCache(OutcomeCache cache) {
+		outcomeCache = cache;
+	}
+	/**
+	 * Get the outcome cache.
+	 * @return the cache set by setOutcomeCache, or null if memoization is disabled.
+	 */
+	public OutcomeCache getOutcomeCache() {
+		return outcomeCache;
+	}
+	/**
+	 * Enables or disables the compilation tier. Binaries submitted often enough are compiled
+	 * in the background, and from then on processes loaded from them run compiled code under
+	 * the pre-decoded interpreter setting, in slices of at least getMinCompiledQuantum()
+	 * instructions and while alone on their core. Results are identical either way. The
+	 * previous compiler, if any, is closed.
+	 * @param newCompiler the compiler to use, or null to interpret every process.
+	 */
+	public void setProgramCompiler(ProgramCompiler newCompiler) {
+		ProgramCompiler old = compiler;
+		compiler = newCompiler;
+		if (old != null)
+			old.close();
+	}
+	/**
+	 * Get the shortest slice that runs compiled code. Shorter slices, such as those of the
+	 * default quantum, are interpreted even once their binary is compiled, unless the process
+	 * is alone on its core and runs many slices at once.
+	 * @return the number of instructions.
+	 */
+	public int getMinCompiledQuantum() {
+		return minCompiledQuantum;
+	}
+	/**
+	 * Get the quantum of the default round robin scheduler.
+	 * @return the number of instructions per slice.
+	 */
+	public int getDefaultQuantum() {
+		return instructionsPerSlice;
+	}
+	/**
+	 * Get the compilation tier.
+	 * @return the compiler set by setProgramCompiler, or null if it is disabled.
+	 */
+	public ProgramCompiler getProgramCompiler() {
+		return compiler;
+	}
+	/**
+	 * Enables or disables batch execution. New processes loaded from the same binary are then
+	 * run together as they are given PIDs, and afterwards skip through their slices as with
+	 * the outcome cache. Scheduling, status output and core dumps are exactly the same as
+	 * without it.
+	 * @param interpreter the batch interpreter to use, or null to run every process on its own.
+	 */
+	public void setBatchInterpreter(BatchInterpreter interpreter) {
+		batchInterpreter = interpreter;
+	}
+	/**
+	 * Get the batch interpreter.
+	 * @return the interpreter set by setBatchInterpreter, or null if batching is disabled.
+	 */
+	public BatchInterpreter getBatchInterpreter() {
+		return batchInterpreter;
+	}
+	/**
+	 * Enables or disables loop detection. A process has no input, so once it is back in a
+	 * state it was in before, it will keep going round forever and only stop at its cpu cycle
+	 * limit. With detection on, the state after every backward branch is checked against a
+	 * saved one, and a process that repeats a state is terminated right away with the Looping
+	 * reason. Processes then always run through the pre-decoded interpreter, without batching
+	 * or compiled code, and outcomes remembered beforehand are replayed rather than skipped
+	 * through, since they may end at the cycle limit instead. Looping outcomes are not
+	 * remembered.
+	 * @param enabled true to terminate looping processes early.
+	 */
+	public void setLoopDetection(boolean enabled) {
+		loopDetection = enabled;
+	}
+	/**
+	 * Whether loop detection is on.
+	 * @return the setting made by setLoopDetection.
+	 */
+	public boolean isLoopDetection() {
+		return loopDetection;
+	}
+	/**
+	 * Get the simulator's metrics, which can be registered as an MBean.
+	 * @return the metrics.
+	 */
+	public SimulatorMetrics getMetrics() {
+		return metrics;
+	}
+	/**
+	 * Get the scheduling accounting of the processes that terminated during the last runAll,
+	 * or the one in progress. Must not be used while runAll is in progress.
+	 * @return the accounting, summarized with appendSummary or toString.
+	 */
+	public SchedulingStats getSchedulingStats() {
+		return schedulingStats;
+	}
+	/**
+	 * Gets the current simulated time: the latest clock of any core. Takes no locks.
+	 * @return the tick.
+	 */
+	private long now() {
+		long tick = 0;
+		for (Cpu cpu : cpus)
+			tick = Math.max(tick, cpu.clock);
+		return tick;
+	}
+	/**
+	 * Counts the processes in the ready queues, without taking any locks.
+	 * @return the number of ready processes, possibly slightly out of date.
+	 */
+	private int getReadyQueueDepth() {
+		int depth = 0;
+		for (Cpu cpu : cpus)
+			depth += cpu.scheduler.size();
+		return depth;
+	}
+	/**
+	 * Starts or stops tracing. While a trace is set, every submission, admission to a ready
+	 * queue, dispatch, preemption, store into code, termination and kill is recorded to it.
+	 * Slices then always run through the pre-decoded interpreter, so that no store goes unseen;
+	 * results are the same. The previous trace, if any, is closed.
+	 * @param newTrace the trace to record to, or null to stop tracing.
+	 * @throws IllegalStateException if runAll is in progress.
+	 */
+	public void setEventTrace(EventTrace newTrace) {
+		checkStopped();
+		EventTrace old = trace;
+		trace = newTrace;
+		if (old != null)
+			old.close();
+	}
+	/**
+	 * Get the event trace.
+	 * @return the trace set by setEventTrace, or null if tracing is off.
+	 */
+	public EventTrace getEventTrace() {
+		return trace;
+	}
+	/**
+	 * Replaces the core dump writer. The previous writer is closed, so every dump written to
+	 * it reaches its destination first.
+	 * @param writer the writer to use from now on.
+	 */
+	public void setCoreDumpWriter(CoreDumpWriter writer) {
+		checkStopped();
+		coreDumpWriter.close();
+		coreDumpWriter = writer;
+	}
+	/**
+	 * Redirects status output, which goes to standard output by default.
+	 * @param stream the stream printStatus prints to when it is not given one.
+	 */
+	public void setOutput(PrintStream stream) {
+		statusStream = stream;
+	}
+	/**
+	 * Waits for every core dump written so far and releases the core dump writer. Should be
+	 * called once the simulator is no longer needed.
+	 */
+	public void close() {
+		setProgramCompiler(null);
+		setEventTrace(null);
+		metrics.unregister();
+		coreDumpWriter.close();
+	}
+	/**
+	 * Saves the state of the simulation to a file: every process's registers, code and
+	 * accounting, the new queue, and each core's scheduler, running process and clock, along
+	 * with the shared code segments and the binaries loaded so far. A simulator restored from
+	 * the file carries on exactly as this one would have. Outcomes are not saved, so processes
+	 * skipping through a remembered outcome are replayed first. The process table is written
+	 * through memory mappings, a bulk copy per column, which keeps large tables cheap to save.
+	 * Metrics, settings and the scheduler's configuration are not part of the checkpoint.
+	 * @param path the file to write, replacing any existing one.
+	 * @throws IOException if writing fails.
+	 * @throws IllegalStateException if runAll is in progress.
+	 */
+	public void checkpoint(String path) throws IOException {
+		checkStopped();
+		drainSubmissions();
+		checkpoint(path, 0);
+	}
+	/**
+	 * Saves the state of the simulation once the monitors of every core from the given one
+	 * onwards are held.
+	 * @param path the file to write.
+	 * @param from the first core whose monitor is not yet held.
+	 * @throws IOException if writing fails.
+	 */
+	private void checkpoint(String path, int from) throws IOException {
+		if (from < cpus.length) {
+			synchronized (cpus[from]) {
+				checkpoint(path, from + 1);
+			}
+			return;
+		}
+		synchronized (this) {
+			for (int PID = 0; PID < processList.getHighWater(); PID++) {
+				if (processList.isLive(PID))
+					materialize(PID);
+			}
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(header);
+			out.writeUTF(cpus[0].scheduler.getClass().getName());
+			out.writeInt(cpus.length);
+			for (Cpu cpu : cpus) {
+				out.writeInt(cpu.currentPID);
+				out.writeInt(cpu.lastPID);
+				out.writeLong(cpu.clock);
+				cpu.scheduler.checkpoint(out);
+				cpu.sleeping.checkpoint(out);
+				cpu.blocked.checkpoint(out);
+			}
+			newQueue.checkpoint(out);
+			out.writeInt(waiting);
+			out.writeInt(live);
+			out.writeInt(blocked);
+			processList.checkpoint(out);
+			imageCache.checkpoint(out);
+			out.flush();
+			try (FileChannel file = FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer prefix = ByteBuffer.allocate(checkpointPrefix);
+				prefix.put(checkpointMagic);
+				prefix.putInt(checkpointVersion);
+				prefix.putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+				prefix.putInt(header.size());
+				prefix.clear();
+				ByteBuffer body = ByteBuffer.wrap(header.toByteArray());
+				while (prefix.hasRemaining())
+					file.write(prefix);
+				while (body.hasRemaining())
+					file.write(body);
+				processList.checkpointPages(file, (checkpointPrefix + header.size() + 7) & ~7L);
+			}
+		}
+	}
+	/**
+	 * Replaces the state of the simulation with one saved by checkpoint(), possibly by another
+	 * simulator. Processes submitted but not yet given a PID are discarded along with the rest
+	 * of the old state, and tracing is stopped, since the trace's filenames would no longer
+	 * match. The number of cores comes from the checkpoint, while the scheduler must already
+	 * be of the class the checkpoint was taken with; its configuration, such as the time
+	 * slice, may differ. Other settings are kept. If the file turns out to be damaged after its
+	 * header has been read, the simulator is left in an undefined state.
+	 * @param path the file to read.
+	 * @throws IOException if the file is not a checkpoint, was taken with another scheduler, or
+	 * reading it fails.
+	 * @throws IllegalStateException if runAll is in progress.
+	 */
+	public void restore(String path) throws IOException {
+		checkStopped();
+		drainSubmissions();
+		setEventTrace(null);
+		try (FileChannel file = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			ByteBuffer prefix = ByteBuffer.allocate(checkpointPrefix);
+			while (prefix.hasRemaining() && file.read(prefix) != -1)
+				;
+			prefix.flip();
+			byte[] magic = new byte[checkpointMagic.length];
+			if (prefix.remaining() == checkpointPrefix)
+				prefix.get(magic);
+			if (!Arrays.equals(magic, checkpointMagic) || prefix.getInt() != checkpointVersion)
+				throw new IOException(path + " is not a checkpoint");
+			ByteOrder order = prefix.getInt() == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+			ByteBuffer header = ByteBuffer.allocate(prefix.getInt());
+			while (header.hasRemaining() && file.read(header) != -1)
+				;
+			if (header.hasRemaining())
+				throw new IOException(path + " is truncated");
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+			String schedulerClass = in.readUTF();
+			Cpu[] newCpus = new Cpu[in.readInt()];
+			for (int i = 0; i < newCpus.length; i++) {
+				Cpu cpu = newCpu(i);
+				if (!cpu.scheduler.getClass().getName().equals(schedulerClass))
+					throw new IOException("Checkpoint was taken with " + schedulerClass + ", not " + cpu.scheduler.getClass().getName());
+				cpu.currentPID = in.readInt();
+				cpu.lastPID = in.readInt();
+				cpu.clock = in.readLong();
+				cpu.scheduler.restore(in);
+				cpu.sleeping.restore(in);
+				cpu.blocked.restore(in);
+				newCpus[i] = cpu;
+			}
+			synchronized (this) {
+				newQueue.restore(in);
+				waiting = in.readInt();
+				live = in.readInt();
+				blocked = in.readInt();
+				processList.restore(in);
+				imageCache.restore(in);
+				processList.restorePages(file, (checkpointPrefix + header.capacity() + 7) & ~7L, order);
+				for (Cpu cpu : cpus) //the metrics cover the simulator's whole life, not the checkpoint's
+					flushMetrics(cpu);
+				cpus = newCpus;
+			}
+		}
 	}
 	/**
 	 * Pushes a process into the new queue.
-	 * @param in the process to be added.
+	 * @param PID the process to be added.
 	 */
-	public void pushNew(PImage in) {
-		in.setState(0);
-		if (newQueueBegin != null)
-			newQueueBegin.setNextImage(in);
-		if (newQueueEnd == null)
-			newQueueEnd = in;
-		newQueueBegin = in;
+	public synchronized void pushNew(int PID) {
+		processList.setState(PID, 0);
+		processList.setCpu(PID, -1);
+		newQueue.push(PID);
+		waiting++;
 	}
 	/**
-	 * Pushes a process into the ready queue.
-	 * @param in the process to be added.
+	 * Pushes a process into the ready queue of the first core.
+	 * @param PID the process to be added.
 	 */
-	public void pushReady(PImage in) {
-		in.setState(1);
-		if (readyQueueBegin != null)
-			readyQueueBegin.setNextImage(in);
-		if (readyQueueEnd == null)
-			readyQueueEnd = in;
-		readyQueueBegin = in;
+	public void pushReady(int PID) {
+		Cpu cpu = cpus[0];
+		synchronized (cpu) {
+			processList.setReadySince(PID, cpu.clock);
+			makeReady(cpu, PID);
+		}
 	}
 	/**
 	 * Pops a process from the new queue.
-	 * @return the process popped.
+	 * @return the process popped, or -1 if the queue is empty.
 	 */
-	public PImage popNew() {
-	    PImage temp = newQueueEnd;
-	    if (newQueueEnd.getNextImage() == null)
-	    	newQueueEnd = newQueueBegin = null;
-	    else
-	    	newQueueEnd = newQueueEnd.getNextImage();
-	    temp.setNextImage(null);
-		return temp;
+	public synchronized int popNew() {
+		int PID = newQueue.pop();
+		if (PID != -1)
+			waiting--;
+		return PID;
 	}
 	/**
-	 * Pops a process from the ready queue.
-	 * @return the process popped.
+	 * Pops a process from the ready queue of the first core.
+	 * @return the process popped, or -1 if the queue is empty.
 	 */
-	public PImage popReady() {
-	    PImage temp = readyQueueEnd;
-	    if (readyQueueEnd.getNextImage() == null)
-	    	readyQueueEnd = readyQueueBegin = null;
-	    else
-	    	readyQueueEnd = readyQueueEnd.getNextImage();
-	    temp.setNextImage(null);
-		return temp;
+	public int popReady() {
+		Cpu cpu = cpus[0];
+		synchronized (cpu) {
+			return cpu.scheduler.next();
+		}
 	}
 	/**
-	 * Creates a new process and adds it to the new queue.
+	 * Creates a new process and adds it to the new queue. Safe to call from any number of
+	 * threads, including while runAll is in progress: the binary is loaded on the calling
+	 * thread and the process is queued without taking any lock the cores use, and without
+	 * taking any lock at all once the binary is cached. It gets its PID and joins the new
+	 * queue, in submission order, when the next slice starts.
 	 * @param userID an identifier representing a user.
 	 * @param procPriority the priority of the process.
 	 * @param maxCPU maximum number of CPU cycles available for this process.
@@ -84,80 +605,208 @@ public class Simulator {
 	 * @return true if process creation successful
 	 */
 	public boolean newProcess(int userID, int procPriority, int maxCPU, String filename) {
-		if (processListCounter == maxSimultaneousProcesses)
+		int codeSegment = imageCache.lookup(filename);
+		if (codeSegment == -1)
 			return false;
-		PImage newImage = new PImage();
-		newImage.setName(filename);
+		submissions.offer(userID, procPriority, maxCPU, filename, codeSegment);
+		return true;
+	}
+	/**
+	 * Creates copies of a process and adds them to the new queue, as if newProcess had been
+	 * called that many times, but with the binary loaded only once and the copies queued
+	 * together. Safe to call from any number of threads.
+	 * @param count the number of processes to create.
+	 * @param userID an identifier representing a user.
+	 * @param procPriority the priority of the processes.
+	 * @param maxCPU maximum number of CPU cycles available for each process.
+	 * @param filename a path to a binary to load.
+	 * @return true if the processes were created, false if the binary could not be loaded.
+	 */
+	public boolean newProcesses(int count, int userID, int procPriority, int maxCPU, String filename) {
+		if (count <= 0)
+			return true;
+		int[] userIDs = new int[count];
+		int[] priorities = new int[count];
+		int[] maxCPUs = new int[count];
+		String[] filenames = new String[count];
+		Arrays.fill(userIDs, userID);
+		Arrays.fill(priorities, procPriority);
+		Arrays.fill(maxCPUs, maxCPU);
+		Arrays.fill(filenames, filename);
+		return newProcesses(count, userIDs, priorities, maxCPUs, filenames) == count;
+	}
+	/**
+	 * Creates several processes and adds them to the new queue, in order, as if newProcess had
+	 * been called for each of them. Consecutive processes naming the same binary share a
+	 * single load of it, so a binary that changes while this runs may be seen by fewer of them
+	 * than with separate calls. The processes are queued together, with no process submitted
+	 * by another thread between them. Safe to call from any number of threads.
+	 * @param count the number of entries of the arrays to use.
+	 * @param userIDs the userID of each process.
+	 * @param procPriorities the priority of each process.
+	 * @param maxCPUs the maximum number of CPU cycles available for each process.
+	 * @param filenames a path to the binary of each process.
+	 * @return the number of processes created. The others name binaries that could not be
+	 * loaded.
+	 */
+	public int newProcesses(int count, int[] userIDs, int[] procPriorities, int[] maxCPUs, String[] filenames) {
+		int[] codeSegments = new int[count];
+		int created = 0;
+		int start = 0;
+		while (start < count) {
+			String filename = filenames[start];
+			int end = start + 1;
+			while (end < count && filenames[end].equals(filename))
+				end++;
+			int codeSegment = imageCache.lookup(filename);
+			if (codeSegment != -1 && end - start > 1)
+				processList.retain(codeSegment, end - start - 1);
+			Arrays.fill(codeSegments, start, end, codeSegment);
+			if (codeSegment != -1)
+				created += end - start;
+			start = end;
+		}
+		submissions.offer(count, userIDs, procPriorities, maxCPUs, filenames, codeSegments);
+		return created;
+	}
+	/**
+	 * Gives every queued submission a PID and moves it to the new queue, waiting for a drain
+	 * in progress on another thread first.
+	 */
+	private void drainSubmissions() {
+		draining.lock();
 		try {
-			FileInputStream execImage = new FileInputStream(filename);
-			int[] code = new int[newImage.codeSize];
-			int i = 0;
-			int bytebuf = 0;
-			while ((bytebuf = execImage.read()) != -1) {
-				if (i > newImage.codeSize)
-					break;
-				code[i++] = bytebuf;
-			}
-			newImage.setCode(code);
-			execImage.close();
-		} catch (FileNotFoundException e) {
-			return false;
-		} catch (IOException e) {
-			return false;
+			drainQueued();
+		} finally {
+			draining.unlock();
 		}
-		newImage.setMaxCycles(maxCPU);
-		newImage.setPriority(procPriority);
-		newImage.setUID(userID);
-		newImage.setPID(processListCounter);
-		processList[processListCounter++] = newImage;
-		pushNew(newImage);
-		return true;
 	}
 	/**
-	 * Gets the status of a particular non-terminated process.
-	 * @param proc process to retrieve statistics for.
-	 * @return statistics in pretty string format.
-	 */
-	private String getStatus(PImage proc) {
-		String output = "";
-		output += String.format("PID = %d\n", proc.getPID());
-		output += String.format("userID = %d\n", proc.getUID());
-		output += String.format("state = %s\n", proc.getState());
-		output += String.format("priority = %s\n", proc.getPriority());
-		output += String.format("max CPU cycles = %d\n", proc.getMaxCycles());
-		output += String.format("CPU cycles used = %d\n", proc.getExecutedCycles());
-		output += String.format("filename = %s\n", proc.getName());
-		output += String.format("PC = %d\n", proc.getProgramCounter());
-		output += String.format("AC = %d\n", proc.getAccumulator());
-		int i = 0;
-		for(int instruction : proc.getCode()) {
-			output += String.format("%02X ", instruction);
-			if (++i%8 == 0)
-				output += "\n";
-		}
-		
-		output += "\n";
-		return output;
+	 * Gives every queued submission a PID and moves it to the new queue, unless another thread
+	 * is already draining them.
+	 */
+	private void tryDrainSubmissions() {
+		if (!draining.tryLock())
+			return;
+		try {
+			drainQueued();
+		} finally {
+			draining.unlock();
+		}
+	}
+	/**
+	 * Drains the submission queue in three steps: the submissions are taken from the queue and
+	 * looked up in the outcome cache, batches are run on them, and only then are their
+	 * processes created and pushed into the new queue, in the order they were submitted. The
+	 * simulator's lock is only held for the last step, so a long batch does not hold up the
+	 * cores or the commands that need the lock. Must be called with draining held.
+	 */
+	private void drainQueued() {
+		OutcomeCache cache = outcomeCache;
+		BatchInterpreter batch = trace == null && !loopDetection ? batchInterpreter : null; //traced or checked slices would not use its results
+		int count = 0;
+		int codeSegment = -1; //segment whose code is in drainedCode
+		SubmissionQueue.Submission submission;
+		while ((submission = submissions.poll()) != null) {
+			if (count == drained.length) {
+				drained = Arrays.copyOf(drained, count * 2);
+				drainedSegments = Arrays.copyOf(drainedSegments, count * 2);
+				drainedLimits = Arrays.copyOf(drainedLimits, count * 2);
+				drainedOutcomes = Arrays.copyOf(drainedOutcomes, count * 2);
+			}
+			drained[count] = submission;
+			drainedSegments[count] = submission.getCodeSegment();
+			drainedLimits[count] = submission.getMaxCPU();
+			if (cache != null) {
+				if (codeSegment != submission.getCodeSegment()) {
+					codeSegment = submission.getCodeSegment();
+					processList.getSharedCode(codeSegment, drainedCode);
+				}
+				drainedOutcomes[count] = cache.lookup(drainedCode, submission.getMaxCPU());
+			}
+			count++;
+		}
+		if (count == 0)
+			return;
+		if (batch != null) //nothing else can see these processes yet
+			batch.run(processList, drainedSegments, drainedLimits, drainedOutcomes, count, cache);
+		synchronized (this) {
+			ProgramCompiler tier = compiler;
+			EventTrace tracer = trace;
+			long tick = now();
+			for (int i = 0; i < count; i++) {
+				submission = drained[i];
+				int PID = processList.allocate();
+				processList.create(PID, submission.getUserID(), submission.getPriority(), submission.getMaxCPU(),
+						submission.getFilename(), submission.getCodeSegment());
+				processList.setAdmittedAt(PID, tick);
+				if (tracer != null)
+					tracer.submitted(processList, PID, tick);
+				live++;
+				if (drainedOutcomes[i] != null)
+					processList.setOutcome(PID, drainedOutcomes[i]);
+				if (tier != null)
+					processList.setCompiled(PID, tier.lookup(processList, PID));
+				pushNew(PID);
+			}
+		}
+		Arrays.fill(drained, 0, count, null);
+		Arrays.fill(drainedOutcomes, 0, count, null);
 	}
 	/**
 	 * Prints out the status of all non-terminated processes.
 	 */
 	public void printStatus() {
-		String output = " PID   userID  state  priority  max CPU  CPU used  filename\n" +
-						"-----  ------  -----  --------  -------  --------  --------\n";
-		for (int i = 0; i < processListCounter; i++) {
-			if (processList[i] == null)
-				continue;
-			output += String.format("% 5d  ", processList[i].getPID());
-			output += String.format("% 6d  ", processList[i].getUID());
-			output += String.format("%5s  ", processList[i].getState());
-			output += String.format("%8s  ", processList[i].getPriority());
-			output += String.format("% 7d  ", processList[i].getMaxCycles());
-			output += String.format("% 8d  ", processList[i].getExecutedCycles());
-			output += String.format("%8s", processList[i].getName());
-			output += "\n";
+		printStatus(statusStream);
+	}
+	/**
+	 * Prints out the status of all non-terminated processes to a stream.
+	 * @param out the stream to print to.
+	 */
+	public void printStatus(PrintStream out) {
+		synchronized (statusSnapshot) {
+			printStatus(statusSnapshot, out);
+		}
+	}
+	/**
+	 * Prints out the processes a snapshot's filter and range select to a stream, a page at a
+	 * time. The cores are only held up while each page is copied; it is formatted from the
+	 * copy. Each page shows the processes as they were at one instant.
+	 * @param snapshot the snapshot to list the processes with, which must not be in the
+	 * middle of a list.
+	 * @param out the stream to print to.
+	 */
+	public void printStatus(StatusSnapshot snapshot, PrintStream out) {
+		do {
+			snapshotStatus(snapshot);
+			snapshot.print(out);
+		} while (!snapshot.isFinished());
+	}
+	/**
+	 * Copies the next page of the process list as it is between two slices of every core.
+	 * @param snapshot the snapshot to overwrite.
+	 */
+	public void snapshotStatus(StatusSnapshot snapshot) {
+		drainSubmissions();
+		snapshotStatus(cpus, 0, snapshot);
+	}
+	/**
+	 * Copies the process list once the monitors of every core from the given one onwards are
+	 * held.
+	 * @param cores the cores to lock.
+	 * @param from the first core whose monitor is not yet held.
+	 * @param snapshot the snapshot to overwrite.
+	 */
+	private void snapshotStatus(Cpu[] cores, int from, StatusSnapshot snapshot) {
+		if (from < cores.length) {
+			synchronized (cores[from]) {
+				snapshotStatus(cores, from + 1, snapshot);
+			}
+			return;
+		}
+		synchronized (this) {
+			snapshot.capture(processList);
 		}
-		System.out.println(output);
 	}
 	/**
 	 * Prints out the status of a single process
@@ -165,192 +814,1045 @@ public class Simulator {
 	 * @return true if process exists.
 	 */
 	public boolean printStatus(int PID) {
-		if (PID >= processListCounter)
-			return false;
-		if (processList[PID] == null)
+		return printStatus(PID, statusStream);
+	}
+	/**
+	 * Prints out the status of a single process to a stream. The process's core is only held
+	 * up while its state is copied.
+	 * @param PID process to print status for.
+	 * @param out the stream to print to.
+	 * @return true if process exists.
+	 */
+	public boolean printStatus(int PID, PrintStream out) {
+		CoreDump status = new CoreDump();
+		if (!snapshotStatus(PID, status))
 			return false;
-		System.out.println(getStatus(processList[PID]));
+		StringBuilder output = new StringBuilder(256);
+		status.appendStatus(output);
+		out.println(output);
 		return true;
 	}
+	/**
+	 * Copies the state of a single process as it is between two slices of its core.
+	 * @param PID the process.
+	 * @param status the copy to overwrite.
+	 * @return true if process exists.
+	 */
+	public boolean snapshotStatus(int PID, CoreDump status) {
+		drainSubmissions();
+		while (true) {
+			Cpu cpu;
+			synchronized (this) {
+				if (!processList.isLive(PID))
+					return false;
+				int owner = processList.getCpu(PID);
+				if (owner == -1) {
+					status.capture(processList, PID, null);
+					return true;
+				}
+				cpu = cpus[owner];
+			}
+			synchronized (cpu) {
+				synchronized (this) {
+					if (!processList.isLive(PID))
+						return false;
+					if (processList.getCpu(PID) != cpu.index)
+						continue; //stolen by another core in the meantime
+					materialize(PID);
+					status.capture(processList, PID, null);
+					return true;
+				}
+			}
+		}
+	}
 	/**
 	 * Kills a process.
 	 * @param PID identifier for the process
 	 * @return true if the process could be killed, false otherwise
 	 */
 	public boolean killProcess(int PID) {
-		if (PID > processList.length)
-			return false;
-		if (processList[PID] == null)
-			return false;
-		writeCoreDump(processList[PID], "Process killed");
-		terminateProcess(PID);
-		return true;
+		drainSubmissions();
+		while (true) {
+			Cpu cpu;
+			synchronized (this) {
+				if (!processList.isLive(PID))
+					return false;
+				int owner = processList.getCpu(PID);
+				if (owner == -1) {
+					long tick = now();
+					processList.setTerminatedAt(PID, tick);
+					traceKill(-1, PID, tick);
+					writeCoreDump(PID, CoreDump.Reason.Killed);
+					metrics.terminated(CoreDump.Reason.Killed);
+					newQueue.remove(PID);
+					waiting--;
+					release(PID);
+					return true;
+				}
+				cpu = cpus[owner];
+			}
+			synchronized (cpu) {
+				synchronized (this) {
+					if (!processList.isLive(PID) || cpu.terminatedPID == PID)
+						return false;
+					if (processList.getCpu(PID) != cpu.index)
+						continue; //stolen by another core in the meantime
+					materialize(PID);
+					int state = processList.getState(PID);
+					if (state == 1) //count the wait up to the kill
+						countWait(cpu, PID);
+					processList.setTerminatedAt(PID, cpu.clock);
+					traceKill(cpu.index, PID, cpu.clock);
+					writeCoreDump(PID, CoreDump.Reason.Killed);
+					metrics.terminated(CoreDump.Reason.Killed);
+					flushMetrics(cpu);
+					if (PID == cpu.currentPID)
+						cpu.currentPID = -1;
+					else if (state == 3) {
+						cpu.blocked.remove(PID);
+						blocked--;
+					} else if (state == 4)
+						cpu.sleeping.remove(PID);
+					else
+						cpu.scheduler.remove(PID);
+					release(PID);
+					return true;
+				}
+			}
+		}
 	}
 	/**
-	 * Executes a single instruction.
+	 * Puts a ready or running process to sleep for a number of ticks of its core's clock. It
+	 * leaves the ready queue for its core's timing wheel, and goes back once the core's clock
+	 * reaches its wakeup tick; until then it costs nothing. A core with nothing but sleeping
+	 * processes skips ahead to the next wakeup.
+	 * @param PID the process.
+	 * @param ticks how long it sleeps, at least 1.
+	 * @return true if the process was put to sleep, false if it does not exist, is still new,
+	 * or is already sleeping or blocked.
+	 */
+	public boolean sleepProcess(int PID, long ticks) {
+		if (ticks < 1)
+			throw new IllegalArgumentException("A process sleeps for at least one tick");
+		return suspend(PID, ticks);
+	}
+	/**
+	 * Blocks a ready or running process until wakeProcess is called for it, e.g. while it waits
+	 * for an external event. Blocked processes cannot execute, so runAll returns once every
+	 * process left is blocked.
+	 * @param PID the process.
+	 * @return true if the process was blocked, false if it does not exist, is still new, or is
+	 * already sleeping or blocked.
+	 */
+	public boolean blockProcess(int PID) {
+		return suspend(PID, -1);
+	}
+	/**
+	 * Takes a ready or running process off its core until it is woken up.
+	 * @param PID the process.
+	 * @param ticks how long it sleeps, or -1 to block it.
+	 * @return true if the process was suspended.
+	 */
+	private boolean suspend(int PID, long ticks) {
+		drainSubmissions();
+		while (true) {
+			Cpu cpu;
+			synchronized (this) {
+				if (!processList.isLive(PID) || processList.getCpu(PID) == -1)
+					return false;
+				cpu = cpus[processList.getCpu(PID)];
+			}
+			synchronized (cpu) {
+				synchronized (this) {
+					if (!processList.isLive(PID) || cpu.terminatedPID == PID)
+						return false;
+					if (processList.getCpu(PID) != cpu.index)
+						continue; //stolen by another core in the meantime
+					if (PID == cpu.currentPID)
+						cpu.currentPID = -1;
+					else if (processList.getState(PID) == 1) {
+						countWait(cpu, PID);
+						cpu.scheduler.remove(PID);
+					} else
+						return false;
+					long wakeAt = 0;
+					if (ticks == -1) {
+						processList.setState(PID, 3);
+						cpu.blocked.push(PID);
+						blocked++;
+					} else {
+						wakeAt = cpu.clock + ticks;
+						processList.setState(PID, 4);
+						cpu.sleeping.add(PID, wakeAt);
+					}
+					EventTrace tracer = trace;
+					if (tracer != null)
+						tracer.record(EventTrace.sleepEvent, cpu.index, PID, cpu.clock, processList.getState(PID), (int) wakeAt,
+								(int) (wakeAt >>> 32), 0);
+					return true;
+				}
+			}
+		}
+	}
+	/**
+	 * Wakes up a sleeping or blocked process straight away, putting it back in its core's ready
+	 * queue.
+	 * @param PID the process.
+	 * @return true if the process was woken up, false if it does not exist or is neither
+	 * sleeping nor blocked.
+	 */
+	public boolean wakeProcess(int PID) {
+		drainSubmissions();
+		while (true) {
+			Cpu cpu;
+			synchronized (this) {
+				if (!processList.isLive(PID) || processList.getCpu(PID) == -1)
+					return false;
+				cpu = cpus[processList.getCpu(PID)];
+			}
+			synchronized (cpu) {
+				synchronized (this) {
+					if (!processList.isLive(PID))
+						return false;
+					if (processList.getCpu(PID) != cpu.index)
+						continue; //moved to another core in the meantime
+					int state = processList.getState(PID);
+					if (state == 3) {
+						cpu.blocked.remove(PID);
+						blocked--;
+					} else if (state == 4)
+						cpu.sleeping.remove(PID);
+					else
+						return false;
+					wake(cpu, PID, cpu.clock);
+					return true;
+				}
+			}
+		}
+	}
+	/**
+	 * Adds the time a ready process has waited since it last became ready to its total, as it
+	 * leaves the ready queue other than by being dispatched. The caller must hold the core's
+	 * monitor.
+	 * @param cpu the core.
+	 * @param PID the process.
+	 */
+	private void countWait(Cpu cpu, int PID) {
+		long waited = cpu.clock - processList.getReadySince(PID);
+		if (waited > 0)
+			processList.setReadyTicks(PID, processList.getReadyTicks(PID) + waited);
+	}
+	/**
+	 * Records a kill to the event trace, if tracing is on.
+	 * @param core the core owning the process, or -1 if it was new.
+	 * @param PID the process.
+	 * @param tick the current time.
+	 */
+	private void traceKill(int core, int PID, long tick) {
+		EventTrace tracer = trace;
+		if (tracer != null)
+			tracer.record(EventTrace.killEvent, core, PID, tick, processList.getExecutedCycles(PID), 0, 0, 0);
+	}
+	/**
+	 * Executes a single instruction of the process running on the first core.
 	 * @return true if the process did not halt.
 	 */
 	public boolean execOneInstruction() {
-		PImage currentProcess = processList[currentPID];
-		int currentInstruction = currentProcess.getCode()[currentProcess.getProgramCounter()];
-		currentProcess.setProgramCounter(currentProcess.getProgramCounter()+1);
-		currentProcess.setExecutedCycles(currentProcess.getExecutedCycles()+1);
+		Cpu cpu = cpus[0];
+		synchronized (cpu) {
+			materialize(cpu.currentPID);
+			return execOneInstruction(cpu.currentPID);
+		}
+	}
+	/**
+	 * Executes a single instruction.
+	 * @param pid the running process.
+	 * @return true if the process did not halt.
+	 */
+	private boolean execOneInstruction(int pid) {
+		ProcessTable table = processList;
+		int currentInstruction = table.getCode(pid, table.getProgramCounter(pid));
+		table.setProgramCounter(pid, table.getProgramCounter(pid)+1);
+		table.setExecutedCycles(pid, table.getExecutedCycles(pid)+1);
 		switch ((currentInstruction&0b11100000)>>5) {
-			case 0b000: //STOP 
+			case 0b000: //STOP
 				//System.out.println("STOP");
 				return false;
 			case 0b001: //LOAD
-				//System.out.println(String.format("LOAD %02X from %02X", currentProcess.getAccumulator(), currentInstruction&0b00011111));
-				currentProcess.setAccumulator(currentProcess.getCode()[currentInstruction&0b00011111]);
+				//System.out.println(String.format("LOAD %02X from %02X", table.getAccumulator(pid), currentInstruction&0b00011111));
+				table.setAccumulator(pid, table.getCode(pid, currentInstruction&0b00011111));
 				break;
 			case 0b010: //STORE
-				//System.out.println(String.format("STORE %02X to %02X", currentProcess.getAccumulator(), currentInstruction&0b00011111));
-				currentProcess.getCode()[currentInstruction&0b00011111] = currentProcess.getAccumulator();
+				//System.out.println(String.format("STORE %02X to %02X", table.getAccumulator(pid), currentInstruction&0b00011111));
+				table.storeCode(pid, currentInstruction&0b00011111, table.getAccumulator(pid));
 				break;
 			case 0b011: //ADD
-				//System.out.println(String.format("ADD %02X to %02X", currentProcess.getCode()[currentInstruction&0b00011111], currentProcess.getAccumulator()));
-				int sum = (currentProcess.getAccumulator() + currentProcess.getCode()[currentInstruction&0b00011111]);
+				//System.out.println(String.format("ADD %02X to %02X", table.getCode(pid, currentInstruction&0b00011111), table.getAccumulator(pid)));
+				int sum = (table.getAccumulator(pid) + table.getCode(pid, currentInstruction&0b00011111));
 				if (sum > 0xFF)
-					currentProcess.setPSW(currentProcess.getPSW()|0b100);
+					table.setPSW(pid, table.getPSW(pid)|0b100);
 				if (sum < 0)
-					currentProcess.setPSW(currentProcess.getPSW()|0b010);
+					table.setPSW(pid, table.getPSW(pid)|0b010);
 				if (sum == 0)
-					currentProcess.setPSW(currentProcess.getPSW()|0b001);
-				currentProcess.setAccumulator(sum&0xFF);
+					table.setPSW(pid, table.getPSW(pid)|0b001);
+				table.setAccumulator(pid, sum&0xFF);
 				break;
 			case 0b100: //SUBTRACT
-				//System.out.println(String.format("SUB %02X from %02X", currentProcess.getCode()[currentInstruction&0b00011111], currentProcess.getAccumulator()));
-				int difference = currentProcess.getAccumulator() - currentProcess.getCode()[currentInstruction&0b00011111];
+				//System.out.println(String.format("SUB %02X from %02X", table.getCode(pid, currentInstruction&0b00011111), table.getAccumulator(pid)));
+				int difference = table.getAccumulator(pid) - table.getCode(pid, currentInstruction&0b00011111);
 				if (difference > 0xFF)
-					currentProcess.setPSW(currentProcess.getPSW()|0b100);
+					table.setPSW(pid, table.getPSW(pid)|0b100);
 				if (difference < 0)
-					currentProcess.setPSW(currentProcess.getPSW()|0b010);
+					table.setPSW(pid, table.getPSW(pid)|0b010);
 				if (difference == 0)
-					currentProcess.setPSW(currentProcess.getPSW()|0b001);
-				currentProcess.setAccumulator(difference&0xFF);
+					table.setPSW(pid, table.getPSW(pid)|0b001);
+				table.setAccumulator(pid, difference&0xFF);
 				break;
 			case 0b101: //BRANCH (if positive)
 				//System.out.println(String.format("BRA-P TO %02X", currentInstruction&0b00011111));
-				if ((currentProcess.getPSW()&0b011) == 0b000)
-					currentProcess.setProgramCounter(currentInstruction&0b00011111);
+				if ((table.getPSW(pid)&0b011) == 0b000)
+					table.setProgramCounter(pid, currentInstruction&0b00011111);
 				break;
 			case 0b110: //BRANCH (if negative)
 				//System.out.println(String.format("BRA-N TO %02X", currentInstruction&0b00011111));
-				if ((currentProcess.getPSW()&0b011) == 0b010)
-					currentProcess.setProgramCounter(currentInstruction&0b00011111);
+				if ((table.getPSW(pid)&0b011) == 0b010)
+					table.setProgramCounter(pid, currentInstruction&0b00011111);
 				break;
 			case 0b111: //BRANCH (if zero)
 				//System.out.println(String.format("BRA-Z TO %02X", currentInstruction&0b00011111));
-				if ((currentProcess.getPSW()&0b011) == 0b001)
-					currentProcess.setProgramCounter(currentInstruction&0b00011111);
+				if ((table.getPSW(pid)&0b011) == 0b001)
+					table.setProgramCounter(pid, currentInstruction&0b00011111);
 				break;
 		}
 		//System.out.println(String.format("%08b", currentInstruction));
 		return true;
 	}
 	/**
-	 * Determines if there are any processes left that can execute.
-	 * @return true if no processes left
+	 * Determines if there are any processes left that can execute. Blocked processes cannot
+	 * until they are woken up; sleeping ones can.
+	 * @return true if no processes left, other than blocked ones
 	 */
 	public boolean isAllTerminated() {
-		if (currentPID != -1) {
-			return false;
+		return submissions.isEmpty() && !draining.isLocked() && live == blocked; //in the order a drain changes them
+	}
+	/**
+	 * Executes a single CPU time slice on every core. First each core, in order, takes a process
+	 * from the new queue if there is space in its ready queue. Then each core with a ready
+	 * process executes it until the scheduler's time slice is exhausted, until a STOP
+	 * instruction is executed, or until its cpu cycle limit is reached, whichever comes first,
+	 * and its scheduler picks the process to run in the next slice. Finally, cores left without
+	 * work steal from the busiest core.
+	 */
+	public void executeSlice() {
+		checkStopped();
+		for (Cpu cpu : cpus)
+			admit(cpu);
+		for (Cpu cpu : cpus) {
+			synchronized (cpu) {
+				runSlice(cpu);
+			}
 		}
-		if ((readyQueueBegin != null) || (readyQueueEnd != null)) {
-			return false;
+		finishRound();
+	}
+	/**
+	 * Executes slices until every process has terminated. With a single core this is the same
+	 * as calling executeSlice until isAllTerminated returns true. With more cores every core is
+	 * driven by its own thread; see setDeterministic. The scheduling accounting of every process
+	 * that terminates during the run is collected in getSchedulingStats().
+	 * @throws RuntimeException whatever a core threw, e.g. when a process jumped outside of
+	 * its code.
+	 */
+	public void runAll() {
+		checkStopped();
+		Thread[] threads = new Thread[cpus.length];
+		failure = null;
+		synchronized (this) {
+			schedulingStats.clear();
 		}
-		if ((newQueueBegin != null) || (newQueueEnd != null)) {
-			return false;
+		running = true;
+		try {
+			if (cpus.length == 1) {
+				while (!isAllTerminated()) {
+					if (!runAlone(cpus[0]))
+						runSlices(cpus[0]);
+				}
+				return;
+			}
+			if (deterministic) {
+				CyclicBarrier barrier = new CyclicBarrier(cpus.length, () -> {
+					finishRound();
+					lockstepDone = failure != null || isAllTerminated();
+				});
+				for (Cpu cpu : cpus)
+					admit(cpu);
+				lockstepDone = isAllTerminated();
+				for (int i = 0; i < threads.length; i++) {
+					Cpu cpu = cpus[i];
+					threads[i] = new Thread(() -> runLockstep(cpu, barrier), "cpu-" + i);
+				}
+			} else {
+				for (int i = 0; i < threads.length; i++) {
+					Cpu cpu = cpus[i];
+					threads[i] = new Thread(() -> runFree(cpu), "cpu-" + i);
+				}
+			}
+			for (Thread thread : threads)
+				thread.start();
+			boolean interrupted = false;
+			for (Thread thread : threads) {
+				while (thread.isAlive()) {
+					try {
+						thread.join();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		} finally {
+			running = false;
 		}
-		return true;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
 	}
 	/**
-	 * Executes a single CPU time slice. If there are any processes waiting in the new queue
-	 * and there is space available, one will be added to the ready queue. If a process is in
-	 * the ready queue after that, it will execute until the instructions per slice is exhausted,
-	 * until a STOP instruction is executed, or until its cpu cycle limit is reached, whichever comes
-	 * first. 
+	 * Body of a core thread in deterministic mode. Each round every core executes one slice,
+	 * then the last core to arrive at the barrier cleans up, balances and admits for the next
+	 * round on behalf of all of them.
+	 * @param cpu the core driven by this thread.
+	 * @param barrier the barrier shared by all core threads.
 	 */
-	public void executeSlice() {
-		if (!readyQueueIsFull() && (newQueueEnd != null)) {
-			PImage temp = popNew();
-			while (temp.isDead() && (newQueueEnd != null)) //skip over dead processes.
-				temp = popNew();
-			if (temp != null)
-				pushReady(temp);
-		}
-		if (currentPID == -1) {
-			if (readyQueueEnd == null)
+	private void runLockstep(Cpu cpu, CyclicBarrier barrier) {
+		try {
+			while (!lockstepDone) {
+				try {
+					synchronized (cpu) {
+						runSlice(cpu);
+					}
+				} catch (RuntimeException | Error e) {
+					fail(e); //still finish the round so the other cores see the failure and stop
+				}
+				barrier.await();
+			}
+		} catch (BrokenBarrierException e) {
+			//the round's action or another core was interrupted
+		} catch (InterruptedException e) {
+			fail(new IllegalStateException(e));
+		} catch (RuntimeException | Error e) {
+			fail(e);
+		}
+	}
+	/**
+	 * Body of a core thread in free-running mode.
+	 * @param cpu the core driven by this thread.
+	 */
+	private void runFree(Cpu cpu) {
+		try {
+			while (failure == null) {
+				runSlices(cpu);
+				if (cpu.isIdle() && !steal(cpu)) {
+					if (isAllTerminated())
+						return;
+					LockSupport.parkNanos(idleNanos);
+				}
+			}
+		} catch (RuntimeException | Error e) {
+			fail(e);
+		}
+	}
+	/**
+	 * Runs a batch of slices on a core without letting go of its monitor in between, which
+	 * would cost more than a short slice itself. Each slice admits, executes and cleans up
+	 * exactly like executeSlice does on a single core.
+	 * @param cpu the core.
+	 */
+	private void runSlices(Cpu cpu) {
+		synchronized (cpu) {
+			for (int i = 0; i < slicesPerLock; i++) {
+				admit(cpu);
+				if (cpu.isIdle() && !cpu.sleeping.isEmpty() && waiting == 0) //nothing to do until a process wakes up
+					cpu.clock = Math.max(cpu.clock, cpu.sleeping.next());
+				runSlice(cpu);
+				finishSlice(cpu);
+				if (cpu.isIdle())
+					break;
+			}
+		}
+	}
+	/**
+	 * Records the first failure of a core thread, which stops the others.
+	 * @param e what the core threw.
+	 */
+	private synchronized void fail(Throwable e) {
+		if (failure == null)
+			failure = e;
+	}
+	/**
+	 * Moves a process from the new queue to a core's ready queue, if both allow it. Queued
+	 * submissions are drained into the new queue first.
+	 * @param cpu the core to admit to.
+	 */
+	private void admit(Cpu cpu) {
+		if (!submissions.isEmpty())
+			tryDrainSubmissions();
+		if (waiting == 0)
+			return;
+		synchronized (cpu) {
+			if (readyQueueIsFull(cpu))
 				return;
-			PImage temp = popReady();
-			while (temp.isDead() && (readyQueueEnd != null)) //skip over dead processes.
-				temp = popReady();
-			if (temp.isDead() && readyQueueEnd == null)
+			synchronized (this) {
+				if (newQueue.isEmpty())
+					return;
+				int PID = newQueue.pop();
+				waiting--;
+				long arrived = processList.getAdmittedAt(PID);
+				if (cpu.clock < arrived && cpu.isIdle()) //an idle core's time passes until work arrives
+					cpu.clock = arrived;
+				processList.setReadySince(PID, Math.max(cpu.clock, arrived));
+				makeReady(cpu, PID);
+			}
+		}
+	}
+	/**
+	 * Executes a single time slice on a core. The caller must hold the core's monitor. A process
+	 * that terminates is left in terminatedPID for finishSlice to clean up.
+	 * @param cpu the core.
+	 */
+	private void runSlice(Cpu cpu) {
+		Scheduler scheduler = cpu.scheduler;
+		if (!cpu.sleeping.isEmpty())
+			wakeSleepers(cpu);
+		if (cpu.currentPID == -1) {
+			if (scheduler.size() == 0)
 				return;
-			if (temp != null)
-				setRunning(temp);
+			setRunning(cpu, scheduler.next());
+		}
+		int PID = cpu.currentPID;
+		int quantum = scheduler.getQuantum(PID);
+		int startCycles = processList.getExecutedCycles(PID);
+		long startNanos = 0;
+		boolean sampled = --cpu.untilSample == 0;
+		if (sampled) {
+			cpu.untilSample = slicesPerSample;
+			startNanos = System.nanoTime();
 		}
-		for (int i = 0; i < instructionsPerSlice; i++) {
-			if (!execOneInstruction()) { //execution complete
-				writeCoreDump(processList[currentPID], "Process completed normally");
-				terminateProcess(currentPID);
+		OutcomeCache.Outcome memo = processList.getOutcome(PID);
+		CoreDump.Reason outcome = null;
+		ProgramCompiler.Entry compiled = processList.getCompiled(PID);
+		ProgramCompiler.Program program = compiled == null ? null : compiled.getProgram();
+		EventTrace tracer = trace;
+		boolean detectLoops = loopDetection;
+		if (tracer != null || detectLoops) {
+			if (memo != null && memo.isComplete()) { //known before tracing or detection started
+				materialize(PID);
+				memo = null;
+			}
+			outcome = executeQuantum(PID, quantum, cpu, detectLoops);
+		} else if (memo != null && memo.isComplete())
+			outcome = skipQuantum(PID, quantum, memo);
+		else if (predecoded && program != null && quantum >= minCompiledQuantum)
+			outcome = executeCompiled(cpu.frame, PID, quantum, program);
+		else if (predecoded)
+			outcome = executeQuantum(PID, quantum);
+		else for (int i = 0; i < quantum; i++) {
+			if (!execOneInstruction(PID)) { //execution complete
+				outcome = CoreDump.Reason.Completed;
 				break;
 			}
-			if (processList[currentPID].getExecutedCycles() > processList[currentPID].getMaxCycles()) { //you've had too many cycles
-				writeCoreDump(processList[currentPID], "Process reached CPU time limit");
-				terminateProcess(currentPID);
+			if (processList.getExecutedCycles(PID) > processList.getMaxCycles(PID)) { //you've had too many cycles
+				outcome = CoreDump.Reason.CpuLimit;
 				break;
 			}
 		}
-		if (currentPID != -1)
-			pushReady(processList[currentPID]);
-		if (readyQueueEnd != null)
-			setRunning(popReady());
+		int cycles = processList.getExecutedCycles(PID) - startCycles;
+		long clock = cpu.clock + cycles;
+		cpu.clock = clock;
+		cpu.slices++;
+		cpu.instructions += cycles;
+		if (sampled) {
+			metrics.sliceLatency(System.nanoTime() - startNanos);
+			flushMetrics(cpu);
+		}
+		if (outcome != null)
+			terminated(cpu, PID, outcome, memo, clock, tracer);
+		else {
+			processList.setState(PID, 1);
+			processList.preempted(PID, clock);
+			if (tracer != null)
+				tracer.record(EventTrace.preemptEvent, cpu.index, PID, clock, processList.getExecutedCycles(PID), 0, 0, 0);
+			scheduler.requeue(PID);
+		}
+		if (scheduler.size() != 0)
+			setRunning(cpu, scheduler.next());
 	}
 	/**
-	 * Marks process as currently-running process.
-	 * @param proc process to mark
+	 * Moves the sleeping processes of a core whose wakeup tick the core's clock has reached to
+	 * its ready queue, in the order they wake up in. The caller must hold the core's monitor.
+	 * @param cpu the core.
 	 */
-	private void setRunning(PImage proc) {
-		currentPID = proc.getPID();
-		proc.setState(2);
+	private void wakeSleepers(Cpu cpu) {
+		int PID;
+		while ((PID = cpu.sleeping.poll(cpu.clock)) != -1)
+			wake(cpu, PID, processList.getWakeAt(PID));
 	}
 	/**
-	 * Determines if there is space available in the ready queue.
-	 * @return true if space is full.
+	 * Hands a process that was sleeping or blocked back to its core's scheduler. The caller must
+	 * hold the core's monitor.
+	 * @param cpu the core.
+	 * @param PID the process, no longer on the core's timing wheel or blocked queue.
+	 * @param tick the tick it became ready at.
+	 */
+	private void wake(Cpu cpu, int PID, long tick) {
+		EventTrace tracer = trace;
+		if (tracer != null)
+			tracer.record(EventTrace.wakeEvent, cpu.index, PID, tick, 0, 0, 0, 0);
+		processList.setReadySince(PID, tick);
+		processList.setState(PID, 1);
+		cpu.scheduler.admit(PID);
+	}
+	/**
+	 * Runs the process on a single core while nothing else can run there, for as many whole
+	 * time slices as fit in aloneCycles instructions, without requeueing it after each one. The
+	 * process ends up exactly as if it had been preempted and dispatched again after each of
+	 * those slices, which is what runSlice would have done with nobody else to pick, except
+	 * that the slices are not timed for the slice latency histogram. Processes that are being
+	 * traced, skip through a known outcome, or use the reference interpreter are left to
+	 * runSlice.
+	 * @param cpu the core.
+	 * @return true if slices were run, false if the process is not alone or not eligible.
 	 */
-	private boolean readyQueueIsFull() {
-		PImage curProc = readyQueueEnd;
-		for (int i = 0; i < maxReadyQueue; i++) {
-			if (curProc == null)
+	private boolean runAlone(Cpu cpu) {
+		synchronized (cpu) {
+			int PID = cpu.currentPID;
+			Scheduler scheduler = cpu.scheduler;
+			if (PID == -1 || scheduler.size() != 0 || !cpu.sleeping.isEmpty() || waiting != 0 || !submissions.isEmpty()
+					|| draining.isLocked() || trace != null || !predecoded)
+				return false;
+			int quantum = scheduler.getSteadyQuantum(PID);
+			OutcomeCache.Outcome memo = processList.getOutcome(PID);
+			if (quantum < 1 || memo != null && memo.isComplete())
 				return false;
-			curProc = curProc.getNextImage();
+			int slices = Math.max(1, aloneCycles / quantum);
+			int startCycles = processList.getExecutedCycles(PID);
+			ProgramCompiler.Entry compiled = processList.getCompiled(PID);
+			ProgramCompiler.Program program = compiled == null ? null : compiled.getProgram();
+			boolean detectLoops = loopDetection;
+			CoreDump.Reason outcome;
+			if (detectLoops)
+				outcome = executeQuantum(PID, slices * quantum, cpu, true);
+			else if (program != null)
+				outcome = executeCompiled(cpu.frame, PID, slices * quantum, program);
+			else
+				outcome = executeQuantum(PID, slices * quantum);
+			int cycles = processList.getExecutedCycles(PID) - startCycles;
+			if (outcome != null)
+				slices = (cycles + quantum - 1) / quantum; //the last one ended early
+			long clock = cpu.clock + cycles;
+			cpu.clock = clock;
+			cpu.slices += slices;
+			cpu.instructions += cycles;
+			cpu.untilSample -= slices;
+			if (cpu.untilSample <= 0) { //no latency sample: the slices were not timed one by one
+				cpu.untilSample = slicesPerSample;
+				flushMetrics(cpu);
+			}
+			if (outcome != null) {
+				if (slices > 1)
+					processList.preempted(PID, clock - (cycles - (slices - 1) * quantum), slices - 1);
+				terminated(cpu, PID, outcome, memo, clock, null);
+			} else
+				processList.preempted(PID, clock, slices);
+			finishSlice(cpu);
+			return true;
 		}
-		return true;
 	}
 	/**
-	 * Internal function for terminating a process.
-	 * @param PID identifier for process to kill.
+	 * Records that the process running on a core terminated during its slice, leaving it in
+	 * terminatedPID for finishSlice to clean up. The caller must hold the core's monitor.
+	 * @param cpu the core.
+	 * @param PID the process.
+	 * @param outcome why it terminated.
+	 * @param memo the outcome the process was recording, or null.
+	 * @param clock the core's clock at the end of the slice.
+	 * @param tracer the event trace, or null.
+	 */
+	private void terminated(Cpu cpu, int PID, CoreDump.Reason outcome, OutcomeCache.Outcome memo, long clock, EventTrace tracer) {
+		OutcomeCache cache = outcomeCache;
+		if (memo != null && !memo.isComplete() && cache != null && outcome != CoreDump.Reason.Looping)
+			cache.record(memo, processList, PID, outcome);
+		processList.setTerminatedAt(PID, clock);
+		if (tracer != null)
+			tracer.record(EventTrace.terminateEvent, cpu.index, PID, clock, outcome.ordinal(), processList.getExecutedCycles(PID), 0, 0);
+		cpu.currentPID = -1;
+		cpu.terminatedPID = PID;
+		cpu.terminatedReason = outcome;
+	}
+	/**
+	 * Writes the core dump of the process that terminated during a core's last slice and frees
+	 * its slot. The caller must hold the core's monitor.
+	 * @param cpu the core.
 	 */
-	private void terminateProcess(int PID) {
-		if (PID == currentPID) {
-			currentPID = -1;
+	private void finishSlice(Cpu cpu) {
+		int PID = cpu.terminatedPID;
+		if (PID == -1)
+			return;
+		synchronized (this) {
+			cpu.coreDump.capture(processList, PID, cpu.terminatedReason);
+			release(PID);
 		}
-		processList[PID].kill();
-		processList[PID] = null;
+		metrics.terminated(cpu.terminatedReason);
+		flushMetrics(cpu);
+		cpu.terminatedPID = -1;
+		coreDumpWriter.write(cpu.coreDump);
 	}
 	/**
-	 * Writes a core dump to a file with specified message.
-	 * @param image Process to write core dump for.
-	 * @param message string to append to the end of the core dump.
+	 * Ends a round of slices: brings every core's clock up to the latest one, cleans up
+	 * terminated processes in core order, lets idle cores steal, and admits processes for the next round. Used by executeSlice, and as the barrier
+	 * action in deterministic mode. If every core is still idle, time skips ahead to the next
+	 * wakeup of a sleeping process.
 	 */
-	private void writeCoreDump(PImage image, String message) {
-		try {
-			FileWriter writer = new FileWriter(image.getName() + ".core");
-			writer.append(getStatus(image));
-			writer.append(message);
-			writer.close();
-		} catch (IOException e) {
+	private void finishRound() {
+		long tick = now(); //a round lasts as long as its longest slice
+		for (Cpu cpu : cpus)
+			cpu.clock = tick;
+		for (Cpu cpu : cpus) {
+			if (cpu.terminatedPID == -1) //no core is running a slice while this runs
+				continue;
+			synchronized (cpu) {
+				finishSlice(cpu);
+			}
+		}
+		for (Cpu cpu : cpus) {
+			if (cpu.isIdle())
+				steal(cpu);
+		}
+		if (running) {
+			for (Cpu cpu : cpus)
+				admit(cpu);
+		}
+		long wakeup = Long.MAX_VALUE;
+		for (Cpu cpu : cpus) {
+			if (!cpu.isIdle())
+				return;
+			wakeup = Math.min(wakeup, cpu.sleeping.next());
+		}
+		if (waiting == 0 && wakeup != Long.MAX_VALUE) { //nothing to do until a process wakes up
+			for (Cpu cpu : cpus)
+				cpu.clock = Math.max(cpu.clock, wakeup);
+		}
+	}
+	/**
+	 * Moves half of the ready queue of the busiest core to an idle core.
+	 * @param thief the idle core.
+	 * @return true if any process was moved.
+	 */
+	private boolean steal(Cpu thief) {
+		Cpu victim = null;
+		int most = 0;
+		for (Cpu cpu : cpus) {
+			int size = cpu.scheduler.size();
+			if (cpu != thief && size > most) {
+				victim = cpu;
+				most = size;
+			}
+		}
+		if (victim == null)
+			return false;
+		Cpu first = thief.index < victim.index ? thief : victim;
+		Cpu second = first == thief ? victim : thief;
+		synchronized (first) {
+			synchronized (second) {
+				if (!thief.isIdle())
+					return true;
+				if (thief.clock < victim.clock)
+					thief.clock = victim.clock;
+				int count = (victim.scheduler.size() + 1) / 2;
+				for (int i = 0; i < count; i++)
+					makeReady(thief, victim.scheduler.next(), victim.scheduler);
+				if (thief.scheduler.size() == 0)
+					return false;
+				setRunning(thief, thief.scheduler.next());
+				return true;
+			}
+		}
+	}
+	/**
+	 * Executes one time slice of a process whose outcome is already known, without executing
+	 * any instructions. The process uses up the slice's cycles, and takes on its final state
+	 * in the slice it would have terminated in.
+	 * @param PID the currently running process.
+	 * @param quantum the number of instructions in the slice.
+	 * @param memo how the process ends.
+	 * @return why the process terminated, or null if it used up the slice.
+	 */
+	private CoreDump.Reason skipQuantum(int PID, int quantum, OutcomeCache.Outcome memo) {
+		int cycles = processList.getExecutedCycles(PID) + quantum;
+		if (cycles < memo.getExecutedCycles()) {
+			processList.setExecutedCycles(PID, cycles);
+			return null;
+		}
+		memo.apply(processList, PID);
+		processList.setOutcome(PID, null);
+		return memo.getReason();
+	}
+	/**
+	 * Executes one time slice of a process with its binary's compiled program. Behaves exactly
+	 * like executeQuantum.
+	 * @param frame scratch space for the process's registers.
+	 * @param PID the currently running process.
+	 * @param quantum the number of instructions in the slice.
+	 * @param program the compiled binary.
+	 * @return why the process terminated, or null if it used up the slice.
+	 */
+	private CoreDump.Reason executeCompiled(ProgramCompiler.Frame frame, int PID, int quantum, ProgramCompiler.Program program) {
+		ProcessTable table = processList;
+		int cycles = table.getExecutedCycles(PID);
+		int maxCycles = table.getMaxCycles(PID);
+		long budget = Math.min(quantum, (long) maxCycles + 1 - cycles); //instructions before the cycle limit is hit
+		if (budget < 1)
+			return executeQuantum(PID, quantum);
+		frame.load(table, PID);
+		int status = program.run(frame, (int) budget);
+		frame.save();
+		int executed = (int) budget - frame.remaining;
+		table.setExecutedCycles(PID, cycles + executed);
+		if (status == ProgramCompiler.STOPPED)
+			return CoreDump.Reason.Completed;
+		if (status == ProgramCompiler.INTERPRET)
+			return executeQuantum(PID, quantum - executed);
+		if (cycles + executed > maxCycles) //you've had too many cycles
+			return CoreDump.Reason.CpuLimit;
+		return null;
+	}
+	/**
+	 * Turns a process that is skipping through a known outcome back into one that executes
+	 * its instructions, by replaying it from its initial state up to the cycles it has used.
+	 * Its registers and code are then exactly what they would have been all along. The caller
+	 * must hold the lock of the process's core.
+	 * @param PID the process.
+	 */
+	private void materialize(int PID) {
+		OutcomeCache.Outcome memo = processList.getOutcome(PID);
+		if (memo == null || !memo.isComplete())
+			return;
+		processList.setOutcome(PID, null);
+		int cycles = processList.getExecutedCycles(PID);
+		processList.setExecutedCycles(PID, 0);
+		if (cycles > 0)
+			executeQuantum(PID, cycles);
+	}
+	/**
+	 * Executes one time slice of a process with the pre-decoded interpreter. Registers are held
+	 * in locals and only written back once the slice is over. Behaves exactly like calling
+	 * execOneInstruction until the slice, a STOP or the cpu cycle limit ends it.
+	 * @param PID the currently running process.
+	 * @param quantum the number of instructions in the slice.
+	 * @return why the process terminated, or null if it used up the slice.
+	 */
+	private CoreDump.Reason executeQuantum(int PID, int quantum) {
+		return executeQuantum(PID, quantum, null, false);
+	}
+	/**
+	 * Executes one time slice of a process with the pre-decoded interpreter, recording stores
+	 * into code to the event trace and checking for loops if asked to.
+	 * @param PID the currently running process.
+	 * @param quantum the number of instructions in the slice.
+	 * @param cpu the core running the slice, or null to record nothing.
+	 * @param detectLoops whether to check the state after every backward branch.
+	 * @return why the process terminated, or null if it used up the slice.
+	 */
+	private CoreDump.Reason executeQuantum(int PID, int quantum, Cpu cpu, boolean detectLoops) {
+		EventTrace tracer = cpu == null ? null : trace;
+		ProcessTable table = processList;
+		byte[] code = table.getCodeBlock(PID);
+		byte[] opcodes = table.getOpcodeBlock(PID);
+		byte[] operands = table.getOperandBlock(PID);
+		int base = table.getCodeBase(PID);
+		boolean shared = table.isShared(PID);
+		int pc = table.getProgramCounter(PID);
+		int cycles = table.getExecutedCycles(PID);
+		int maxCycles = table.getMaxCycles(PID);
+		int accumulator = table.getAccumulator(PID);
+		int psw = table.getPSW(PID);
+		int startCycles = cycles;
+		CoreDump.Reason outcome = null;
+		for (int i = 0; i < quantum; i++) {
+			if (pc >= ProcessTable.codeSize)
+				throw new ArrayIndexOutOfBoundsException(pc);
+			int operand = operands[base + pc];
+			int opcode = opcodes[base + pc++];
+			cycles++;
+			switch (opcode) {
+				case 0b000: //STOP
+					outcome = CoreDump.Reason.Completed;
+					break;
+				case 0b001: //LOAD
+					accumulator = code[base + operand]&0xFF;
+					break;
+				case 0b010: //STORE
+					if (tracer != null)
+						tracer.record(EventTrace.storeEvent, cpu.index, PID, cpu.clock + cycles - startCycles, operand, accumulator, 0, 0);
+					if (shared) { //the first store gives the process its own copy of the code
+						table.storeCode(PID, operand, accumulator);
+						code = table.getCodeBlock(PID);
+						opcodes = table.getOpcodeBlock(PID);
+						operands = table.getOperandBlock(PID);
+						base = table.getCodeBase(PID);
+						shared = false;
+					} else {
+						table.storeCode(PID, operand, accumulator);
+					}
+					break;
+				case 0b011: //ADD
+				case 0b100: //SUBTRACT
+					int result = opcode == 0b011 ? accumulator + (code[base + operand]&0xFF) : accumulator - (code[base + operand]&0xFF);
+					if (result > 0xFF)
+						psw |= 0b100;
+					if (result < 0)
+						psw |= 0b010;
+					if (result == 0)
+						psw |= 0b001;
+					accumulator = result&0xFF;
+					break;
+				case 0b101: //BRANCH (if positive)
+					if ((psw&0b011) == 0b000) {
+						if (detectLoops && operand < pc && table.revisits(PID, operand, accumulator, psw))
+							outcome = CoreDump.Reason.Looping;
+						pc = operand;
+					}
+					break;
+				case 0b110: //BRANCH (if negative)
+					if ((psw&0b011) == 0b010) {
+						if (detectLoops && operand < pc && table.revisits(PID, operand, accumulator, psw))
+							outcome = CoreDump.Reason.Looping;
+						pc = operand;
+					}
+					break;
+				case 0b111: //BRANCH (if zero)
+					if ((psw&0b011) == 0b001) {
+						if (detectLoops && operand < pc && table.revisits(PID, operand, accumulator, psw))
+							outcome = CoreDump.Reason.Looping;
+						pc = operand;
+					}
+					break;
+			}
+			if (outcome != null)
+				break;
+			if (cycles > maxCycles) { //you've had too many cycles
+				outcome = CoreDump.Reason.CpuLimit;
+				break;
+			}
+		}
+		table.setProgramCounter(PID, pc);
+		table.setExecutedCycles(PID, cycles);
+		table.setAccumulator(PID, accumulator);
+		table.setPSW(PID, psw);
+		return outcome;
+	}
+	/**
+	 * Frees the slot of a terminated process. The caller must hold the simulator's monitor.
+	 * @param PID the process.
+	 */
+	private void release(int PID) {
+		if (running)
+			schedulingStats.add(processList, PID);
+		processList.free(PID);
+		live--;
+	}
+	/**
+	 * Creates a core with a fresh scheduler.
+	 * @param index the core's number.
+	 * @return the core.
+	 */
+	private Cpu newCpu(int index) {
+		Scheduler scheduler = schedulers.get();
+		scheduler.init(processList);
+		return new Cpu(index, scheduler, processList);
+	}
+	/**
+	 * Hands a process to a core's scheduler. The caller must hold the core's monitor.
+	 * @param cpu the core.
+	 * @param PID the process.
+	 */
+	private void makeReady(Cpu cpu, int PID) {
+		makeReady(cpu, PID, null);
+	}
+	/**
+	 * Hands a process to a core's scheduler, possibly straight from another core's. The caller
+	 * must hold the monitor of both cores.
+	 * @param cpu the core.
+	 * @param PID the process.
+	 * @param from the scheduler of the core the process was ready on, or null if it was not
+	 * ready anywhere.
+	 */
+	private void makeReady(Cpu cpu, int PID, Scheduler from) {
+		EventTrace tracer = trace;
+		if (tracer != null)
+			tracer.record(EventTrace.admitEvent, cpu.index, PID, cpu.clock, processList.getCpu(PID) == -1 ? 0 : 1, 0, 0, 0);
+		processList.setState(PID, 1);
+		processList.setCpu(PID, cpu.index);
+		if (from == null)
+			cpu.scheduler.admit(PID);
+		else
+			cpu.scheduler.adopt(PID, from);
+	}
+	/**
+	 * Adds the counts a core has gathered since the last call to the metrics. Cores count
+	 * slices locally and only do this every few slices and whenever a process terminates,
+	 * which keeps the shared counters off the path of every slice. The caller must hold the
+	 * core's monitor.
+	 * @param cpu the core.
+	 */
+	private void flushMetrics(Cpu cpu) {
+		metrics.slices(cpu.slices, cpu.instructions, cpu.contextSwitches);
+		cpu.slices = 0;
+		cpu.instructions = 0;
+		cpu.contextSwitches = 0;
+	}
+	/**
+	 * Marks process as currently-running process of a core.
+	 * @param cpu the core.
+	 * @param PID process to mark
+	 */
+	private void setRunning(Cpu cpu, int PID) {
+		if (PID != cpu.lastPID) {
+			cpu.contextSwitches++;
+			cpu.lastPID = PID;
 		}
+		processList.dispatched(PID, cpu.clock);
+		EventTrace tracer = trace;
+		if (tracer != null)
+			tracer.record(EventTrace.dispatchEvent, cpu.index, PID, cpu.clock, 0, 0, 0, 0);
+		cpu.currentPID = PID;
+		processList.setState(PID, 2);
+	}
+	/**
+	 * Determines if there is space available in a core's ready queue.
+	 * @param cpu the core.
+	 * @return true if space is full.
+	 */
+	private boolean readyQueueIsFull(Cpu cpu) {
+		return cpu.scheduler.size() >= maxReadyQueue;
+	}
+	/**
+	 * Hands a core dump of a process to the core dump writer. The caller must hold the
+	 * simulator's monitor.
+	 * @param PID Process to write core dump for.
+	 * @param reason why the process is terminating.
+	 */
+	private void writeCoreDump(int PID, CoreDump.Reason reason) {
+		coreDump.capture(processList, PID, reason);
+		coreDumpWriter.write(coreDump);
+	}
+	/**
+	 * Makes sure runAll's core threads are not running.
+	 * @throws IllegalStateException if they are.
+	 */
+	private void checkStopped() {
+		if (running)
+			throw new IllegalStateException("Not allowed while runAll is in progress");
 	}
 }
@@ -0,0 +1,163 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters describing what a simulator has done, cheap enough to be always on. Counters are
+ * striped LongAdders, so cores updating them at the same time do not contend, and recording an
+ * event allocates nothing. Cores add their slice counts every few slices and whenever a process
+ * terminates, so while processes are running, the slice, instruction and context switch counts
+ * can trail the truth by up to one sampling interval per core. Queue depths are read from the
+ * simulator when asked for, without taking its locks, so they may be slightly out of date
+ * while cores are running.
+ *
+ * Timing every slice would cost more than a short slice itself, so only one slice in every
+ * getSliceLatencySampling() is timed; the histogram is a sample of the slice latencies. Slices
+ * a lone process runs back to back without being requeued are not timed at all.
+ */
+public class SimulatorMetrics implements SimulatorMetricsMBean {
+	private static final AtomicInteger instances = new AtomicInteger(); //Numbers the MBean names of simulators in one JVM
+	private final int sampling; //Slices run per slice timed
+	private final IntSupplier newQueueDepth;
+	private final IntSupplier readyQueueDepth;
+	private final IntSupplier liveProcesses;
+	private final LongAdder instructions = new LongAdder();
+	private final LongAdder slices = new LongAdder();
+	private final LongAdder contextSwitches = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder cpuLimited = new LongAdder();
+	private final LongAdder killed = new LongAdder();
+	private final LongAdder looping = new LongAdder();
+	private final LongAdder[] sliceLatency = new LongAdder[Long.SIZE]; //One bucket per power of two nanoseconds
+	private ObjectName name; //Name registered under, or null
+
+	/**
+	 * Creates zeroed metrics.
+	 * @param sampling the number of slices run per slice whose latency is recorded.
+	 * @param newQueueDepth reports the number of processes in the new queue.
+	 * @param readyQueueDepth reports the number of processes in the ready queues.
+	 * @param liveProcesses reports the number of processes not yet cleaned up.
+	 */
+	public SimulatorMetrics(int sampling, IntSupplier newQueueDepth, IntSupplier readyQueueDepth, IntSupplier liveProcesses) {
+		this.sampling = Math.max(1, sampling);
+		this.newQueueDepth = newQueueDepth;
+		this.readyQueueDepth = readyQueueDepth;
+		this.liveProcesses = liveProcesses;
+		for (int i = 0; i < sliceLatency.length; i++)
+			sliceLatency[i] = new LongAdder();
+	}
+	/**
+	 * Records time slices.
+	 * @param count the number of slices.
+	 * @param cycles the cpu cycles the slices used.
+	 * @param switches the number of context switches between them.
+	 */
+	public void slices(int count, long cycles, int switches) {
+		slices.add(count);
+		instructions.add(cycles);
+		contextSwitches.add(switches);
+	}
+	/**
+	 * Records how long a sampled slice took.
+	 * @param nanos the duration of the slice.
+	 */
+	public void sliceLatency(long nanos) {
+		sliceLatency[nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)].increment();
+	}
+	/**
+	 * Records a terminated process.
+	 * @param reason why it terminated.
+	 */
+	public void terminated(CoreDump.Reason reason) {
+		switch (reason) {
+			case Completed: completed.increment(); break;
+			case CpuLimit: cpuLimited.increment(); break;
+			case Killed: killed.increment(); break;
+			case Looping: looping.increment(); break;
+		}
+	}
+	/**
+	 * Registers these metrics with the platform MBean server, under the name
+	 * "osem:type=Simulator,id=" followed by a number unique within the JVM.
+	 * @return the name registered under.
+	 * @throws JMException if registration fails.
+	 */
+	public synchronized ObjectName register() throws JMException {
+		if (name == null) {
+			ObjectName candidate = new ObjectName("osem:type=Simulator,id=" + instances.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+			name = candidate;
+		}
+		return name;
+	}
+	/**
+	 * Removes these metrics from the platform MBean server, if they were registered.
+	 */
+	public synchronized void unregister() {
+		if (name == null)
+			return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(name);
+		} catch (JMException e) {
+			//already gone
+		}
+		name = null;
+	}
+	@Override
+	public long getInstructions() {
+		return instructions.sum();
+	}
+	@Override
+	public long getSlices() {
+		return slices.sum();
+	}
+	@Override
+	public long getContextSwitches() {
+		return contextSwitches.sum();
+	}
+	@Override
+	public long getCompleted() {
+		return completed.sum();
+	}
+	@Override
+	public long getCpuLimited() {
+		return cpuLimited.sum();
+	}
+	@Override
+	public long getKilled() {
+		return killed.sum();
+	}
+	@Override
+	public long getLooping() {
+		return looping.sum();
+	}
+	@Override
+	public int getNewQueueDepth() {
+		return newQueueDepth.getAsInt();
+	}
+	@Override
+	public int getReadyQueueDepth() {
+		return readyQueueDepth.getAsInt();
+	}
+	@Override
+	public int getLiveProcesses() {
+		return liveProcesses.getAsInt();
+	}
+	@Override
+	public long[] getSliceLatencyHistogram() {
+		long[] histogram = new long[sliceLatency.length];
+		for (int i = 0; i < histogram.length; i++)
+			histogram[i] = sliceLatency[i].sum();
+		return histogram;
+	}
+	@Override
+	public int getSliceLatencySampling() {
+		return sampling;
+	}
+}
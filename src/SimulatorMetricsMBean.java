@@ -0,0 +1,68 @@
+/**
+ * Management interface of SimulatorMetrics. Every attribute can be read at any time, including
+ * while runAll is in progress; counters are totals since the simulator was created.
+ */
+public interface SimulatorMetricsMBean {
+	/**
+	 * Get the number of simulated cpu cycles used by processes.
+	 * @return the number of instructions executed.
+	 */
+	long getInstructions();
+	/**
+	 * Get the number of time slices run.
+	 * @return the number of slices.
+	 */
+	long getSlices();
+	/**
+	 * Get the number of times a core started running a different process than the one it ran
+	 * last.
+	 * @return the number of context switches.
+	 */
+	long getContextSwitches();
+	/**
+	 * Get the number of processes that executed a STOP.
+	 * @return the number of completed processes.
+	 */
+	long getCompleted();
+	/**
+	 * Get the number of processes that ran out of cpu cycles.
+	 * @return the number of processes terminated for exceeding their limit.
+	 */
+	long getCpuLimited();
+	/**
+	 * Get the number of processes killed.
+	 * @return the number of successful kills.
+	 */
+	long getKilled();
+	/**
+	 * Get the number of processes terminated by loop detection.
+	 * @return the number of processes caught repeating a state.
+	 */
+	long getLooping();
+	/**
+	 * Get the number of processes waiting in the new queue.
+	 * @return the new queue's depth.
+	 */
+	int getNewQueueDepth();
+	/**
+	 * Get the number of processes waiting in the ready queues of all cores.
+	 * @return the total ready queue depth.
+	 */
+	int getReadyQueueDepth();
+	/**
+	 * Get the number of processes that have not been cleaned up yet.
+	 * @return the number of live processes.
+	 */
+	int getLiveProcesses();
+	/**
+	 * Get the distribution of sampled slice latencies. Entry i counts the slices that took
+	 * at least 2^i and less than 2^(i+1) nanoseconds; entry 0 also counts those that took none.
+	 * @return the histogram, one entry per power of two.
+	 */
+	long[] getSliceLatencyHistogram();
+	/**
+	 * Get how many slices are run for every slice whose latency is sampled.
+	 * @return the sampling interval.
+	 */
+	int getSliceLatencySampling();
+}
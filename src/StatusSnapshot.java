@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * A copy of the columns of a page of the process list shown by the "plist" command, taken at
+ * one instant. Taking it only copies a few numbers per process, so the simulator can let its
+ * cores carry on while the much slower formatting is done from the copy. The list is copied
+ * and printed a page of at most pageRows processes at a time, so a snapshot takes the same
+ * memory however many processes there are; each capture() carries on in PID order from where
+ * the last one stopped, until the list is finished and the next capture starts it over. The
+ * list can be limited to the processes of one user, state or priority, and to a range of
+ * those. Instances are meant to be reused, and the filter and range are kept until changed.
+ *
+ * Rows are formatted a few thousand characters at a time in a reused buffer, with the same
+ * padding String.format gives the original format, and streamed out as the buffer fills.
+ */
+public class StatusSnapshot {
+	private static final PImage.processStates[] states = PImage.processStates.values();
+	private static final PImage.processPriorities[] priorities = PImage.processPriorities.values();
+	private static final String header = " PID   userID  state  priority  max CPU  CPU used  filename\n" +
+										 "-----  ------  -----  --------  -------  --------  --------\n";
+	private static final int pageRows = 4096; //Processes copied by one capture at most
+	private static final int chunkSize = 8192; //Characters formatted before they are written out
+
+	private int UIDFilter = -1; //Only processes of this user, or -1 for every user
+	private int stateFilter = -1; //Only processes in this state, or -1 for every state
+	private int priorityFilter = -1; //Only processes of this priority, or -1 for every priority
+	private int offset = 0; //Matching processes skipped before the first row
+	private int limit = Integer.MAX_VALUE; //Rows listed at most
+	private final StringBuilder text = new StringBuilder(chunkSize + 256); //Rows formatted but not yet written out
+
+	private boolean firstPage; //Whether the page is the first of the list
+	private boolean finished = true; //Whether the page is the last of the list
+	private int nextPID; //Where the next capture carries on
+	private int skipped; //Matching processes skipped so far
+	private int listed; //Rows copied so far
+	private int count; //Processes in the page
+	private final int[] PIDs = new int[pageRows];
+	private final int[] UIDs = new int[pageRows];
+	private final byte[] state = new byte[pageRows];
+	private final byte[] priority = new byte[pageRows];
+	private final int[] maxCycles = new int[pageRows];
+	private final int[] executedCycles = new int[pageRows];
+	private final String[] names = new String[pageRows];
+
+	/**
+	 * Limits the list to some of the processes, starting it over.
+	 * @param UID the user whose processes are listed, or -1 for every user.
+	 * @param state the ordinal of the state of the processes listed, or -1 for every state.
+	 * @param priority the ordinal of the priority of the processes listed, or -1 for every
+	 * priority.
+	 */
+	public void filter(int UID, int state, int priority) {
+		UIDFilter = UID;
+		stateFilter = state;
+		priorityFilter = priority;
+		finished = true;
+	}
+	/**
+	 * Limits the list to a range of the processes that pass the filter, starting it over.
+	 * @param offset the number of matching processes, in PID order, to skip.
+	 * @param limit the greatest number of processes to list.
+	 * @throws IllegalArgumentException if offset or limit is negative.
+	 */
+	public void page(int offset, int limit) {
+		if (offset < 0 || limit < 0)
+			throw new IllegalArgumentException("negative offset or limit");
+		this.offset = offset;
+		this.limit = limit;
+		finished = true;
+	}
+	/**
+	 * Copies the next page of the live processes of a table that pass the filter and fall in
+	 * the range, in PID order, or the first page if the list was finished. The caller must make
+	 * sure that no process changes while this runs; processes may change between pages.
+	 * @param table the table holding the processes.
+	 */
+	public void capture(ProcessTable table) {
+		firstPage = finished;
+		if (finished) {
+			nextPID = 0;
+			skipped = 0;
+			listed = 0;
+		}
+		Arrays.fill(names, 0, count, null);
+		count = 0;
+		int PID = nextPID;
+		int highWater = table.getHighWater();
+		for (; PID < highWater && count < pageRows && listed < limit; PID++) {
+			if (!table.isLive(PID))
+				continue;
+			if ((UIDFilter != -1 && table.getUID(PID) != UIDFilter) || (stateFilter != -1 && table.getState(PID) != stateFilter)
+					|| (priorityFilter != -1 && table.getPriority(PID) != priorityFilter))
+				continue;
+			if (skipped < offset) {
+				skipped++;
+				continue;
+			}
+			PIDs[count] = PID;
+			UIDs[count] = table.getUID(PID);
+			state[count] = (byte) table.getState(PID);
+			priority[count] = (byte) table.getPriority(PID);
+			maxCycles[count] = table.getMaxCycles(PID);
+			executedCycles[count] = table.getExecutedCycles(PID);
+			names[count] = table.getName(PID);
+			count++;
+			listed++;
+		}
+		nextPID = PID;
+		finished = PID >= highWater || listed >= limit;
+	}
+	/**
+	 * Get the number of processes in the page.
+	 * @return the number of processes copied by the last capture.
+	 */
+	public int size() {
+		return count;
+	}
+	/**
+	 * Whether the page is the last of the list.
+	 * @return true if the next capture starts the list over.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+	/**
+	 * Prints the page, in the format of the "plist" command.
+	 * @param out the stream to print to.
+	 */
+	public void print(PrintStream out) {
+		try {
+			print((Appendable) out);
+		} catch (IOException e) {
+			throw new AssertionError(e); //print streams do not throw
+		}
+	}
+	/**
+	 * Writes the page, in the format of the "plist" command: the first page starts with the
+	 * heading, and the last one ends with a line separator as println() would.
+	 * @param out where to write the page.
+	 * @throws IOException if writing fails.
+	 */
+	public void print(Appendable out) throws IOException {
+		text.setLength(0);
+		if (firstPage)
+			text.append(header);
+		for (int i = 0; i < count; i++) {
+			appendNumber(PIDs[i], 5);
+			text.append("  ");
+			appendNumber(UIDs[i], 6);
+			text.append("  ");
+			appendString(states[state[i]].name(), 5);
+			text.append("  ");
+			appendString(priorities[priority[i]].name(), 8);
+			text.append("  ");
+			appendNumber(maxCycles[i], 7);
+			text.append("  ");
+			appendNumber(executedCycles[i], 8);
+			text.append("  ");
+			appendString(names[i], 8);
+			text.append('\n');
+			if (text.length() >= chunkSize) {
+				out.append(text);
+				text.setLength(0);
+			}
+		}
+		if (finished)
+			text.append(System.lineSeparator());
+		out.append(text);
+		text.setLength(0);
+	}
+	/**
+	 * Appends a number as "% <width>d" formats it: right-aligned, with a space in place of the
+	 * sign of positive numbers.
+	 * @param value the number.
+	 * @param width the least number of characters to take up.
+	 */
+	private void appendNumber(int value, int width) {
+		long magnitude = Math.abs((long) value);
+		int digits = 1;
+		for (long bound = 10; bound <= magnitude; bound *= 10)
+			digits++;
+		for (int i = digits + 1; i < width; i++)
+			text.append(' ');
+		text.append(value < 0 ? '-' : ' ').append(magnitude);
+	}
+	/**
+	 * Appends a string as "%<width>s" formats it: right-aligned, and never cut short.
+	 * @param value the string, or null to append "null".
+	 * @param width the least number of characters to take up.
+	 */
+	private void appendString(String value, int width) {
+		for (int i = value == null ? 4 : value.length(); i < width; i++)
+			text.append(' ');
+		text.append(value);
+	}
+}
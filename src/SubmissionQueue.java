@@ -0,0 +1,140 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free multi-producer, single-consumer queue of process submissions. Any number of
+ * threads may offer at the same time without blocking each other or the consumer; an offer is
+ * one atomic swap. Only one thread at a time may poll.
+ *
+ * The queue is a singly linked list that always holds at least one node: the head is a stub
+ * whose successor is the oldest submission. Producers swap themselves in as the tail and then
+ * link the previous tail to themselves, so for a moment a submission can be in the queue
+ * without being reachable from the head yet. poll() treats it as not there yet.
+ */
+public class SubmissionQueue {
+	/**
+	 * A submitted process that has not been given a PID yet.
+	 */
+	public static final class Submission {
+		private final int userID;
+		private final int priority;
+		private final int maxCPU;
+		private final String filename;
+		private final int codeSegment;
+		private volatile Submission next; //Written once, by the producer that queued the submission after this one
+		private Submission(int userID, int priority, int maxCPU, String filename, int codeSegment) {
+			this.userID = userID;
+			this.priority = priority;
+			this.maxCPU = maxCPU;
+			this.filename = filename;
+			this.codeSegment = codeSegment;
+		}
+		/**
+		 * Get the userID for this process.
+		 * @return the userID for this process.
+		 */
+		public int getUserID() {
+			return userID;
+		}
+		/**
+		 * Get the priority for this process.
+		 * @return the priority, as passed to newProcess.
+		 */
+		public int getPriority() {
+			return priority;
+		}
+		/**
+		 * Get the max cpu cycles for this process.
+		 * @return the max cpu cycles for this process.
+		 */
+		public int getMaxCPU() {
+			return maxCPU;
+		}
+		/**
+		 * Get the filename for this process.
+		 * @return the binary the process was loaded from.
+		 */
+		public String getFilename() {
+			return filename;
+		}
+		/**
+		 * Get the code segment of the process. The submission holds a reference to it, which
+		 * passes to whoever polls the submission.
+		 * @return the shared code segment.
+		 */
+		public int getCodeSegment() {
+			return codeSegment;
+		}
+	}
+
+	private volatile Submission head; //Stub node; its successor is the oldest submission
+	private final AtomicReference<Submission> tail; //Most recent submission, or the stub
+
+	/**
+	 * Creates an empty queue.
+	 */
+	public SubmissionQueue() {
+		head = new Submission(0, 0, 0, null, -1);
+		tail = new AtomicReference<Submission>(head);
+	}
+	/**
+	 * Adds a submission. Safe to call from any number of threads at once.
+	 * @param userID an identifier representing a user.
+	 * @param priority the priority of the process.
+	 * @param maxCPU maximum number of CPU cycles available for this process.
+	 * @param filename the binary the process was loaded from.
+	 * @param codeSegment the shared code segment holding the binary. The queue takes over a
+	 * reference to it.
+	 */
+	public void offer(int userID, int priority, int maxCPU, String filename, int codeSegment) {
+		Submission submission = new Submission(userID, priority, maxCPU, filename, codeSegment);
+		tail.getAndSet(submission).next = submission;
+	}
+	/**
+	 * Adds several submissions, in order, with a single atomic swap. They are linked to each
+	 * other before any of them is published, so submissions from other threads never end up
+	 * between them. Safe to call from any number of threads at once.
+	 * @param count the number of entries of the arrays to use.
+	 * @param userIDs the userID of each process.
+	 * @param priorities the priority of each process.
+	 * @param maxCPUs the maximum number of CPU cycles of each process.
+	 * @param filenames the binary each process was loaded from.
+	 * @param codeSegments the shared code segment holding each binary, or -1 to skip that
+	 * entry. The queue takes over a reference to each segment it uses.
+	 */
+	public void offer(int count, int[] userIDs, int[] priorities, int[] maxCPUs, String[] filenames, int[] codeSegments) {
+		Submission first = null;
+		Submission last = null;
+		for (int i = 0; i < count; i++) {
+			if (codeSegments[i] == -1)
+				continue;
+			Submission submission = new Submission(userIDs[i], priorities[i], maxCPUs[i], filenames[i], codeSegments[i]);
+			if (first == null)
+				first = submission;
+			else
+				last.next = submission;
+			last = submission;
+		}
+		if (first != null)
+			tail.getAndSet(last).next = first;
+	}
+	/**
+	 * Removes the oldest submission. Must not be called by more than one thread at a time.
+	 * @return the submission, or null if there is none, or if the oldest one is still being
+	 * linked in by its producer.
+	 */
+	public Submission poll() {
+		Submission next = head.next;
+		if (next == null)
+			return null;
+		head = next; //becomes the new stub; its fields are not used again
+		return next;
+	}
+	/**
+	 * Whether nothing is waiting in the queue, including submissions still being linked in.
+	 * Safe to call from any thread.
+	 * @return true if the queue is empty.
+	 */
+	public boolean isEmpty() {
+		return tail.get() == head;
+	}
+}
@@ -1,48 +1,511 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Scanner;
 
+import javax.management.JMException;
+
 /**
- * 
+ * Drives a simulator with text commands, one per line. main() reads them from the file named by
+ * its argument, or else from standard input; other front ends create an instance with their
+ * own output streams and directory, so that several simulators can be driven in one JVM
+ * without their output mixing.
  * @author Cameron
  *
  */
 public class TestSimulator {
+	private final PrintStream out; //Receives command output
+	private final PrintStream err; //Receives usage and error messages
+	private final Path directory; //Where files named by commands and core dumps go, or null for the working directory
+	private final int batchSize = 4096; //Consecutive sub commands collected by executeFile before they are submitted
+	private final int[] batchUserIDs = new int[batchSize];
+	private final int[] batchPriorities = new int[batchSize];
+	private final int[] batchMaxCPUs = new int[batchSize];
+	private final String[] batchFilenames = new String[batchSize];
+	private int batched; //Sub commands collected so far
+	private byte[] lastFilename = new byte[0]; //Filename of the last sub command parsed in place
+	private String lastFilenameString = ""; //The same filename as a String, reused while it does not change
+	private final StatusSnapshot status = new StatusSnapshot(); //Reused by every plist command
+
 	public static void main(String[] args) {
 		Simulator s = new Simulator();
+		TestSimulator commands = new TestSimulator(System.out, System.err, null);
+		if (args.length > 0) {
+			try {
+				commands.executeFile(s, Paths.get(args[0]));
+			} catch (IOException e) {
+				System.err.println("Unable to read " + args[0] + ": " + e.getMessage());
+			}
+			s.close();
+			return;
+		}
 		Scanner scanner = new Scanner(System.in);
 		while (scanner.hasNextLine()) {
-			String command = scanner.nextLine();
-			String[] split = command.split(" ");
-			if (split.length == 0)
-				continue;
-			try {
-			switch (split[0]) {
-				case "sub": runSub(s, split); break;
-				case "plist": runPList(s); break;
-				case "show": runShow(s, split); break;
-				case "kill": runKill(s, split); break;
-				case "run": runRun(s); break;
-				case "runall": runRunAll(s); break;
-				case "exit": scanner.close(); return;
+			if (!commands.execute(s, scanner.nextLine())) {
+				scanner.close();
+				break;
 			}
-			} catch (NumberFormatException e) {
-				System.err.println("Bad arguments given: expecting integers");
+		}
+		s.close();
+	}
+	/**
+	 * Creates a command interpreter.
+	 * @param out the stream command output is printed to.
+	 * @param err the stream usage and error messages are printed to.
+	 * @param directory the directory that relative paths given to commands are resolved
+	 * against, and that text core dumps are written to, or null to use the working directory
+	 * and write each dump next to its binary. Binaries are always looked up as given.
+	 */
+	public TestSimulator(PrintStream out, PrintStream err, Path directory) {
+		this.out = out;
+		this.err = err;
+		this.directory = directory;
+	}
+	/**
+	 * Executes one command. Unknown commands are ignored.
+	 * @param s the simulator instance
+	 * @param command the command line.
+	 * @return false if the command was "exit", true otherwise.
+	 */
+	public boolean execute(Simulator s, String command) {
+		String[] split = command.split(" ");
+		if (split.length == 0)
+			return true;
+		try {
+		switch (split[0]) {
+			case "sub": runSub(s, split); break;
+			case "subn": runSubN(s, split); break;
+			case "plist": runPList(s, split); break;
+			case "show": runShow(s, split); break;
+			case "kill": runKill(s, split); break;
+			case "sleep": runSleep(s, split); break;
+			case "block": runBlock(s, split); break;
+			case "wake": runWake(s, split); break;
+			case "run": runRun(s); break;
+			case "runall": runRunAll(s); break;
+			case "sched": runSched(s, split); break;
+			case "cores": runCores(s, split); break;
+			case "dumps": runDumps(s, split); break;
+			case "memo": runMemo(s, split); break;
+			case "compile": runCompile(s, split); break;
+			case "batch": runBatch(s, split); break;
+			case "metrics": runMetrics(s, split); break;
+			case "trace": runTrace(s, split); break;
+			case "checkpoint": runCheckpoint(s, split); break;
+			case "loops": runLoops(s, split); break;
+			case "exit": return false;
+		}
+		} catch (NumberFormatException e) {
+			err.println("Bad arguments given: expecting integers");
+		}
+		return true;
+	}
+	/**
+	 * Executes every command in a file, up to an "exit" command if there is one. The file is
+	 * read through a large buffer rather than line by line, and sub commands in the usual
+	 * form are parsed in place instead of being split into an array; runs of them are handed
+	 * to the simulator in bulk. Every other line goes through execute(), after the subs before
+	 * it have been submitted, so the results are the same as executing the lines one by one.
+	 * @param s the simulator instance
+	 * @param file the command file.
+	 * @return the number of commands executed, counting blank lines.
+	 * @throws IOException if reading the file fails.
+	 */
+	public long executeFile(Simulator s, Path file) throws IOException {
+		Charset charset = Charset.defaultCharset();
+		long commands = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			byte[] buffer = new byte[1 << 16];
+			int start = 0; //Start of the next line
+			int limit = 0; //End of the bytes read so far
+			boolean eof = false;
+			while (true) {
+				int end = start;
+				while (end < limit && buffer[end] != '\n')
+					end++;
+				if (end == limit && !eof) { //the line continues past what has been read
+					System.arraycopy(buffer, start, buffer, 0, limit - start);
+					limit -= start;
+					start = 0;
+					if (limit == buffer.length)
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+					if (read == -1)
+						eof = true;
+					else
+						limit += read;
+					continue;
+				}
+				if (start >= limit && eof)
+					break;
+				int lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+				commands++;
+				if (!batchSub(s, buffer, start, lineEnd)) {
+					submitBatch(s);
+					if (!execute(s, new String(buffer, start, lineEnd - start, charset)))
+						return commands;
+				}
+				if (end == limit) //the last line, without a line separator
+					break;
+				start = end + 1;
 			}
+		} finally {
+			submitBatch(s);
 		}
+		return commands;
 	}
 	/**
-	 * Executes the "runall" command. executes cpu time slices until nothing is left to run
+	 * Collects a sub command for submission by submitBatch, if it is in the usual form: single
+	 * spaces, integers of at most nine ASCII digits, and an ASCII filename without spaces.
 	 * @param s the simulator instance
+	 * @param line the bytes of the file.
+	 * @param start the start of the line.
+	 * @param end the end of the line, excluding the line separator.
+	 * @return true if the command was collected, false if it needs to go through execute().
 	 */
-	private static void runRunAll(Simulator s) {
-		while (!s.isAllTerminated())
-			s.executeSlice();
+	private boolean batchSub(Simulator s, byte[] line, int start, int end) {
+		if (end - start < 4 || line[start] != 's' || line[start + 1] != 'u' || line[start + 2] != 'b' || line[start + 3] != ' ')
+			return false;
+		long userID = parseInt(line, start + 4, end);
+		if (userID == -1)
+			return false;
+		long priority = parseInt(line, (int) (userID >>> 32), end);
+		if (priority == -1)
+			return false;
+		long maxCPU = parseInt(line, (int) (priority >>> 32), end);
+		if (maxCPU == -1)
+			return false;
+		int name = (int) (maxCPU >>> 32);
+		if (name == end)
+			return false;
+		for (int i = name; i < end; i++) {
+			if (line[i] == ' ' || line[i] < 0)
+				return false;
+		}
+		if (!Arrays.equals(line, name, end, lastFilename, 0, lastFilename.length)) {
+			lastFilename = Arrays.copyOfRange(line, name, end);
+			lastFilenameString = new String(lastFilename, StandardCharsets.US_ASCII);
+		}
+		batchFilenames[batched] = lastFilenameString;
+		batchUserIDs[batched] = (int) userID;
+		batchPriorities[batched] = (int) priority;
+		batchMaxCPUs[batched] = (int) maxCPU;
+		if (++batched == batchSize)
+			submitBatch(s);
+		return true;
+	}
+	/**
+	 * Parses an integer field of a command followed by a single space.
+	 * @param line the bytes of the file.
+	 * @param start the start of the field.
+	 * @param end the end of the line.
+	 * @return the value in the low 32 bits and the start of the next field in the high 32
+	 * bits, or -1 if the field is not a plain integer of at most nine digits.
+	 */
+	private static long parseInt(byte[] line, int start, int end) {
+		int i = start;
+		boolean negative = i < end && line[i] == '-';
+		if (negative || (i < end && line[i] == '+'))
+			i++;
+		int digits = i;
+		int value = 0;
+		while (i < end && line[i] >= '0' && line[i] <= '9' && i - digits < 9)
+			value = value * 10 + line[i++] - '0';
+		if (i == digits || i == end || line[i] != ' ')
+			return -1;
+		return (long) (i + 1) << 32 | ((negative ? -value : value) & 0xFFFFFFFFL);
+	}
+	/**
+	 * Submits the sub commands collected by batchSub, reporting those whose binary could not
+	 * be loaded as the sub command would have.
+	 * @param s the simulator instance
+	 */
+	private void submitBatch(Simulator s) {
+		if (batched == 0)
+			return;
+		int created = s.newProcesses(batched, batchUserIDs, batchPriorities, batchMaxCPUs, batchFilenames);
+		for (int i = created; i < batched; i++)
+			err.println("Unable to create new process.");
+		batched = 0;
+	}
+	/**
+	 * Resolves a path given to a command against the directory of this interpreter.
+	 * @param path the path as given.
+	 * @return the path to use.
+	 */
+	private String resolve(String path) {
+		return directory == null ? path : directory.resolve(path).toString();
+	}
+	/**
+	 * Executes the "runall" command. executes cpu time slices until nothing is left to run, then
+	 * prints percentiles of the response, ready and turnaround times of the processes it ran
+	 * @param s the simulator instance
+	 */
+	private void runRunAll(Simulator s) {
+		s.runAll();
+		SchedulingStats stats = s.getSchedulingStats();
+		if (stats.size() != 0)
+			out.print(stats);
+	}
+	/**
+	 * Executes the "cores" command. sets the number of simulated cores
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runCores(Simulator s, String[] split) {
+		if (split.length < 2 || (split.length > 2 && !split[2].equals("deterministic"))) {
+			err.println("Usage: cores <count> [deterministic]");
+			return;
+		}
+		int count = Integer.parseInt(split[1]);
+		if (count < 1) {
+			err.println("Usage: cores <count> [deterministic]");
+			return;
+		}
+		s.setCores(count);
+		s.setDeterministic(split.length > 2);
 	}
 
+	/**
+	 * Executes the "sched" command. replaces the scheduling policy
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runSched(Simulator s, String[] split) {
+		if (split.length < 2) {
+			err.println("Usage: sched <rr|priority|feedback> [instructions per slice]");
+			return;
+		}
+		int quantum = split.length > 2 ? Integer.parseInt(split[2]) : 3;
+		switch (split[1]) {
+			case "rr": s.setScheduler(() -> new RoundRobinScheduler(quantum)); break;
+			case "priority": s.setScheduler(() -> new PriorityScheduler(quantum)); break;
+			case "feedback": s.setScheduler(() -> new FeedbackScheduler(quantum, 3)); break;
+			default: err.println("Usage: sched <rr|priority|feedback> [instructions per slice]");
+		}
+	}
+	/**
+	 * Executes the "dumps" command. selects how core dumps are written
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runDumps(Simulator s, String[] split) {
+		final String usage = "Usage: dumps <sync|block|drop|coalesce> [queue size] | dumps log <path> [segment MiB]";
+		if (split.length < 2) {
+			err.println(usage);
+			return;
+		}
+		if (split[1].equals("log")) {
+			if (split.length < 3) {
+				err.println(usage);
+				return;
+			}
+			long segmentSize = (split.length > 3 ? Integer.parseInt(split[3]) : 64) * 1024L * 1024L;
+			try {
+				s.setCoreDumpWriter(new BinaryCoreDumpLog(resolve(split[2]), segmentSize));
+			} catch (IOException | IllegalArgumentException e) {
+				err.println("Unable to open core dump log: " + e.getMessage());
+			}
+			return;
+		}
+		int capacity = split.length > 2 ? Integer.parseInt(split[2]) : 1024;
+		switch (split[1]) {
+			case "sync": s.setCoreDumpWriter(new TextCoreDumpWriter(directory)); break;
+			case "block": s.setCoreDumpWriter(new AsyncCoreDumpWriter(new TextCoreDumpWriter(directory), capacity, AsyncCoreDumpWriter.Policy.Block)); break;
+			case "drop": s.setCoreDumpWriter(new AsyncCoreDumpWriter(new TextCoreDumpWriter(directory), capacity, AsyncCoreDumpWriter.Policy.Drop)); break;
+			case "coalesce": s.setCoreDumpWriter(new AsyncCoreDumpWriter(new TextCoreDumpWriter(directory), capacity, AsyncCoreDumpWriter.Policy.Coalesce)); break;
+			default: err.println(usage);
+		}
+	}
+	/**
+	 * Executes the "memo" command. enables, disables or reports on outcome memoization
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runMemo(Simulator s, String[] split) {
+		final String usage = "Usage: memo <on [entries]|off|stats>";
+		if (split.length < 2) {
+			err.println(usage);
+			return;
+		}
+		switch (split[1]) {
+			case "on": s.setOutcomeCache(new OutcomeCache(split.length > 2 ? Integer.parseInt(split[2]) : 65536)); break;
+			case "off": s.setOutcomeCache(null); break;
+			case "stats":
+				OutcomeCache cache = s.getOutcomeCache();
+				if (cache == null)
+					out.println("Memoization is off.");
+				else
+					out.println("hits = " + cache.getHits() + ", misses = " + cache.getMisses() + ", entries = " + cache.size());
+				break;
+			default: err.println(usage);
+		}
+	}
+	/**
+	 * Executes the "compile" command. enables, disables or reports on the compilation tier
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runCompile(Simulator s, String[] split) {
+		final String usage = "Usage: compile <on [submissions]|off|stats>";
+		final String note = "Compiled code needs a JDK, and only runs in slices of at least " + s.getMinCompiledQuantum()
+				+ " instructions (the default is " + s.getDefaultQuantum() + ") or for a process alone on its core.";
+		if (split.length < 2) {
+			err.println(usage);
+			err.println(note);
+			return;
+		}
+		switch (split[1]) {
+			case "on": s.setProgramCompiler(new ProgramCompiler(split.length > 2 ? Integer.parseInt(split[2]) : 10)); break;
+			case "off": s.setProgramCompiler(null); break;
+			case "stats":
+				ProgramCompiler compiler = s.getProgramCompiler();
+				if (compiler == null)
+					out.println("Compilation is off.");
+				else {
+					out.println("compiled = " + compiler.getCompiled() + ", rejected = " + compiler.getRejected() + ", failed = " + compiler.getFailed()
+							+ ", unavailable = " + compiler.getUnavailable());
+					if (!compiler.isAvailable())
+						out.println("No Java compiler in this runtime; every binary is interpreted.");
+					out.println(note);
+				}
+				break;
+			default:
+				err.println(usage);
+				err.println(note);
+		}
+	}
+	/**
+	 * Executes the "batch" command. enables, disables or reports on batch execution
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runBatch(Simulator s, String[] split) {
+		final String usage = "Usage: batch <on [lanes [cycles]]|off|stats>";
+		if (split.length < 2) {
+			err.println(usage);
+			return;
+		}
+		switch (split[1]) {
+			case "on": s.setBatchInterpreter(new BatchInterpreter(split.length > 2 ? Integer.parseInt(split[2]) : 8,
+					split.length > 3 ? Integer.parseInt(split[3]) : 65536)); break;
+			case "off": s.setBatchInterpreter(null); break;
+			case "stats":
+				BatchInterpreter batch = s.getBatchInterpreter();
+				if (batch == null)
+					out.println("Batching is off.");
+				else
+					out.println("batches = " + batch.getBatches() + ", retired = " + batch.getRetired());
+				break;
+			default: err.println(usage);
+		}
+	}
+	/**
+	 * Executes the "metrics" command. prints the simulator's metrics, or registers them as an MBean
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runMetrics(Simulator s, String[] split) {
+		SimulatorMetrics metrics = s.getMetrics();
+		if (split.length > 1 && split[1].equals("register")) {
+			try {
+				out.println("Registered as " + metrics.register());
+			} catch (JMException e) {
+				err.println("Unable to register metrics: " + e.getMessage());
+			}
+			return;
+		}
+		out.println("instructions = " + metrics.getInstructions() + ", slices = " + metrics.getSlices() +
+				", context switches = " + metrics.getContextSwitches());
+		out.println("completed = " + metrics.getCompleted() + ", cpu limit = " + metrics.getCpuLimited() +
+				", killed = " + metrics.getKilled() + ", looping = " + metrics.getLooping());
+		out.println("new queue = " + metrics.getNewQueueDepth() + ", ready queues = " + metrics.getReadyQueueDepth() +
+				", live = " + metrics.getLiveProcesses());
+		long[] histogram = metrics.getSliceLatencyHistogram();
+		StringBuilder latency = new StringBuilder("slice latency (1 in ").append(metrics.getSliceLatencySampling()).append(" slices):");
+		for (int i = 0; i < histogram.length; i++) {
+			if (histogram[i] != 0)
+				latency.append(" <").append(1L << (i + 1)).append("ns=").append(histogram[i]);
+		}
+		out.println(latency);
+	}
+	/**
+	 * Executes the "trace" command. starts, stops or reports on event tracing
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runTrace(Simulator s, String[] split) {
+		final String usage = "Usage: trace <on <file> [records]|off|stats>";
+		if (split.length < 2) {
+			err.println(usage);
+			return;
+		}
+		switch (split[1]) {
+			case "on":
+				if (split.length < 3) {
+					err.println(usage);
+					return;
+				}
+				try {
+					s.setEventTrace(new EventTrace(resolve(split[2]), split.length > 3 ? Integer.parseInt(split[3]) : 65536));
+				} catch (IOException e) {
+					err.println("Unable to open trace file: " + e.getMessage());
+				}
+				break;
+			case "off": s.setEventTrace(null); break;
+			case "stats":
+				EventTrace trace = s.getEventTrace();
+				if (trace == null)
+					out.println("Tracing is off.");
+				else
+					out.println("records = " + trace.getRecords() + ", stalls = " + trace.getStalls());
+				break;
+			default: err.println(usage);
+		}
+	}
+	/**
+	 * Executes the "checkpoint" command. saves the simulation to a file or restores it from one
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runCheckpoint(Simulator s, String[] split) {
+		if (split.length < 3 || !(split[1].equals("save") || split[1].equals("load"))) {
+			err.println("Usage: checkpoint <save|load> <file>");
+			return;
+		}
+		try {
+			if (split[1].equals("save"))
+				s.checkpoint(resolve(split[2]));
+			else
+				s.restore(resolve(split[2]));
+		} catch (IOException e) {
+			err.println("Checkpoint failed: " + e.getMessage());
+		}
+	}
+	/**
+	 * Executes the "loops" command. enables or disables loop detection
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runLoops(Simulator s, String[] split) {
+		if (split.length < 2 || !(split[1].equals("on") || split[1].equals("off"))) {
+			err.println("Usage: loops <on|off>");
+			return;
+		}
+		s.setLoopDetection(split[1].equals("on"));
+	}
 	/**
 	 * Executes the "run" command. executes for one cpu time slice
 	 * @param s the simulator instance
 	 */
-	private static void runRun(Simulator s) {
+	private void runRun(Simulator s) {
 		s.executeSlice();
 	}
 	/**
@@ -50,13 +513,58 @@ public class TestSimulator {
 	 * @param s the simulator instance
 	 * @param split the arguments provided
 	 */
-	private static void runKill(Simulator s, String[] split) {
+	private void runKill(Simulator s, String[] split) {
 		if (split.length < 2) {
-			System.err.println("Usage: kill <PID>");
+			err.println("Usage: kill <PID>");
 			return;
 		}
 		if (!s.killProcess(Integer.parseInt(split[1]))) {
-			System.err.println("Process " + split[1] + " not found.");
+			err.println("Process " + split[1] + " not found.");
+		}
+	}
+
+	/**
+	 * Executes the "sleep" command. puts a ready or running process to sleep for a number of ticks
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runSleep(Simulator s, String[] split) {
+		if (split.length < 3 || Long.parseLong(split[2]) < 1) {
+			err.println("Usage: sleep <PID> <ticks>");
+			return;
+		}
+		if (!s.sleepProcess(Integer.parseInt(split[1]), Long.parseLong(split[2]))) {
+			err.println("Process " + split[1] + " is not ready or running.");
+		}
+	}
+
+	/**
+	 * Executes the "block" command. blocks a ready or running process until it is woken up
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runBlock(Simulator s, String[] split) {
+		if (split.length < 2) {
+			err.println("Usage: block <PID>");
+			return;
+		}
+		if (!s.blockProcess(Integer.parseInt(split[1]))) {
+			err.println("Process " + split[1] + " is not ready or running.");
+		}
+	}
+
+	/**
+	 * Executes the "wake" command. wakes up a sleeping or blocked process
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runWake(Simulator s, String[] split) {
+		if (split.length < 2) {
+			err.println("Usage: wake <PID>");
+			return;
+		}
+		if (!s.wakeProcess(Integer.parseInt(split[1]))) {
+			err.println("Process " + split[1] + " is not sleeping or blocked.");
 		}
 	}
 
@@ -65,36 +573,96 @@ public class TestSimulator {
 	 * @param s the simulator instance
 	 * @param split the arguments provided
 	 */
-	private static void runShow(Simulator s, String[] split) {
+	private void runShow(Simulator s, String[] split) {
 		if (split.length < 2) {
-			System.err.println("Usage: show <PID>");
+			err.println("Usage: show <PID>");
 			return;
 		}
-		if (!s.printStatus(Integer.parseInt(split[1]))) {
-			System.err.println("Process " + split[1] + " not found.");
+		if (!s.printStatus(Integer.parseInt(split[1]), out)) {
+			err.println("Process " + split[1] + " not found.");
 		}
 	}
 
 	/**
-	 * Executes the "plist" command. lists details of all non-terminated processes
+	 * Executes the "plist" command. lists details of non-terminated processes, optionally only
+	 * a page of those of one user, state or priority
 	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runPList(Simulator s, String[] split) {
+		final String usage = "Usage: plist [<offset> <limit>] [user <userID>] [state <state>] [priority <priority>]";
+		int offset = 0;
+		int limit = Integer.MAX_VALUE;
+		int UID = -1;
+		int state = -1;
+		int priority = -1;
+		int i = 1;
+		if (split.length > 2 && !split[1].isEmpty() && Character.isDigit(split[1].charAt(0))) {
+			offset = Integer.parseInt(split[1]);
+			limit = Integer.parseInt(split[2]);
+			i = 3;
+		}
+		for (; i < split.length; i += 2) {
+			if (i + 1 == split.length) {
+				err.println(usage);
+				return;
+			}
+			switch (split[i]) {
+				case "user": UID = Integer.parseInt(split[i + 1]); break;
+				case "state": state = ordinal(PImage.processStates.values(), split[i + 1]); break;
+				case "priority": priority = ordinal(PImage.processPriorities.values(), split[i + 1]); break;
+				default: err.println(usage); return;
+			}
+		}
+		if (state == -2 || priority == -2) {
+			err.println(usage);
+			return;
+		}
+		status.filter(UID, state, priority);
+		status.page(offset, limit);
+		s.printStatus(status, out);
+	}
+	/**
+	 * Looks up a state or priority by name, ignoring case, or by ordinal.
+	 * @param values the states or priorities.
+	 * @param name the name or ordinal.
+	 * @return the ordinal, or -2 if there is no such value.
 	 */
-	private static void runPList(Simulator s) {
-		s.printStatus();
+	private static int ordinal(Enum<?>[] values, String name) {
+		for (Enum<?> value : values) {
+			if (value.name().equalsIgnoreCase(name) || String.valueOf(value.ordinal()).equals(name))
+				return value.ordinal();
+		}
+		return -2;
 	}
 
+	/**
+	 * Executes the "subn" command. creates several identical processes at once
+	 * @param s the simulator instance
+	 * @param split the arguments provided
+	 */
+	private void runSubN(Simulator s, String[] split) {
+		if (split.length < 6) {
+			err.println("Usage: subn <count> <userID> <priority> <max CPU units> <filename>");
+			return;
+		}
+		if (!s.newProcesses(Integer.parseInt(split[1]), Integer.parseInt(split[2]), Integer.parseInt(split[3]),
+				Integer.parseInt(split[4]), split[5])) {
+			err.println("Unable to create new processes.");
+		}
+	}
 	/**
 	 * Executes the "sub" command. creates a new process
 	 * @param s the simulator instance
 	 * @param split the arguments provided
 	 */
-	private static void runSub(Simulator s, String[] split) {
+	private void runSub(Simulator s, String[] split) {
 		if (split.length < 5) {
-			System.err.println("Usage: sub <userID> <priority> <max CPU units> <filename>");
+			err.println("Usage: sub <userID> <priority> <max CPU units> <filename>");
 			return;
 		}
 		if (!s.newProcess(Integer.parseInt(split[1]),Integer.parseInt(split[2]),Integer.parseInt(split[3]),split[4])) {
-			System.err.println("Unable to create new process.");
+			err.println("Unable to create new process.");
 		}
 	}
 }
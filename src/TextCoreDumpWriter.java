@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes each core dump as text to "&lt;filename&gt;.core" next to the binary the process was
+ * loaded from, or in a chosen directory, replacing the previous dump of that binary. The text
+ * and byte buffers are reused from one dump to the next.
+ */
+public class TextCoreDumpWriter implements CoreDumpWriter {
+	private final StringBuilder text = new StringBuilder(512);
+	private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private ByteBuffer bytes = ByteBuffer.allocateDirect(1024);
+	private final Path directory; //Where dumps go, or null to put each next to its binary
+
+	/**
+	 * Creates a writer that puts each dump next to its binary.
+	 */
+	public TextCoreDumpWriter() {
+		this(null);
+	}
+	/**
+	 * Creates a writer that puts every dump in one directory, named after the last part of the
+	 * binary's path.
+	 * @param directory the directory, or null to put each dump next to its binary.
+	 */
+	public TextCoreDumpWriter(Path directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public synchronized void write(CoreDump dump) {
+		text.setLength(0);
+		dump.appendTo(text);
+		encode();
+		Path path = Paths.get(dump.getName() + ".core");
+		if (directory != null)
+			path = directory.resolve(path.getFileName());
+		try (FileChannel file = FileChannel.open(path,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (bytes.hasRemaining())
+				file.write(bytes);
+		} catch (IOException e) {
+		}
+	}
+	@Override
+	public void flush() {
+	}
+	@Override
+	public void close() {
+	}
+	/**
+	 * Encodes the text buffer into the byte buffer, growing it if needed, and flips it for writing.
+	 */
+	private void encode() {
+		CharBuffer chars = CharBuffer.wrap(text);
+		while (true) {
+			bytes.clear();
+			encoder.reset();
+			CoderResult result = encoder.encode(chars, bytes, true);
+			if (!result.isOverflow())
+				result = encoder.flush(bytes);
+			if (!result.isOverflow())
+				break;
+			bytes = ByteBuffer.allocateDirect(bytes.capacity() * 2);
+			chars.rewind();
+		}
+		bytes.flip();
+	}
+}
@@ -0,0 +1,212 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Sleeping processes of one core, ordered by the tick they wake up at, on a hierarchical timing
+ * wheel. The wheel has levels of 64 slots each: a process waking up within the current block of
+ * 64 ticks sits in the slot of its tick on the lowest level, one waking up within the current
+ * block of 64 * 64 ticks but in a later block of 64 sits in the slot of that block on the next
+ * level, and so on, with enough levels to cover every tick. When time reaches a slot on a
+ * higher level, its processes cascade down to the levels below. A bitmap of occupied slots per
+ * level lets time skip over empty stretches, so advancing the wheel costs a few bit operations
+ * per level however many ticks pass, and adding or removing a process is constant time. Each
+ * process is touched at most once per level on its way to waking up.
+ *
+ * Slots are queues linked through the process table, like ready queues; a process's wakeup
+ * tick is kept in the table too.
+ */
+public class TimingWheel {
+	private static final int slotBits = 6;
+	private static final int slots = 1 << slotBits;
+	private static final int levels = (Long.SIZE + slotBits - 1) / slotBits;
+
+	private final ProcessTable table;
+	private final ProcessQueue[] wheel; //Queue of every slot, level by level, lowest level first
+	private final long[] occupied; //Per level, a bit for each slot holding processes, all of them after now's slot
+	private final ProcessQueue due; //Processes whose tick has come, waiting to be polled
+	private long now; //Every process waking up at or before this tick is in due
+	private int size;
+
+	/**
+	 * Creates an empty wheel at tick 0.
+	 * @param table the table holding the links and wakeup ticks of the sleeping processes.
+	 */
+	public TimingWheel(ProcessTable table) {
+		this.table = table;
+		wheel = new ProcessQueue[levels * slots];
+		for (int i = 0; i < wheel.length; i++)
+			wheel[i] = new ProcessQueue(table);
+		occupied = new long[levels];
+		due = new ProcessQueue(table);
+		now = 0;
+		size = 0;
+	}
+	/**
+	 * Get the number of processes on the wheel.
+	 * @return the number of processes added and not yet polled or removed.
+	 */
+	public int size() {
+		return size;
+	}
+	/**
+	 * Whether the wheel holds no processes.
+	 * @return true if the wheel is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	/**
+	 * Puts a process to sleep.
+	 * @param PID a process on no other wheel or queue.
+	 * @param tick the tick it wakes up at.
+	 */
+	public void add(int PID, long tick) {
+		table.setWakeAt(PID, tick);
+		size++;
+		if (tick <= now)
+			due.push(PID);
+		else
+			insert(PID, tick);
+	}
+	/**
+	 * Takes a process off the wheel before it wakes up.
+	 * @param PID a process on this wheel.
+	 */
+	public void remove(int PID) {
+		long tick = table.getWakeAt(PID);
+		size--;
+		if (tick <= now) {
+			due.remove(PID);
+			return;
+		}
+		int level = levelOf(tick);
+		int slot = (int) (tick >>> (level * slotBits)) & (slots - 1);
+		ProcessQueue queue = wheel[level * slots + slot];
+		queue.remove(PID);
+		if (queue.isEmpty())
+			occupied[level] &= ~(1L << slot);
+	}
+	/**
+	 * Removes a process whose wakeup tick has come, advancing the wheel's time up to a tick.
+	 * Processes come out in the order of their wakeup ticks.
+	 * @param tick the current time; earlier than the last call's has no effect.
+	 * @return the process, or -1 if no process wakes up at or before that tick.
+	 */
+	public int poll(long tick) {
+		while (due.isEmpty()) {
+			int level = lowestLevel();
+			long start = level == levels ? Long.MAX_VALUE : slotStart(level);
+			if (start > tick) {
+				if (tick > now)
+					now = tick; //no process wakes up in between, so none has to move
+				return -1;
+			}
+			int slot = Long.numberOfTrailingZeros(occupied[level]);
+			ProcessQueue queue = wheel[level * slots + slot];
+			occupied[level] &= ~(1L << slot);
+			now = start;
+			int PID;
+			while ((PID = queue.pop()) != -1) { //cascade down
+				long wakeAt = table.getWakeAt(PID);
+				if (wakeAt <= now)
+					due.push(PID);
+				else
+					insert(PID, wakeAt);
+			}
+		}
+		size--;
+		return due.pop();
+	}
+	/**
+	 * Get the tick the next process wakes up at.
+	 * @return the earliest tick at which poll() returns a process, or Long.MAX_VALUE if the
+	 * wheel is empty.
+	 */
+	public long next() {
+		if (!due.isEmpty())
+			return now;
+		int level = lowestLevel();
+		if (level == levels)
+			return Long.MAX_VALUE;
+		ProcessQueue queue = wheel[level * slots + Long.numberOfTrailingZeros(occupied[level])];
+		long earliest = Long.MAX_VALUE; //every process in the first occupied slot wakes up before those elsewhere
+		for (int PID = queue.peek(); PID != -1; PID = table.getNext(PID))
+			earliest = Math.min(earliest, table.getWakeAt(PID));
+		return earliest;
+	}
+	/**
+	 * Writes the wheel to a checkpoint. The links and wakeup ticks belong to the process table.
+	 * @param out the checkpoint.
+	 * @throws IOException if writing fails.
+	 */
+	public void checkpoint(DataOutput out) throws IOException {
+		out.writeLong(now);
+		out.writeInt(size);
+		for (long bits : occupied)
+			out.writeLong(bits);
+		for (int level = 0; level < levels; level++) {
+			for (long bits = occupied[level]; bits != 0; bits &= bits - 1)
+				wheel[level * slots + Long.numberOfTrailingZeros(bits)].checkpoint(out);
+		}
+		due.checkpoint(out);
+	}
+	/**
+	 * Restores an empty wheel from a checkpoint.
+	 * @param in the checkpoint.
+	 * @throws IOException if reading fails.
+	 */
+	public void restore(DataInput in) throws IOException {
+		now = in.readLong();
+		size = in.readInt();
+		for (int level = 0; level < levels; level++)
+			occupied[level] = in.readLong();
+		for (int level = 0; level < levels; level++) {
+			for (long bits = occupied[level]; bits != 0; bits &= bits - 1)
+				wheel[level * slots + Long.numberOfTrailingZeros(bits)].restore(in);
+		}
+		due.restore(in);
+	}
+	/**
+	 * Adds a process to the slot of its wakeup tick, on the level of the highest block of
+	 * ticks the tick and now differ in.
+	 * @param PID the process.
+	 * @param tick its wakeup tick, after now.
+	 */
+	private void insert(int PID, long tick) {
+		int level = levelOf(tick);
+		int slot = (int) (tick >>> (level * slotBits)) & (slots - 1);
+		wheel[level * slots + slot].push(PID);
+		occupied[level] |= 1L << slot;
+	}
+	/**
+	 * Get the level a wakeup tick belongs on.
+	 * @param tick a tick after now.
+	 * @return the level.
+	 */
+	private int levelOf(long tick) {
+		return (Long.SIZE - 1 - Long.numberOfLeadingZeros(now ^ tick)) / slotBits;
+	}
+	/**
+	 * Get the lowest level with an occupied slot. Its first occupied slot holds the processes
+	 * that wake up next, since each level only holds ticks beyond the current block of the
+	 * levels below it.
+	 * @return the level, or levels if the wheel holds nothing outside of due.
+	 */
+	private int lowestLevel() {
+		int level = 0;
+		while (level < levels && occupied[level] == 0)
+			level++;
+		return level;
+	}
+	/**
+	 * Get the first tick of the first occupied slot of a level.
+	 * @param level a level with an occupied slot.
+	 * @return the tick.
+	 */
+	private long slotStart(int level) {
+		int shift = level * slotBits;
+		long block = shift + slotBits >= Long.SIZE ? 0 : now >>> (shift + slotBits) << (shift + slotBits);
+		return block | (long) Long.numberOfTrailingZeros(occupied[level]) << shift;
+	}
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Replays a file written by EventTrace and prints the process list as the "plist" command would
+ * have printed it at a chosen point, or lists the events themselves.
+ * Usage: TraceReplay &lt;trace file&gt; [tick | #events | events]
+ * <ul>
+ * <li>With a tick, replays events up to the first one later than that tick. Each core keeps
+ * its own clock, so with free-running cores ticks do not always increase through the file.</li>
+ * <li>With #n, replays the first n events.</li>
+ * <li>With "events", prints every event, one per line.</li>
+ * </ul>
+ * Without a second argument the whole trace is replayed.
+ */
+public class TraceReplay {
+	private static final PImage.processStates[] states = PImage.processStates.values();
+	private static final PImage.processPriorities[] priorities = PImage.processPriorities.values();
+	private static final String[] eventNames = { "end", "submit", "admit", "dispatch", "preempt", "store", "terminate", "kill", "name", "sleep", "wake" };
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TraceReplay <trace file> [tick | #events | events]");
+			return;
+		}
+		long untilTick = Long.MAX_VALUE;
+		long untilEvent = Long.MAX_VALUE;
+		boolean list = false;
+		if (args.length > 1) {
+			if (args[1].equals("events"))
+				list = true;
+			else if (args[1].startsWith("#"))
+				untilEvent = Long.parseLong(args[1].substring(1));
+			else
+				untilTick = Long.parseLong(args[1]);
+		}
+		ByteBuffer in;
+		try (FileChannel file = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+			in = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		byte[] found = new byte[8];
+		in.get(found);
+		if (!Arrays.equals(found, "OSEMTRAC".getBytes(StandardCharsets.US_ASCII)) || in.getInt() != EventTrace.version
+				|| in.getInt() != EventTrace.recordSize) {
+			System.err.println(args[0] + " is not an event trace");
+			return;
+		}
+		in.position(EventTrace.recordSize);
+		ArrayList<String> names = new ArrayList<String>();
+		TreeMap<Integer, int[]> processes = new TreeMap<Integer, int[]>(); //userID, state, priority, max cycles, cycles used, name ID
+		long events = 0;
+		while (in.remaining() >= EventTrace.recordSize && events < untilEvent) {
+			int start = in.position();
+			byte type = in.get();
+			int core = in.get();
+			in.getShort();
+			int PID = in.getInt();
+			long tick = in.getLong();
+			int a = in.getInt();
+			int b = in.getInt();
+			int c = in.getInt();
+			int d = in.getInt();
+			if (type == EventTrace.nameEvent) {
+				byte[] name = new byte[a];
+				in.get(name);
+				in.position(start + (1 + (a + EventTrace.recordSize - 1) / EventTrace.recordSize) * EventTrace.recordSize);
+				while (names.size() <= PID)
+					names.add(null);
+				names.set(PID, new String(name, StandardCharsets.UTF_8));
+				continue;
+			}
+			if (tick > untilTick)
+				break;
+			events++;
+			if (list) {
+				System.out.println(events + " " + (type > 0 && type < eventNames.length ? eventNames[type] : "unknown " + type)
+						+ " tick=" + tick + " core=" + core + " PID=" + PID + " " + a + " " + b + " " + c + " " + d);
+				continue;
+			}
+			int[] process = processes.get(PID);
+			if (process == null && type != EventTrace.submitEvent) //submitted before tracing started
+				continue;
+			switch (type) {
+				case EventTrace.submitEvent: processes.put(PID, new int[] { a, 0, b, c, 0, d }); break;
+				case EventTrace.admitEvent: process[1] = 1; break;
+				case EventTrace.dispatchEvent: process[1] = 2; break;
+				case EventTrace.preemptEvent: process[1] = 1; process[4] = a; break;
+				case EventTrace.sleepEvent: process[1] = a; break;
+				case EventTrace.wakeEvent: process[1] = 1; break;
+				case EventTrace.terminateEvent:
+				case EventTrace.killEvent: processes.remove(PID); break;
+			}
+		}
+		if (list)
+			return;
+		StringBuilder output = new StringBuilder(" PID   userID  state  priority  max CPU  CPU used  filename\n" +
+												 "-----  ------  -----  --------  -------  --------  --------\n");
+		for (int PID : processes.keySet()) {
+			int[] process = processes.get(PID);
+			output.append(String.format("% 5d  ", PID));
+			output.append(String.format("% 6d  ", process[0]));
+			output.append(String.format("%5s  ", states[process[1]]));
+			output.append(String.format("%8s  ", priorities[process[2]]));
+			output.append(String.format("% 7d  ", process[3]));
+			output.append(String.format("% 8d  ", process[4]));
+			output.append(String.format("%8s", names.get(process[5])));
+			output.append("\n");
+		}
+		System.out.println(output);
+	}
+}
@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Which queued core dumps the background thread passes on to its target.
+ */
+class AsyncCoreDumpWriterTest {
+	/**
+	 * Records the binary and PID of every dump, holding up the first one until released so
+	 * that the next dumps queue up into a single batch.
+	 */
+	private static final class Gated implements CoreDumpWriter {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+		@Override
+		public void write(CoreDump dump) {
+			written.add(dump.getName() + ":" + dump.getPID());
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		@Override
+		public void flush() {
+		}
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Writes a dump of each named binary, in order, the first one alone in its batch and the
+	 * rest queued together behind it.
+	 * @param policy the policy of the writer.
+	 * @param target where the writer passes the dumps on to.
+	 * @param names the binary of each dump; dump i has PID i.
+	 * @return the writer, closed.
+	 */
+	private static AsyncCoreDumpWriter writeAll(AsyncCoreDumpWriter.Policy policy, Gated target, String... names)
+			throws InterruptedException {
+		ProcessTable table = new ProcessTable(names.length);
+		int segment = table.share(new byte[ProcessTable.codeSize], ProcessTable.codeSize);
+		table.retain(segment, names.length - 1);
+		AsyncCoreDumpWriter writer = new AsyncCoreDumpWriter(target, 16, policy);
+		CoreDump dump = new CoreDump();
+		for (int i = 0; i < names.length; i++) {
+			int PID = table.allocate();
+			table.create(PID, 1, 0, 100, names[i], segment);
+			dump.capture(table, PID, CoreDump.Reason.Completed);
+			writer.write(dump);
+			if (i == 0)
+				target.entered.await();
+		}
+		target.release.countDown();
+		writer.close();
+		return writer;
+	}
+	@Test
+	void coalesceWritesTheLastDumpOfEachBinaryInABatch() throws InterruptedException {
+		Gated target = new Gated();
+		AsyncCoreDumpWriter writer = writeAll(AsyncCoreDumpWriter.Policy.Coalesce, target, "a", "a", "b", "a", "b");
+		assertEquals(Arrays.asList("a:0", "a:3", "b:4"), target.written);
+		assertEquals(2, writer.getCoalesced());
+	}
+	@Test
+	void blockWritesEveryDump() throws InterruptedException {
+		Gated target = new Gated();
+		AsyncCoreDumpWriter writer = writeAll(AsyncCoreDumpWriter.Policy.Block, target, "a", "a", "b", "a", "b");
+		assertEquals(Arrays.asList("a:0", "a:1", "b:2", "a:3", "b:4"), target.written);
+		assertEquals(0, writer.getCoalesced());
+	}
+}
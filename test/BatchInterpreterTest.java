@@ -0,0 +1,56 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Processes whose outcome a batch found while they were drained end exactly as the reference
+ * interpreter would have run them.
+ */
+class BatchInterpreterTest {
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	/**
+	 * Submits each binary with a spread of cycle limits, so batches retire lanes both at their
+	 * limits and on STOP.
+	 * @return the script.
+	 */
+	private static String submissions() {
+		StringBuilder script = new StringBuilder();
+		int[] limits = { 40, 500, 7, 1000, 150, 40, 3000 };
+		String[] binaries = { "count.bin", "spin.bin", "selfmod.bin", "mult_10_12.bin" };
+		for (int i = 0; i < 28; i++)
+			script.append("sub ").append(i).append(' ').append(i % 3).append(' ').append(limits[i % limits.length])
+					.append(" $/").append(binaries[i % binaries.length]).append('\n');
+		return script.toString();
+	}
+	@Test
+	void batchedProcessesMatchReference() {
+		String script = submissions() + "plist\nrun\nrun\nplist\nrunall\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result batched = harness.run("batch on 2\n" + script + "batch stats\n");
+		assertTrue(batched.output.startsWith(reference.output), batched.output);
+		assertTrue(!batched.output.endsWith("batches = 0, retired = 0\n"), batched.output);
+		assertEquals(reference.dumps, batched.dumps);
+	}
+	@Test
+	void batchesAndMemoizationTogetherMatchReference() {
+		String script = submissions() + "runall\n" + submissions() + "run\nplist\nrunall\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result batched = harness.run("memo on\nbatch on 2\n" + script);
+		assertEquals(reference.output, batched.output);
+		assertEquals(reference.dumps, batched.dumps);
+	}
+}
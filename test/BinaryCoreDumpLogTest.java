@@ -0,0 +1,118 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Names too long for a name record or a segment are cut short instead of corrupting the log.
+ */
+class BinaryCoreDumpLogTest {
+	private Path directory;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		directory = Files.createTempDirectory("osem-log");
+	}
+	@AfterEach
+	void tearDown() throws IOException {
+		for (Path file : Files.newDirectoryStream(directory))
+			Files.delete(file);
+		Files.delete(directory);
+	}
+	/**
+	 * Writes a dump of a process loaded from each of some binaries, in order.
+	 * @param log the log to write to.
+	 * @param names the binary of each dump; dump i has PID i.
+	 */
+	private static void writeAll(BinaryCoreDumpLog log, String... names) {
+		ProcessTable table = new ProcessTable(names.length);
+		int segment = table.share(new byte[ProcessTable.codeSize], ProcessTable.codeSize);
+		table.retain(segment, names.length - 1);
+		CoreDump dump = new CoreDump();
+		for (String name : names) {
+			int PID = table.allocate();
+			table.create(PID, 1, 0, 100, name, segment);
+			dump.capture(table, PID, CoreDump.Reason.Completed);
+			log.write(dump);
+		}
+		log.close();
+	}
+	/**
+	 * Reads back the binary of every dump in a log, as CoreDumpLogReader does.
+	 * @param base path of the log, without the segment number.
+	 * @return the name of each dump, in order.
+	 */
+	private static List<String> readAll(String base) throws IOException {
+		List<String> dumps = new ArrayList<String>();
+		CoreDump dump = new CoreDump();
+		for (int segment = 0; Files.exists(BinaryCoreDumpLog.segmentPath(base, segment)); segment++) {
+			ByteBuffer buffer;
+			try (FileChannel file = FileChannel.open(BinaryCoreDumpLog.segmentPath(base, segment), StandardOpenOption.READ)) {
+				buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+			}
+			int version = BinaryCoreDumpLog.readHeader(buffer);
+			List<String> names = new ArrayList<String>();
+			while (buffer.remaining() >= BinaryCoreDumpLog.recordSize) {
+				int start = buffer.position();
+				byte type = buffer.get(start);
+				if (type == BinaryCoreDumpLog.endRecord)
+					break;
+				if (type == BinaryCoreDumpLog.nameRecord) {
+					names.add(BinaryCoreDumpLog.readName(buffer));
+					continue;
+				}
+				buffer.position(start + 1);
+				dump.getRecord(buffer, names, version);
+				buffer.position(start + BinaryCoreDumpLog.recordSize);
+				dumps.add(dump.getName());
+			}
+		}
+		return dumps;
+	}
+	/**
+	 * Repeats a string.
+	 * @param unit the string to repeat.
+	 * @param count the number of copies.
+	 * @return the copies, joined.
+	 */
+	private static String repeat(String unit, int count) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			text.append(unit);
+		return text.toString();
+	}
+	@Test
+	void namesLongerThanASegmentAreCutShort() throws IOException {
+		String base = directory.resolve("small").toString();
+		BinaryCoreDumpLog log = new BinaryCoreDumpLog(base, 4 * BinaryCoreDumpLog.recordSize);
+		assertEquals(4 * BinaryCoreDumpLog.recordSize - 2 * BinaryCoreDumpLog.recordSize - 8, log.getMaxNameLength());
+		String ascii = repeat("a", 300);
+		String accented = repeat("é", 200); //two bytes each, so 248 bytes end mid-character
+		writeAll(log, "short", ascii, "short", accented, ascii);
+		String asciiKept = ascii.substring(0, 248);
+		String accentedKept = accented.substring(0, 124);
+		assertEquals(Arrays.asList("short", asciiKept, "short", accentedKept, asciiKept), readAll(base));
+		assertEquals(3, log.getTruncatedNames());
+	}
+	@Test
+	void namesLongerThanALengthFieldAreCutShort() throws IOException {
+		String base = directory.resolve("large").toString();
+		BinaryCoreDumpLog log = new BinaryCoreDumpLog(base, 1 << 20);
+		assertEquals(0xFFFF, log.getMaxNameLength());
+		String name = repeat("n", 70000);
+		writeAll(log, name, "short", name);
+		assertEquals(Arrays.asList(name.substring(0, 0xFFFF), "short", name.substring(0, 0xFFFF)), readAll(base));
+		assertEquals(1, log.getTruncatedNames());
+	}
+}
@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * A simulation saved and restored after every command carries on exactly as one left alone,
+ * under every scheduler, and both match the reference interpreter.
+ */
+class CheckpointTest {
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	@ParameterizedTest
+	@ValueSource(strings = { "rr", "priority", "feedback" })
+	void roundTripAfterEveryCommand(String scheduler) {
+		String[] commands = {
+			"sched " + scheduler + " 4",
+			"sub 1 0 900 $/count.bin",
+			"sub 2 2 300 $/spin.bin",
+			"sub 3 1 50 $/selfmod.bin",
+			"sub 4 1 2000 $/mult_10_12.bin",
+			"sub 5 2 700 $/count.bin",
+			"sub 6 0 400 $/loop.bin",
+			"sub 7 1 900 $/spin.bin",
+			"run", "run", "run", "plist", "show 1", "kill 6", "run", "plist",
+			"sub 8 2 100 $/selfmod.bin", "sub 9 0 600 $/count.bin",
+			"run", "show 8", "runall", "plist",
+		};
+		StringBuilder plain = new StringBuilder();
+		StringBuilder saved = new StringBuilder();
+		for (String command : commands) {
+			plain.append(command).append('\n');
+			saved.append(command).append("\ncheckpoint save $/ck.bin\ncheckpoint load $/ck.bin\n");
+		}
+		Harness.Result reference = harness.reference(plain.toString());
+		Harness.Result alone = harness.run(plain.toString());
+		Harness.Result restored = harness.run(saved.toString());
+		assertEquals(reference.output, alone.output);
+		assertEquals(reference.dumps, alone.dumps);
+		assertEquals(alone.output, restored.output);
+		assertEquals(alone.dumps, restored.dumps);
+	}
+}
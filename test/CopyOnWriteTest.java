@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Processes loaded from the same binary share its code until they first store into it; a
+ * store only ever changes the code of the process that made it.
+ */
+class CopyOnWriteTest {
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	/**
+	 * Get what a process computed from its core dump, leaving out its PID, user and timing.
+	 * @param dump the text of the core dump.
+	 * @return the cycles used, the registers, the code and the termination reason.
+	 */
+	private static String machineState(String dump) {
+		int cycles = dump.indexOf("CPU cycles used = ");
+		return dump.substring(cycles, dump.indexOf('\n', cycles)) + dump.substring(dump.indexOf("PC = ") - 1);
+	}
+	@Test
+	void aStoreOnlyChangesItsOwnProcess() {
+		String script = "sub 1 1 500 $/count.bin\nsub 2 1 500 $/count.bin\nrun\nshow 0\nshow 1\nrunall\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(script);
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		String[] shown = result.output.split("PID = ");
+		assertTrue(shown[1].contains("00 00 00 00 00 00 01 C7 \n"), shown[1]); //one STORE: 200 - 1
+		assertTrue(shown[2].contains("00 00 00 00 00 00 01 C8 \n"), shown[2]); //not run yet, so still as loaded
+	}
+	@Test
+	void sharingProcessesEndAsIfTheyRanAlone() {
+		String[] binaries = { "count.bin", "selfmod.bin", "count.bin", "mult_10_12.bin", "count.bin" };
+		StringBuilder script = new StringBuilder();
+		for (int i = 0; i < 40; i++)
+			script.append("sub ").append(i).append(" 1 ").append(10 + 37 * i).append(" $/").append(binaries[i % binaries.length]).append('\n');
+		script.append("run\nrun\nrun\nplist\nshow 7\nrun\nrun\nrunall\n");
+		for (int i = 0; i < 5; i++)
+			script.append("sub ").append(i).append(" 1 ").append(10 + 37 * i).append(" $/").append(binaries[i]).append('\n');
+		script.append("runall\n");
+		Harness.Result reference = harness.reference(script.toString());
+		Harness.Result result = harness.run(script.toString());
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		assertEquals(45, result.dumps.size());
+		for (String dump : result.dumps) {
+			int limit = Integer.parseInt(dump.substring(dump.indexOf("max CPU cycles = ") + 17, dump.indexOf("\nCPU cycles used")));
+			String name = dump.substring(dump.indexOf("filename = ") + 11, dump.indexOf("\nPC = "));
+			Harness.Result alone = harness.run("sub 1 1 " + limit + " " + name + "\nrunall\n");
+			assertEquals(machineState(alone.dumps.get(0)), machineState(dump), name + " with a limit of " + limit);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Names longer than the ring can hold are cut short instead of waiting forever for room.
+ */
+class EventTraceTest {
+	private Path file;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		file = Files.createTempFile("osem-trace", ".bin");
+	}
+	@AfterEach
+	void tearDown() throws IOException {
+		Files.delete(file);
+	}
+	@Test
+	void namesLongerThanTheRingAreCutShort() throws IOException {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 3000; i++)
+			name.append(i % 10);
+		ProcessTable table = new ProcessTable(1);
+		int PID = table.allocate();
+		table.create(PID, 7, 1, 100, name.toString(), table.share(new byte[ProcessTable.codeSize], ProcessTable.codeSize));
+		EventTrace trace = new EventTrace(file.toString(), 64);
+		assertEquals(31 * EventTrace.recordSize, trace.getMaxNameLength());
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> trace.submitted(table, PID, 5));
+		trace.close();
+
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+		int length = trace.getMaxNameLength();
+		int nameRecords = (length + EventTrace.recordSize - 1) / EventTrace.recordSize;
+		assertEquals((3 + nameRecords) * EventTrace.recordSize, in.limit()); //header, name event, name, submit event
+		in.position(EventTrace.recordSize);
+		assertEquals(EventTrace.nameEvent, in.get(in.position()));
+		assertEquals(length, in.getInt(in.position() + 16));
+		byte[] kept = new byte[length];
+		in.position(2 * EventTrace.recordSize);
+		in.get(kept);
+		assertEquals(name.substring(0, length), new String(kept, StandardCharsets.UTF_8));
+		in.position((2 + nameRecords) * EventTrace.recordSize);
+		assertEquals(EventTrace.submitEvent, in.get(in.position()));
+		assertEquals(7, in.getInt(in.position() + 16));
+	}
+}
@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Command files read by TestSimulator.executeFile, whatever their line separators.
+ */
+class ExecuteFileTest {
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	@Test
+	void lastLineWithoutSeparatorRunsOnce() {
+		String script = "sub 1 1 50 $/count.bin\nsub 2 2 60 $/count.bin\nplist";
+		assertEquals(harness.run(script + "\n").output, harness.run(script).output);
+	}
+	@Test
+	void lastRunallWithoutSeparatorRunsOnce() {
+		String script = "sub 1 1 500 $/count.bin\nsub 2 1 500 $/spin.bin\nrunall";
+		Harness.Result withSeparator = harness.run(script + "\n");
+		Harness.Result without = harness.run(script);
+		assertEquals(withSeparator.output, without.output);
+		assertEquals(withSeparator.dumps, without.dumps);
+		assertEquals(2, without.dumps.size());
+	}
+	@Test
+	void carriageReturnsAreIgnored() {
+		String script = "sub 1 1 50 $/count.bin\nplist 0 1\nrunall\n";
+		assertEquals(harness.run(script).output, harness.run(script.replace("\n", "\r\n")).output);
+		assertEquals(harness.run(script).output, harness.run(script.replace("\n", "\r\n").trim()).output);
+	}
+	@Test
+	void emptyFileDoesNothing() {
+		assertEquals("", harness.run("").output);
+	}
+}
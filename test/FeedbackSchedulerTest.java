@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Levels of the feedback scheduler, as processes are demoted and move between cores.
+ */
+class FeedbackSchedulerTest {
+	/**
+	 * Creates a table holding one process.
+	 * @param priority the ordinal of the process's priority.
+	 * @return the table; the process has PID 0.
+	 */
+	private static ProcessTable table(int priority) {
+		ProcessTable table = new ProcessTable(1);
+		int PID = table.allocate();
+		table.create(PID, 1, priority, 1000, "p", table.share(new byte[ProcessTable.codeSize], ProcessTable.codeSize));
+		return table;
+	}
+	@Test
+	void usingUpASliceDemotes() {
+		ProcessTable table = table(PImage.processPriorities.High.ordinal());
+		FeedbackScheduler scheduler = new FeedbackScheduler(3, 3);
+		scheduler.init(table);
+		scheduler.admit(0);
+		assertEquals(3, scheduler.getQuantum(0));
+		for (int quantum : new int[] { 6, 12, 12 }) {
+			assertEquals(0, scheduler.next());
+			scheduler.requeue(0);
+			assertEquals(quantum, scheduler.getQuantum(0));
+		}
+	}
+	@Test
+	void stolenProcessesKeepTheirLevel() {
+		ProcessTable table = table(PImage.processPriorities.High.ordinal());
+		FeedbackScheduler victim = new FeedbackScheduler(3, 3);
+		FeedbackScheduler thief = new FeedbackScheduler(3, 3);
+		victim.init(table);
+		thief.init(table);
+		victim.admit(0);
+		assertEquals(0, victim.next());
+		victim.requeue(0);
+		assertEquals(0, victim.next());
+		thief.adopt(0, victim);
+		assertEquals(6, thief.getQuantum(0));
+		assertEquals(1, thief.size());
+		assertEquals(0, thief.next());
+		thief.requeue(0);
+		assertEquals(12, thief.getQuantum(0));
+	}
+	@Test
+	void adoptingFromAnotherKindOfSchedulerAdmits() {
+		ProcessTable table = table(PImage.processPriorities.Normal.ordinal());
+		RoundRobinScheduler other = new RoundRobinScheduler(3);
+		FeedbackScheduler thief = new FeedbackScheduler(3, 3);
+		other.init(table);
+		thief.init(table);
+		other.admit(0);
+		assertEquals(0, other.next());
+		thief.adopt(0, other);
+		assertEquals(6, thief.getQuantum(0));
+	}
+}
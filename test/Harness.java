@@ -0,0 +1,153 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs command scripts through TestSimulator for the tests and collects what they print and
+ * the core dumps they produce, in the order they were written. Scripts name binaries as
+ * "$/name": synthetic images written to a scratch directory, or copies of the shipped ones.
+ * Running a script with the reference interpreter, the original one instruction at a time
+ * loop, gives the results every faster path has to reproduce.
+ */
+final class Harness implements AutoCloseable {
+	/**
+	 * LOAD 31; ADD 30; STORE 31; BRA-P 0. Counts forever without ever setting the zero or
+	 * negative flag, so it never halts on its own.
+	 */
+	static final byte[] SPIN = image(new int[] { 0x3F, 0x7E, 0x5F, 0xA0 }, 30, 1);
+	/**
+	 * BRA-P 0. The smallest possible infinite loop.
+	 */
+	static final byte[] LOOP = image(new int[] { 0xA0 });
+	/**
+	 * LOAD 31; SUB 30; STORE 31; BRA-Z 5; BRA-P 0; STOP. Counts 200 down to zero and halts.
+	 */
+	static final byte[] COUNT = image(new int[] { 0x3F, 0x9E, 0x5F, 0xE5, 0xA0, 0x00 }, 30, 1, 31, 200);
+	/**
+	 * STORE 0; STOP. Overwrites its own first instruction, so its code cannot stay shared.
+	 */
+	static final byte[] SELFMOD = image(new int[] { 0x40, 0x00 });
+
+	final Path directory;
+
+	/**
+	 * What a script printed and the core dumps it produced.
+	 */
+	static final class Result {
+		final String output;
+		final List<String> dumps;
+		Result(String output, List<String> dumps) {
+			this.output = output;
+			this.dumps = dumps;
+		}
+	}
+
+	/**
+	 * Collects the text of every core dump.
+	 */
+	private static final class Collector implements CoreDumpWriter {
+		final List<String> dumps = Collections.synchronizedList(new ArrayList<String>());
+		@Override
+		public void write(CoreDump dump) {
+			StringBuilder text = new StringBuilder();
+			dump.appendTo(text);
+			dumps.add(text.toString());
+		}
+		@Override
+		public void flush() {
+		}
+		@Override
+		public void close() {
+		}
+	}
+
+	Harness() throws IOException {
+		directory = Files.createTempDirectory("osem-test");
+		Files.write(directory.resolve("spin.bin"), SPIN);
+		Files.write(directory.resolve("loop.bin"), LOOP);
+		Files.write(directory.resolve("count.bin"), COUNT);
+		Files.write(directory.resolve("selfmod.bin"), SELFMOD);
+		Files.copy(Paths.get("mult_10_12.bin"), directory.resolve("mult_10_12.bin"));
+	}
+	/**
+	 * Runs a script on a fresh simulator with the default engine.
+	 * @param script the commands, written to a file exactly as given.
+	 * @return the results.
+	 */
+	Result run(String script) {
+		return run(script, s -> {});
+	}
+	/**
+	 * Runs a script on a fresh simulator that uses the reference interpreter.
+	 * @param script the commands, written to a file exactly as given.
+	 * @return the results.
+	 */
+	Result reference(String script) {
+		return run(script, s -> s.setPredecodedInterpreter(false));
+	}
+	/**
+	 * Runs a script on a fresh simulator.
+	 * @param script the commands, written to a file exactly as given.
+	 * @param setup configures the simulator first.
+	 * @return the results.
+	 */
+	Result run(String script, Consumer<Simulator> setup) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+		Collector dumps = new Collector();
+		Simulator s = new Simulator();
+		s.setOutput(out);
+		s.setCoreDumpWriter(dumps);
+		setup.accept(s);
+		try {
+			Path file = Files.createTempFile(directory, "script", ".txt");
+			Files.write(file, script.replace("$/", directory + "/").getBytes(StandardCharsets.UTF_8));
+			new TestSimulator(out, out, directory).executeFile(s, file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			s.close();
+		}
+		return new Result(bytes.toString(StandardCharsets.UTF_8), dumps.dumps);
+	}
+	/**
+	 * Names a binary in the scratch directory the way the simulator prints it.
+	 * @param name the name of the binary.
+	 * @return the path the scripts' "$/name" stands for.
+	 */
+	String path(String name) {
+		return directory + "/" + name;
+	}
+	@Override
+	public void close() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+				Files.delete(p);
+		}
+	}
+	/**
+	 * Builds a 32 byte image.
+	 * @param program instructions starting at address 0.
+	 * @param data pairs of address and value to place in the image.
+	 * @return the image.
+	 */
+	private static byte[] image(int[] program, int... data) {
+		byte[] image = new byte[32];
+		for (int i = 0; i < program.length; i++)
+			image[i] = (byte) program[i];
+		for (int i = 0; i < data.length; i += 2)
+			image[data[i]] = (byte) data[i + 1];
+		return image;
+	}
+}
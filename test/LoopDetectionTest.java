@@ -0,0 +1,75 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Loop detection ends processes that repeat a state, and only those: every other process ends
+ * exactly as the reference interpreter runs it with detection off.
+ */
+class LoopDetectionTest {
+	private static final String script = "sub 1 1 100000 $/loop.bin\nsub 2 1 100000 $/spin.bin\nsub 3 1 300 $/spin.bin\n"
+			+ "sub 4 1 5000 $/count.bin\nsub 5 1 100 $/count.bin\nsub 6 1 5000 $/selfmod.bin\nsub 7 1 5000 $/mult_10_12.bin\n"
+			+ "run\nrun\nplist\nrunall\n";
+
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	/**
+	 * Get what each process computed from the core dumps, leaving out timing.
+	 * @param dumps the text of the core dumps.
+	 * @return the cycles used, the registers, the code and the termination reason, by PID.
+	 */
+	private static Map<Integer, String> machineStates(List<String> dumps) {
+		Map<Integer, String> states = new HashMap<Integer, String>();
+		for (String dump : dumps) {
+			int cycles = dump.indexOf("CPU cycles used = ");
+			states.put(Integer.parseInt(dump.substring("PID = ".length(), dump.indexOf('\n'))),
+					dump.substring(cycles, dump.indexOf('\n', cycles)) + dump.substring(dump.indexOf("PC = ") - 1));
+		}
+		return states;
+	}
+	@Test
+	void onlyRepeatingProcessesEndEarly() {
+		Map<Integer, String> reference = machineStates(harness.reference(script).dumps);
+		Map<Integer, String> detected = machineStates(harness.run("loops on\n" + script).dumps);
+		assertEquals(reference.keySet(), detected.keySet());
+		for (int PID : reference.keySet()) {
+			if (PID == 0 || PID == 1) {
+				assertTrue(detected.get(PID).endsWith(CoreDump.Reason.Looping.getMessage()), detected.get(PID));
+				int cycles = Integer.parseInt(detected.get(PID).substring(18, detected.get(PID).indexOf('\n')));
+				assertTrue(cycles < 100000, detected.get(PID));
+			} else
+				assertEquals(reference.get(PID), detected.get(PID), "PID " + PID);
+		}
+	}
+	@Test
+	void bothInterpretersDetectTheSameLoops() {
+		Harness.Result reference = harness.reference("loops on\n" + script);
+		Harness.Result result = harness.run("loops on\n" + script);
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+	}
+	@Test
+	void turningDetectionOffRunsLoopsToTheirLimit() {
+		String toggled = "loops on\nloops off\n" + script;
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(toggled);
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+	}
+}
@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * PIDs of processes that are gone are given to later ones, so a simulator takes any number of
+ * submissions over its lifetime, and the list, show and kill cope with the gaps.
+ */
+class PidRecyclingTest {
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	/**
+	 * Get the PIDs of core dumps.
+	 * @param dumps the text of the dumps.
+	 * @return the PIDs the dumps were taken of, in ascending order.
+	 */
+	static TreeSet<Integer> PIDs(Iterable<String> dumps) {
+		TreeSet<Integer> PIDs = new TreeSet<Integer>();
+		for (String dump : dumps)
+			PIDs.add(Integer.parseInt(dump.substring("PID = ".length(), dump.indexOf('\n'))));
+		return PIDs;
+	}
+	@Test
+	void manyMoreSubmissionsThanTheInitialCapacity() {
+		StringBuilder script = new StringBuilder();
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 150; i++)
+				script.append("sub ").append(round).append(' ').append(i % 3).append(' ').append(20 + i).append(" $/count.bin\n");
+			script.append("runall\n");
+		}
+		Harness.Result reference = harness.reference(script.toString());
+		Harness.Result result = harness.run(script.toString());
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		assertFalse(result.output.contains("Unable to create"), result.output);
+		assertEquals(750, result.dumps.size());
+		assertEquals(149, (int) PIDs(result.dumps).last()); //every round reused the first round's PIDs
+	}
+	@Test
+	void aKilledProcessesPIDIsReused() {
+		String script = "sub 1 1 30 $/count.bin\nsub 2 1 30 $/count.bin\nsub 3 1 30 $/count.bin\nkill 1\n"
+				+ "sub 4 1 30 $/loop.bin\nplist\nrunall\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(script);
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		assertTrue(result.output.contains("    1       4    New    Normal       30         0  " + harness.path("loop.bin")), result.output);
+		assertEquals(4, result.dumps.size()); //the kill leaves a core dump too
+		assertTrue(result.dumps.get(0).startsWith("PID = 1\nuserID = 2\n"), result.dumps.get(0));
+	}
+	@Test
+	void gapsInThePIDsAreNotFound() {
+		String script = "sub 1 1 30 $/count.bin\nsub 2 1 30 $/count.bin\nsub 3 1 30 $/count.bin\nkill 1\n"
+				+ "kill 1\nshow 1\nshow 7\nkill 7\nplist\nshow 2\nrunall\nshow 0\nplist\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(script);
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		assertTrue(result.output.contains("Process 1 not found."), result.output);
+		assertTrue(result.output.contains("Process 7 not found."), result.output);
+		assertFalse(result.output.contains("    1       2  "), result.output);
+	}
+}
@@ -0,0 +1,129 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The process list reads the same as when every row was formatted on its own, across the
+ * pages it is captured in, and its ranges and filters pick the rows a full list holds.
+ */
+class PlistTest {
+	private static final String header = " PID   userID  state  priority  max CPU  CPU used  filename\n" +
+										 "-----  ------  -----  --------  -------  --------  --------\n";
+	private static final String submissions = "subn 3000 1 0 50 $/count.bin\nsubn 3000 2 2 60 $/count.bin\nsubn 3000 1 1 70 $/count.bin\n";
+	private static final int processes = 9000; //More than two pages of a snapshot
+
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	/**
+	 * Splits output into the lists of the plist commands that printed it.
+	 * @param output the output of a script of plist commands.
+	 * @return the rows of each list, without its heading.
+	 */
+	private static List<List<String>> lists(String output) {
+		List<List<String>> lists = new ArrayList<List<String>>();
+		for (String list : output.split(header, -1)) {
+			if (lists.isEmpty() && list.isEmpty())
+				continue;
+			List<String> rows = new ArrayList<String>();
+			for (String row : list.split("\n")) {
+				if (!row.isEmpty())
+					rows.add(row);
+			}
+			lists.add(rows);
+		}
+		return lists;
+	}
+	/**
+	 * Gets the rows of a list that pass a filter, as the given range of them.
+	 * @param rows the full list.
+	 * @param offset the matching rows to skip.
+	 * @param limit the rows to keep at most.
+	 * @param column the column to filter on, or -1 for none.
+	 * @param value the value the column must have.
+	 * @return the rows.
+	 */
+	private static List<String> select(List<String> rows, int offset, int limit, int column, String value) {
+		List<String> selected = new ArrayList<String>();
+		for (String row : rows) {
+			if (column < 0 || row.trim().split(" +")[column].equals(value))
+				selected.add(row);
+		}
+		return selected.subList(Math.min(offset, selected.size()), (int) Math.min((long) offset + limit, selected.size()));
+	}
+	@Test
+	void aFullListMatchesTheOriginalFormat() {
+		String script = submissions + "plist\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(script);
+		assertEquals(reference.output, result.output);
+		StringBuilder expected = new StringBuilder(header);
+		for (int PID = 0; PID < processes; PID++) {
+			int group = PID / 3000;
+			expected.append(String.format("% 5d  % 6d  %5s  %8s  % 7d  % 8d  %8s", PID, group == 1 ? 2 : 1, "New",
+					PImage.processPriorities.values()[new int[] { 0, 2, 1 }[group]].name(), 50 + 10 * group, 0,
+					harness.path("count.bin"))).append('\n');
+		}
+		expected.append(System.lineSeparator());
+		assertEquals(expected.toString(), result.output);
+	}
+	@Test
+	void rangesAndFiltersPickFromTheFullList() {
+		String[] commands = { "plist 0 10", "plist 4090 10", "plist 4095 2", "plist 8190 4", "plist 100 5000", "plist 8995 100",
+				"plist 9000 10", "plist 0 0", "plist user 2", "plist user 1", "plist 2990 20 user 1", "plist priority High",
+				"plist priority 1", "plist 4000 200 priority low", "plist state Ready", "plist state New", "plist state Blocked",
+				"plist user 3" };
+		int[][] expected = { { 0, 10, -1 }, { 4090, 10, -1 }, { 4095, 2, -1 }, { 8190, 4, -1 }, { 100, 5000, -1 },
+				{ 8995, 100, -1 }, { 9000, 10, -1 }, { 0, 0, -1 }, { 0, Integer.MAX_VALUE, 1 }, { 0, Integer.MAX_VALUE, 1 },
+				{ 2990, 20, 1 }, { 0, Integer.MAX_VALUE, 3 }, { 0, Integer.MAX_VALUE, 3 }, { 4000, 200, 3 },
+				{ 0, Integer.MAX_VALUE, 2 }, { 0, Integer.MAX_VALUE, 2 }, { 0, Integer.MAX_VALUE, 2 }, { 0, Integer.MAX_VALUE, 1 } };
+		String[] values = { null, null, null, null, null, null, null, null, "2", "1", "1", "High", "Normal", "Low", "Ready", "New",
+				"Blocked", "3" };
+		StringBuilder script = new StringBuilder(submissions).append("run\nrun\nrun\nsleep 1 100\nplist\n");
+		for (String command : commands)
+			script.append(command).append('\n');
+		Harness.Result reference = harness.reference(script.toString());
+		Harness.Result result = harness.run(script.toString());
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		List<List<String>> lists = lists(result.output);
+		assertEquals(commands.length + 1, lists.size());
+		List<String> full = lists.get(0);
+		assertEquals(processes, full.size());
+		assertTrue(full.get(1).contains("Sleeping"), full.get(1));
+		for (int i = 0; i < commands.length; i++)
+			assertEquals(select(full, expected[i][0], expected[i][1], expected[i][2], values[i]), lists.get(i + 1), commands[i]);
+		assertTrue(lists.get(15).size() > 0 && lists.get(17).isEmpty() && lists.get(18).isEmpty(), result.output);
+	}
+	@Test
+	void aListEndsWithABlankLineEvenWhenEmpty() {
+		Harness.Result result = harness.run(submissions + "plist user 9\nplist 9000 1\n");
+		assertEquals(header + System.lineSeparator() + header + System.lineSeparator(), result.output);
+	}
+	@Test
+	void badArgumentsPrintTheUsage() {
+		String script = submissions + "plist state Asleep\nplist priority\nplist colour red\nplist 0 5\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(script);
+		assertEquals(reference.output, result.output);
+		assertTrue(result.output.startsWith("Usage: plist"), result.output);
+		assertEquals(3, result.output.split("Usage: plist", -1).length - 1, result.output);
+		assertEquals(5, lists(result.output.substring(result.output.indexOf(header))).get(0).size());
+		assertFalse(result.output.substring(result.output.indexOf(header)).contains("Usage"), result.output);
+	}
+}
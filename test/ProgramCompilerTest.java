@@ -0,0 +1,38 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Processes end the same whether their binary has been compiled yet or not. Compilation runs
+ * in the background, so how many slices run compiled code varies from run to run; the
+ * results must not.
+ */
+class ProgramCompilerTest {
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	@Test
+	void compiledProcessesMatchReference() {
+		StringBuilder script = new StringBuilder("sched rr 32\n");
+		for (int round = 0; round < 4; round++) {
+			for (int i = 0; i < 6; i++)
+				script.append("sub ").append(i).append(" 1 ").append(700 + 300 * i).append(i % 2 == 0 ? " $/count.bin\n" : " $/spin.bin\n");
+			script.append("sub 9 2 900 $/selfmod.bin\nrun\nrun\nplist\nrunall\n");
+		}
+		Harness.Result reference = harness.reference(script.toString());
+		Harness.Result compiled = harness.run("compile on 1\n" + script);
+		assertEquals(reference.output, compiled.output);
+		assertEquals(reference.dumps, compiled.dumps);
+	}
+}
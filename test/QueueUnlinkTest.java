@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Killed processes leave the new and ready queues at once: they never run again, and the
+ * room they leave in a ready queue is taken by the next admission.
+ */
+class QueueUnlinkTest {
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	/**
+	 * Submits processes, each from a different user.
+	 * @param count the number of processes; process i has PID i and userID i + 1.
+	 * @param maxCPU the cycle limit of every process.
+	 * @return the script.
+	 */
+	private static String submissions(int count, int maxCPU) {
+		StringBuilder script = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			script.append("sub ").append(i + 1).append(" 1 ").append(maxCPU).append(" $/count.bin\n");
+		return script.toString();
+	}
+	@Test
+	void killedProcessesLeaveTheirQueues() {
+		String script = submissions(8, 400) + "run\nrun\nrun\nrun\nrun\nrun\nrun\nplist\n"
+				+ "kill 2\nkill 4\nkill 7\nplist\nrun\nplist\nkill 0\nrun\nplist\nrunall\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(script);
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		String[] lists = result.output.split("\n\n");
+		assertTrue(lists[0].contains("    4       5  Ready") && lists[0].contains("    6       7    New"), lists[0]);
+		assertTrue(lists[2].contains("    6       7  Ready"), lists[2]); //admitted into the room the kills left
+		for (int i = 1; i < 4; i++) {
+			for (int PID : new int[] { 2, 4, 7 })
+				assertFalse(lists[i].contains("\n    " + PID + "  "), lists[i]);
+		}
+		assertFalse(lists[3].contains("\n    0  "), lists[3]);
+		assertEquals(8, result.dumps.size());
+	}
+	@Test
+	void killingMostProcessesStillRunsTheRest() {
+		StringBuilder script = new StringBuilder(submissions(200, 100));
+		script.append("run\nrun\nrun\n");
+		for (int PID = 0; PID < 200; PID++) {
+			if (PID % 3 != 0)
+				script.append("kill ").append(PID).append('\n');
+		}
+		script.append("plist\nrunall\nplist\n");
+		Harness.Result reference = harness.reference(script.toString());
+		Harness.Result result = harness.run(script.toString());
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		assertFalse(result.output.contains("not found"), result.output);
+		assertEquals(200, result.dumps.size());
+		for (String dump : result.dumps.subList(133, 200))
+			assertTrue(dump.endsWith(CoreDump.Reason.Completed.getMessage()) || dump.endsWith(CoreDump.Reason.CpuLimit.getMessage()), dump);
+	}
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Sleeping processes wake up on the tick they asked for, whichever level of the timing wheel
+ * they wait on, and blocked ones only when woken.
+ */
+class TimingWheelTest {
+	private static Harness harness;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		harness = new Harness();
+	}
+	@AfterAll
+	static void tearDown() throws IOException {
+		harness.close();
+	}
+	/**
+	 * Get the tick a process terminated at from its core dump.
+	 * @param dump the text of the core dump.
+	 * @return the tick.
+	 */
+	private static long terminatedAt(String dump) {
+		int start = dump.indexOf("terminated at tick = ") + "terminated at tick = ".length();
+		return Long.parseLong(dump.substring(start, dump.indexOf('\n', start)));
+	}
+	/**
+	 * Get the PID of a process from its core dump.
+	 * @param dump the text of the core dump.
+	 * @return the PID.
+	 */
+	private static int PID(String dump) {
+		return Integer.parseInt(dump.substring("PID = ".length(), dump.indexOf('\n')));
+	}
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 63, 64, 65, 4095, 4096, 4097, 300000, 1L << 33 })
+	void aSleepDelaysTerminationByItsLength(long ticks) {
+		String script = "sub 1 1 400 $/count.bin\nrun\nsleep 0 " + ticks + "\nrunall\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(script);
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		long awake = terminatedAt(harness.run("sub 1 1 400 $/count.bin\nrunall\n").dumps.get(0));
+		assertEquals(awake + ticks, terminatedAt(result.dumps.get(0)));
+	}
+	@Test
+	void sleepersWakeInTheOrderOfTheirTicks() {
+		String script = "sub 1 1 2000 $/count.bin\nsub 2 1 2000 $/count.bin\nsub 3 1 2000 $/count.bin\nsub 4 1 2000 $/count.bin\n"
+				+ "run\nrun\nrun\nrun\nrun\nsleep 0 300000\nsleep 1 64\nsleep 2 8589934592\nsleep 3 5000\nplist\nrunall\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(script);
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		int[] order = new int[4];
+		for (int i = 0; i < 4; i++)
+			order[i] = PID(result.dumps.get(i));
+		assertEquals("[1, 3, 0, 2]", Arrays.toString(order));
+		assertTrue(terminatedAt(result.dumps.get(3)) > 8589934592L, result.dumps.get(3));
+	}
+	@Test
+	void blockedProcessesWaitForWake() {
+		String script = "sub 1 1 400 $/count.bin\nsub 2 1 400 $/count.bin\nrun\nrun\nblock 0\nrunall\nplist\nwake 0\nplist\nrunall\n";
+		Harness.Result reference = harness.reference(script);
+		Harness.Result result = harness.run(script);
+		assertEquals(reference.output, result.output);
+		assertEquals(reference.dumps, result.dumps);
+		assertEquals(2, result.dumps.size());
+		assertEquals(1, PID(result.dumps.get(0)));
+		String[] lists = result.output.split(" PID   userID");
+		assertTrue(lists[1].contains("    0       1  Blocked"), lists[1]);
+		assertFalse(lists[2].contains("Blocked"), lists[2]);
+	}
+}